@@ -0,0 +1,98 @@
+package com.mapzen.benchmark;
+
+import com.mapzen.model.EquirectangularDistanceStrategy;
+import com.mapzen.model.HybridDistanceStrategy;
+import com.mapzen.model.ValhallaLocation;
+import com.mapzen.model.VincentyDistanceStrategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single distance computation between two points a few hundred meters apart. Each call
+ * moves on to the next of {@link #PAIRS} random pairs, more than the location memo holds, so
+ * {@link #distanceTo()} mostly misses the memo while {@link #distanceToRepeated()} always hits.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+    private static final int PAIRS = 4096;
+
+    private final ValhallaLocation[] from = new ValhallaLocation[PAIRS];
+    private final ValhallaLocation[] to = new ValhallaLocation[PAIRS];
+    private final float[] results = new float[1];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(1);
+        for (int i = 0; i < PAIRS; i++) {
+            from[i] = new ValhallaLocation();
+            from[i].setLatitude(40.6 + random.nextDouble() * 0.1);
+            from[i].setLongitude(-74.0 + random.nextDouble() * 0.1);
+            to[i] = new ValhallaLocation();
+            to[i].setLatitude(from[i].getLatitude() + (random.nextDouble() - 0.5) * 0.01);
+            to[i].setLongitude(from[i].getLongitude() + (random.nextDouble() - 0.5) * 0.01);
+        }
+    }
+
+    @Benchmark
+    public float distanceTo() {
+        final int i = next();
+        return from[i].distanceTo(to[i]);
+    }
+
+    @Benchmark
+    public float distanceToRepeated() {
+        return from[0].distanceTo(to[0]);
+    }
+
+    @Benchmark
+    public float distanceBetween() {
+        final int i = next();
+        ValhallaLocation.distanceBetween(from[i].getLatitude(), from[i].getLongitude(),
+                to[i].getLatitude(), to[i].getLongitude(), results);
+        return results[0];
+    }
+
+    @Benchmark
+    public float vincenty() {
+        final int i = next();
+        return VincentyDistanceStrategy.INSTANCE.distanceBetween(from[i].getLatitude(),
+                from[i].getLongitude(), to[i].getLatitude(), to[i].getLongitude());
+    }
+
+    @Benchmark
+    public float equirectangular() {
+        final int i = next();
+        return EquirectangularDistanceStrategy.INSTANCE.distanceBetween(from[i].getLatitude(),
+                from[i].getLongitude(), to[i].getLatitude(), to[i].getLongitude());
+    }
+
+    @Benchmark
+    public float hybrid() {
+        final int i = next();
+        return HybridDistanceStrategy.INSTANCE.distanceBetween(from[i].getLatitude(),
+                from[i].getLongitude(), to[i].getLatitude(), to[i].getLongitude());
+    }
+
+    private int next() {
+        next = (next + 1) & (PAIRS - 1);
+        return next;
+    }
+}
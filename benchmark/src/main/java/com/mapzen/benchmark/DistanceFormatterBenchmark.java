@@ -0,0 +1,61 @@
+package com.mapzen.benchmark;
+
+import com.mapzen.helpers.DistanceFormatter;
+import com.mapzen.valhalla.Router.DistanceUnits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of formatting the distance label shown with every location update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceFormatterBenchmark {
+    private final DistanceFormatter formatter = DistanceFormatter.getInstance(Locale.GERMANY);
+    private final StringBuilder label = new StringBuilder();
+    private int distance;
+
+    @Benchmark
+    public String kilometers() {
+        return DistanceFormatter.format(nextDistance(), true, Locale.GERMANY,
+                DistanceUnits.KILOMETERS);
+    }
+
+    @Benchmark
+    public String miles() {
+        return DistanceFormatter.format(nextDistance(), true, Locale.US, DistanceUnits.MILES);
+    }
+
+    /**
+     * Appends into a reused builder, as a view updating its label in place would.
+     */
+    @Benchmark
+    public int kilometersIntoBuilder() {
+        label.setLength(0);
+        return formatter.formatDistance(nextDistance(), true, DistanceUnits.KILOMETERS, label)
+                .length();
+    }
+
+    /**
+     * Counts down from 5 km one meter at a time, as a label would during navigation.
+     */
+    private int nextDistance() {
+        distance = distance > 1 ? distance - 1 : 5000;
+        return distance;
+    }
+}
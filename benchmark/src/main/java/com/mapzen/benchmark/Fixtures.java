@@ -0,0 +1,101 @@
+package com.mapzen.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the route and location fixtures shared with the library tests. The fixtures directory is
+ * read from the {@code fixtures.dir} system property, which the {@code jmh} Gradle task sets.
+ */
+public final class Fixtures {
+    public static final String FIXTURES_DIR_PROPERTY = "fixtures.dir";
+    /**
+     * Pseudo fixture for a route following the GPS trace in {@code locations.txt}
+     */
+    public static final String LOCATIONS = "locations";
+    /**
+     * Pseudo fixture for a long {@link SyntheticRoute#grid(int, double, double, double)} route
+     */
+    public static final String SYNTHETIC = "synthetic";
+    public static final int SYNTHETIC_POINTS = 20000;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns the route response for a fixture name such as {@code brooklyn_valhalla}, or one of
+     * {@link #LOCATIONS} and {@link #SYNTHETIC}.
+     */
+    public static String getRoute(String name) throws IOException {
+        if (LOCATIONS.equals(name)) {
+            final List<double[]> locations = getLocations();
+            final double[] latitudes = new double[locations.size()];
+            final double[] longitudes = new double[locations.size()];
+            for (int i = 0; i < locations.size(); i++) {
+                latitudes[i] = locations.get(i)[0];
+                longitudes[i] = locations.get(i)[1];
+            }
+            return SyntheticRoute.fromPoints(latitudes, longitudes);
+        }
+
+        if (SYNTHETIC.equals(name)) {
+            return SyntheticRoute.grid(SYNTHETIC_POINTS, 15, 40.660709, -73.989327);
+        }
+
+        return read(name + ".route");
+    }
+
+    /**
+     * Returns the latitude and longitude of every point in {@code locations.txt}.
+     */
+    public static List<double[]> getLocations() throws IOException {
+        final List<double[]> locations = new ArrayList<>();
+        for (String line : read("locations.txt").split("\n")) {
+            final String[] values = line.trim().split(",");
+            if (values.length == 2) {
+                locations.add(new double[] {
+                        Double.parseDouble(values[0].trim()),
+                        Double.parseDouble(values[1].trim()) });
+            }
+        }
+        return locations;
+    }
+
+    public static String read(String name) throws IOException {
+        return read(getFile(name));
+    }
+
+    public static String read(File file) throws IOException {
+        final InputStream stream = new FileInputStream(file);
+        try {
+            final Reader reader = new InputStreamReader(stream, "UTF-8");
+            final StringBuilder builder = new StringBuilder();
+            final char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+            return builder.toString();
+        } finally {
+            stream.close();
+        }
+    }
+
+    public static File getFile(String name) {
+        return new File(getDirectory(), name);
+    }
+
+    private static File getDirectory() {
+        final String directory = System.getProperty(FIXTURES_DIR_PROPERTY);
+        if (directory != null) {
+            return new File(directory);
+        }
+        return new File("../library/src/test/fixtures");
+    }
+}
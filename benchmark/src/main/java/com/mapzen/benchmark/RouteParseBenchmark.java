@@ -0,0 +1,73 @@
+package com.mapzen.benchmark;
+
+import com.mapzen.valhalla.Route;
+import com.mapzen.valhalla.RouteParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to turn a route response into a {@link Route} that is ready for navigation, comparing the
+ * {@code JSONObject} based constructors with the streaming {@link RouteParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteParseBenchmark {
+    @Param({ "brooklyn_valhalla", "valhalla_miles", Fixtures.SYNTHETIC })
+    public String fixture;
+
+    private String json;
+
+    @Setup
+    public void setUp() throws IOException {
+        json = Fixtures.getRoute(fixture);
+    }
+
+    @Benchmark
+    public Route jsonObject() {
+        final Route route = new Route(json);
+        route.getRouteInstructions();
+        return route;
+    }
+
+    /**
+     * Parse without touching the shape or instructions, as when only the summary is shown.
+     */
+    @Benchmark
+    public Route jsonObjectLazy() {
+        final Route route = new Route(json, true);
+        route.getTotalDistance();
+        return route;
+    }
+
+    @Benchmark
+    public Route streaming() throws IOException {
+        final Route route = new RouteParser().parse(new StringReader(json));
+        route.getRouteInstructions();
+        return route;
+    }
+
+    @Benchmark
+    public Route streamingLazy() throws IOException {
+        final Route route = new RouteParser(true).parse(new StringReader(json));
+        route.getTotalDistance();
+        return route;
+    }
+}
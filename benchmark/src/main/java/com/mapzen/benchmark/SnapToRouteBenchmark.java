@@ -0,0 +1,79 @@
+package com.mapzen.benchmark;
+
+import com.mapzen.model.DistanceStrategy;
+import com.mapzen.model.HybridDistanceStrategy;
+import com.mapzen.model.ValhallaLocation;
+import com.mapzen.model.VincentyDistanceStrategy;
+import com.mapzen.valhalla.Route;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to snap a whole trace of location updates to a route, from the first point to the
+ * destination. Every invocation starts from a freshly parsed route since snapping advances the
+ * route's progress; parsing happens in setup and is not measured. Divide by the trace length
+ * printed during setup for the cost of a single update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapToRouteBenchmark {
+    public static final double GPS_ERROR_METERS = 10;
+
+    @Param({ "brooklyn_valhalla", Fixtures.SYNTHETIC })
+    public String fixture;
+
+    @Param({ "vincenty", "hybrid" })
+    public String strategy;
+
+    private JSONObject json;
+    private ValhallaLocation[] trace;
+    private Route route;
+
+    @Setup(Level.Trial)
+    public void setUpTrace() throws IOException, JSONException {
+        json = new JSONObject(Fixtures.getRoute(fixture));
+        trace = Traces.alongPolyline(new Route(json).getPolyline(), GPS_ERROR_METERS, 1);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpRoute() {
+        route = new Route(json);
+        route.setDistanceStrategy(getDistanceStrategy());
+        route.getRouteInstructions();
+    }
+
+    @Benchmark
+    public void snapTrace(Blackhole blackhole) {
+        for (ValhallaLocation location : trace) {
+            blackhole.consume(route.snapToRoute(location));
+        }
+    }
+
+    private DistanceStrategy getDistanceStrategy() {
+        if ("hybrid".equals(strategy)) {
+            return HybridDistanceStrategy.INSTANCE;
+        }
+        return VincentyDistanceStrategy.INSTANCE;
+    }
+}
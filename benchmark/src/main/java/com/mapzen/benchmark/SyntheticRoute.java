@@ -0,0 +1,140 @@
+package com.mapzen.benchmark;
+
+import com.mapzen.model.ValhallaLocation;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Builds route responses in the Valhalla format for arbitrary shapes so that benchmarks can run on
+ * routes much longer and denser than the checked in fixtures. A maneuver starts every
+ * {@link #POINTS_PER_MANEUVER} points and the last point is the destination.
+ */
+public final class SyntheticRoute {
+    public static final int POINTS_PER_MANEUVER = 25;
+    private static final int MANEUVER_TYPE_RIGHT = 10;
+    private static final int MANEUVER_TYPE_DESTINATION = 4;
+    private static final double METERS_PER_DEGREE = 111319.49;
+    private static final double METERS_PER_SECOND = 10;
+
+    private SyntheticRoute() {
+    }
+
+    /**
+     * Returns a route that zig-zags north through a street grid: long runs alternating east and
+     * west joined by short runs north, with consecutive points {@code spacingMeters} apart.
+     */
+    public static String grid(int points, double spacingMeters, double startLat, double startLng) {
+        final int run = 40;
+        final int cross = 8;
+        final double latStep = spacingMeters / METERS_PER_DEGREE;
+        final double lngStep = latStep / Math.cos(Math.toRadians(startLat));
+        final double[] latitudes = new double[points];
+        final double[] longitudes = new double[points];
+        double lat = startLat;
+        double lng = startLng;
+        int direction = 1;
+        for (int i = 0; i < points; i++) {
+            latitudes[i] = lat;
+            longitudes[i] = lng;
+            final int step = i % (run + cross);
+            if (step < run) {
+                lng += direction * lngStep;
+            } else {
+                lat += latStep;
+                if (step == run + cross - 1) {
+                    direction = -direction;
+                }
+            }
+        }
+        return fromPoints(latitudes, longitudes);
+    }
+
+    /**
+     * Returns a route with a single leg following the given points.
+     */
+    public static String fromPoints(double[] latitudes, double[] longitudes) {
+        try {
+            final int size = latitudes.length;
+            final double[] distances = new double[size];
+            final float[] results = new float[1];
+            for (int i = 1; i < size; i++) {
+                ValhallaLocation.distanceBetween(latitudes[i - 1], longitudes[i - 1],
+                        latitudes[i], longitudes[i], results);
+                distances[i] = distances[i - 1] + results[0];
+            }
+
+            final JSONArray maneuvers = new JSONArray();
+            for (int begin = 0; begin < size - 1; begin += POINTS_PER_MANEUVER) {
+                final int end = Math.min(begin + POINTS_PER_MANEUVER, size - 1);
+                final String street = "Synthetic Street " + (begin / POINTS_PER_MANEUVER);
+                maneuvers.put(getManeuver(MANEUVER_TYPE_RIGHT, "Turn right onto " + street + ".",
+                        street, distances[end] - distances[begin], begin, end));
+            }
+            maneuvers.put(getManeuver(MANEUVER_TYPE_DESTINATION, "You have arrived.", null, 0,
+                    size - 1, size - 1));
+
+            final JSONObject leg = new JSONObject()
+                    .put("shape", encode(latitudes, longitudes))
+                    .put("maneuvers", maneuvers);
+            final JSONObject summary = new JSONObject()
+                    .put("length", distances[size - 1] / 1000)
+                    .put("time", (int) (distances[size - 1] / METERS_PER_SECOND));
+            final JSONObject trip = new JSONObject()
+                    .put("status", 0)
+                    .put("status_message", "Found route between points")
+                    .put("units", "kilometers")
+                    .put("summary", summary)
+                    .put("legs", new JSONArray().put(leg));
+            return new JSONObject().put("trip", trip).toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JSONObject getManeuver(int type, String instruction, String street,
+            double meters, int begin, int end) throws JSONException {
+        final JSONObject maneuver = new JSONObject()
+                .put("type", type)
+                .put("instruction", instruction)
+                .put("verbal_pre_transition_instruction", instruction)
+                .put("length", meters / 1000)
+                .put("time", (int) (meters / METERS_PER_SECOND))
+                .put("begin_shape_index", begin)
+                .put("end_shape_index", end)
+                .put("travel_mode", "drive")
+                .put("travel_type", "car");
+        if (street != null) {
+            maneuver.put("street_names", new JSONArray().put(street));
+        }
+        return maneuver;
+    }
+
+    /**
+     * Encodes points with the precision 6 polyline algorithm used by Valhalla.
+     */
+    static String encode(double[] latitudes, double[] longitudes) {
+        final StringBuilder encoded = new StringBuilder();
+        long lastLat = 0;
+        long lastLng = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+            final long lat = Math.round(latitudes[i] * 1E6);
+            final long lng = Math.round(longitudes[i] * 1E6);
+            encodeValue(lat - lastLat, encoded);
+            encodeValue(lng - lastLng, encoded);
+            lastLat = lat;
+            lastLng = lng;
+        }
+        return encoded.toString();
+    }
+
+    private static void encodeValue(long value, StringBuilder encoded) {
+        long shifted = value < 0 ? ~(value << 1) : value << 1;
+        while (shifted >= 0x20) {
+            encoded.append((char) ((0x20 | (shifted & 0x1f)) + 63));
+            shifted >>= 5;
+        }
+        encoded.append((char) (shifted + 63));
+    }
+}
@@ -0,0 +1,52 @@
+package com.mapzen.benchmark;
+
+import com.mapzen.model.ValhallaLocation;
+import com.mapzen.valhalla.Polyline;
+
+import java.util.Random;
+
+/**
+ * Generates location updates along a route the way a GPS receiver would report them: a few points
+ * per segment, each displaced from the shape by a small random error.
+ */
+public final class Traces {
+    private static final double METERS_PER_DEGREE = 111319.49;
+
+    private Traces() {
+    }
+
+    /**
+     * Returns locations at a quarter, half and three quarters of every segment of the polyline,
+     * each moved by up to {@code errorMeters} in a random direction.
+     */
+    public static ValhallaLocation[] alongPolyline(Polyline polyline, double errorMeters,
+            long seed) {
+        final Random random = new Random(seed);
+        final int segments = polyline.size() - 1;
+        final ValhallaLocation[] locations = new ValhallaLocation[segments * 3];
+        int count = 0;
+        for (int i = 0; i < segments; i++) {
+            if (polyline.getLegDistance(i) == 0) {
+                continue;
+            }
+            for (int quarter = 1; quarter <= 3; quarter++) {
+                final double t = quarter / 4.0;
+                final double lat = polyline.getLatitude(i)
+                        + t * (polyline.getLatitude(i + 1) - polyline.getLatitude(i));
+                final double lng = polyline.getLongitude(i)
+                        + t * (polyline.getLongitude(i + 1) - polyline.getLongitude(i));
+                final double error = random.nextDouble() * errorMeters / METERS_PER_DEGREE;
+                final double angle = random.nextDouble() * 2 * Math.PI;
+                final ValhallaLocation location = new ValhallaLocation();
+                location.setLatitude(lat + Math.cos(angle) * error);
+                location.setLongitude(lng + Math.sin(angle) * error
+                        / Math.cos(Math.toRadians(lat)));
+                locations[count++] = location;
+            }
+        }
+
+        final ValhallaLocation[] trace = new ValhallaLocation[count];
+        System.arraycopy(locations, 0, trace, 0, count);
+        return trace;
+    }
+}
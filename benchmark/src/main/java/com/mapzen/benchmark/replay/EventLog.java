@@ -0,0 +1,148 @@
+package com.mapzen.benchmark.replay;
+
+import com.mapzen.helpers.RouteEngine;
+import com.mapzen.helpers.RouteListener;
+import com.mapzen.model.ValhallaLocation;
+
+import java.util.Arrays;
+
+/**
+ * {@link RouteListener} that records every event with the index of the fix that caused it. Events
+ * are packed into a growable int array so that recording them allocates close to nothing and does
+ * not distort the allocation figures of a replay.
+ */
+public class EventLog implements RouteListener {
+    public enum Event {
+        ROUTE_START,
+        RECALCULATE,
+        SNAP_LOCATION,
+        MILESTONE_REACHED,
+        APPROACH_INSTRUCTION,
+        INSTRUCTION_COMPLETE,
+        UPDATE_DISTANCE,
+        ROUTE_COMPLETE
+    }
+
+    private static final int FIELDS = 4;
+    private static final Event[] EVENTS = Event.values();
+    private static final RouteEngine.Milestone[] MILESTONES = RouteEngine.Milestone.values();
+
+    private int[] entries = new int[FIELDS * 1024];
+    private int size;
+    private final int[] counts = new int[EVENTS.length];
+    private int fix = -1;
+
+    /**
+     * Sets the index of the fix that following events are attributed to. Events raised while
+     * handling a batch are attributed to its last fix.
+     */
+    public void setFix(int fix) {
+        this.fix = fix;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Event getEvent(int index) {
+        return EVENTS[entries[index * FIELDS]];
+    }
+
+    /**
+     * Returns the index of the fix that caused the event, or -1 for events raised before the
+     * first fix such as {@link Event#ROUTE_START}.
+     */
+    public int getFix(int index) {
+        return entries[index * FIELDS + 1];
+    }
+
+    public int getCount(Event event) {
+        return counts[event.ordinal()];
+    }
+
+    /**
+     * Returns a readable description of the event, for example
+     * {@code 12 MILESTONE_REACHED 3 QUARTER_MILE}.
+     */
+    public String describe(int index) {
+        final Event event = getEvent(index);
+        final int first = entries[index * FIELDS + 2];
+        final int second = entries[index * FIELDS + 3];
+        final StringBuilder builder = new StringBuilder().append(getFix(index)).append(' ')
+                .append(event);
+        switch (event) {
+            case MILESTONE_REACHED:
+                return builder.append(' ').append(first).append(' ').append(MILESTONES[second])
+                        .toString();
+            case APPROACH_INSTRUCTION:
+            case INSTRUCTION_COMPLETE:
+                return builder.append(' ').append(first).toString();
+            case UPDATE_DISTANCE:
+                return builder.append(' ').append(first).append(' ').append(second).toString();
+            default:
+                return builder.toString();
+        }
+    }
+
+    /**
+     * Returns the events other than {@link Event#SNAP_LOCATION} and {@link Event#UPDATE_DISTANCE},
+     * which are raised for nearly every fix, one per line.
+     */
+    public String describeMilestones() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            final Event event = getEvent(i);
+            if (event != Event.SNAP_LOCATION && event != Event.UPDATE_DISTANCE) {
+                builder.append(describe(i)).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override public void onRouteStart() {
+        add(Event.ROUTE_START, 0, 0);
+    }
+
+    @Override public void onRecalculate(ValhallaLocation location) {
+        add(Event.RECALCULATE, 0, 0);
+    }
+
+    @Override public void onSnapLocation(ValhallaLocation originalLocation,
+            ValhallaLocation snapLocation) {
+        add(Event.SNAP_LOCATION, 0, 0);
+    }
+
+    @Override public void onMilestoneReached(int index, RouteEngine.Milestone milestone) {
+        add(Event.MILESTONE_REACHED, index, milestone.ordinal());
+    }
+
+    @Override public void onApproachInstruction(int index) {
+        add(Event.APPROACH_INSTRUCTION, index, 0);
+    }
+
+    @Override public void onInstructionComplete(int index) {
+        add(Event.INSTRUCTION_COMPLETE, index, 0);
+    }
+
+    @Override public void onUpdateDistance(int distanceToNextInstruction,
+            int distanceToDestination) {
+        add(Event.UPDATE_DISTANCE, distanceToNextInstruction, distanceToDestination);
+    }
+
+    @Override public void onRouteComplete() {
+        add(Event.ROUTE_COMPLETE, 0, 0);
+    }
+
+    private void add(Event event, int first, int second) {
+        if ((size + 1) * FIELDS > entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        final int offset = size * FIELDS;
+        entries[offset] = event.ordinal();
+        entries[offset + 1] = fix;
+        entries[offset + 2] = first;
+        entries[offset + 3] = second;
+        counts[event.ordinal()]++;
+        size++;
+    }
+}
@@ -0,0 +1,69 @@
+package com.mapzen.benchmark.replay;
+
+import java.util.Arrays;
+
+/**
+ * Measurements from replaying one trace: the time each fix spent in
+ * {@code RouteEngine.onLocationChanged}, the bytes allocated while replaying and the listener
+ * events that were raised.
+ */
+public class ReplayResult {
+    private final long[] latencies;
+    private final long[] sortedLatencies;
+    private final long allocatedBytes;
+    private final EventLog events;
+
+    ReplayResult(long[] latencies, long allocatedBytes, EventLog events) {
+        this.latencies = latencies;
+        this.allocatedBytes = allocatedBytes;
+        this.events = events;
+        sortedLatencies = Arrays.copyOf(latencies, latencies.length);
+        Arrays.sort(sortedLatencies);
+    }
+
+    public int getFixCount() {
+        return latencies.length;
+    }
+
+    /**
+     * Returns the time in nanoseconds spent handling the fix at the given index.
+     */
+    public long getLatency(int fix) {
+        return latencies[fix];
+    }
+
+    /**
+     * Returns the given percentile, between 0 and 100, of the time in nanoseconds spent handling
+     * a fix.
+     */
+    public long getLatencyPercentile(double percentile) {
+        return percentile(sortedLatencies, percentile);
+    }
+
+    /**
+     * Returns the bytes allocated by the replaying thread while handling fixes, or -1 if the JVM
+     * does not support measuring thread allocations.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public EventLog getEvents() {
+        return events;
+    }
+
+    public boolean isComplete() {
+        return events.getCount(EventLog.Event.ROUTE_COMPLETE) > 0;
+    }
+
+    /**
+     * Returns the given percentile of sorted values using the nearest rank method.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+    }
+}
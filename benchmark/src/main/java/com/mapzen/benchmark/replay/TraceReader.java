@@ -0,0 +1,206 @@
+package com.mapzen.benchmark.replay;
+
+import com.mapzen.model.ValhallaLocation;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Reads recorded location traces in one of the supported formats:
+ * <ul>
+ *     <li>CSV: one {@code latitude,longitude[,bearing]} fix per line, as in
+ *     {@code locations.txt}. Blank lines, {@code #} comments and header rows are skipped.</li>
+ *     <li>GPX: every {@code trkpt}, {@code rtept} or {@code wpt} element, in document order.</li>
+ *     <li>NMEA 0183: {@code RMC} sentences with a valid fix, or {@code GGA} sentences if the log
+ *     has no {@code RMC}. Sentences with a bad checksum are skipped.</li>
+ * </ul>
+ */
+public final class TraceReader {
+    public enum Format {
+        CSV,
+        GPX,
+        NMEA
+    }
+
+    private TraceReader() {
+    }
+
+    /**
+     * Reads a trace file, choosing the format from its extension: {@code .gpx}, {@code .nmea} or
+     * {@code .log} for NMEA, and CSV for anything else.
+     */
+    public static List<ValhallaLocation> read(File file) throws IOException {
+        final Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            return read(reader, getFormat(file.getName()));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static List<ValhallaLocation> read(Reader reader, Format format) throws IOException {
+        switch (format) {
+            case GPX:
+                return readGpx(reader);
+            case NMEA:
+                return readNmea(reader);
+            default:
+                return readCsv(reader);
+        }
+    }
+
+    static Format getFormat(String fileName) {
+        final String name = fileName.toLowerCase(Locale.US);
+        if (name.endsWith(".gpx")) {
+            return Format.GPX;
+        } else if (name.endsWith(".nmea") || name.endsWith(".log")) {
+            return Format.NMEA;
+        } else {
+            return Format.CSV;
+        }
+    }
+
+    private static List<ValhallaLocation> readCsv(Reader reader) throws IOException {
+        final List<ValhallaLocation> trace = new ArrayList<>();
+        final BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            final String[] values = line.split(",");
+            if (values.length < 2) {
+                continue;
+            }
+
+            try {
+                final ValhallaLocation location = newLocation(
+                        Double.parseDouble(values[0].trim()),
+                        Double.parseDouble(values[1].trim()));
+                if (values.length > 2 && !values[2].trim().isEmpty()) {
+                    location.setBearing(Float.parseFloat(values[2].trim()));
+                }
+                trace.add(location);
+            } catch (NumberFormatException e) {
+                // header row
+            }
+        }
+        return trace;
+    }
+
+    private static List<ValhallaLocation> readGpx(Reader reader) throws IOException {
+        final List<ValhallaLocation> trace = new ArrayList<>();
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(new InputSource(reader),
+                    new DefaultHandler() {
+                        @Override
+                        public void startElement(String uri, String localName, String qName,
+                                Attributes attributes) {
+                            final String name = qName.substring(qName.indexOf(':') + 1);
+                            if (name.equals("trkpt") || name.equals("rtept")
+                                    || name.equals("wpt")) {
+                                trace.add(newLocation(
+                                        Double.parseDouble(attributes.getValue("lat")),
+                                        Double.parseDouble(attributes.getValue("lon"))));
+                            }
+                        }
+                    });
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Invalid GPX trace", e);
+        }
+        return trace;
+    }
+
+    private static List<ValhallaLocation> readNmea(Reader reader) throws IOException {
+        final List<ValhallaLocation> rmc = new ArrayList<>();
+        final List<ValhallaLocation> gga = new ArrayList<>();
+        final BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (!line.startsWith("$") || !hasValidChecksum(line)) {
+                continue;
+            }
+
+            final int end = line.indexOf('*');
+            final String[] fields = line.substring(1, end < 0 ? line.length() : end)
+                    .split(",", -1);
+            if (fields[0].length() != 5) {
+                continue;
+            }
+
+            final String type = fields[0].substring(2);
+            try {
+                if (type.equals("RMC") && fields.length > 8 && fields[2].equals("A")) {
+                    final ValhallaLocation location = newLocation(
+                            parseCoordinate(fields[3], fields[4]),
+                            parseCoordinate(fields[5], fields[6]));
+                    if (!fields[8].isEmpty()) {
+                        location.setBearing(Float.parseFloat(fields[8]));
+                    }
+                    rmc.add(location);
+                } else if (type.equals("GGA") && fields.length > 6 && !fields[6].isEmpty()
+                        && !fields[6].equals("0")) {
+                    gga.add(newLocation(parseCoordinate(fields[2], fields[3]),
+                            parseCoordinate(fields[4], fields[5])));
+                }
+            } catch (NumberFormatException e) {
+                // incomplete sentence
+            }
+        }
+        return rmc.isEmpty() ? gga : rmc;
+    }
+
+    /**
+     * Converts an NMEA {@code ddmm.mmmm} or {@code dddmm.mmmm} value and its hemisphere to
+     * decimal degrees.
+     */
+    private static double parseCoordinate(String value, String hemisphere) {
+        final int dot = value.indexOf('.');
+        final int minutesStart = (dot < 0 ? value.length() : dot) - 2;
+        final double degrees = Integer.parseInt(value.substring(0, minutesStart))
+                + Double.parseDouble(value.substring(minutesStart)) / 60;
+        return hemisphere.equals("S") || hemisphere.equals("W") ? -degrees : degrees;
+    }
+
+    private static boolean hasValidChecksum(String sentence) {
+        final int star = sentence.indexOf('*');
+        if (star < 0) {
+            return true;
+        }
+
+        int checksum = 0;
+        for (int i = 1; i < star; i++) {
+            checksum ^= sentence.charAt(i);
+        }
+        try {
+            return Integer.parseInt(sentence.substring(star + 1).trim(), 16) == checksum;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static ValhallaLocation newLocation(double lat, double lng) {
+        final ValhallaLocation location = new ValhallaLocation();
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        return location;
+    }
+}
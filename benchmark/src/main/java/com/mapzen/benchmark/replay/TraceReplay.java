@@ -0,0 +1,272 @@
+package com.mapzen.benchmark.replay;
+
+import com.mapzen.benchmark.Fixtures;
+import com.mapzen.helpers.RouteEngine;
+import com.mapzen.model.DistanceStrategy;
+import com.mapzen.model.EquirectangularDistanceStrategy;
+import com.mapzen.model.HybridDistanceStrategy;
+import com.mapzen.model.ValhallaLocation;
+import com.mapzen.model.VincentyDistanceStrategy;
+import com.mapzen.valhalla.Route;
+import com.mapzen.valhalla.RouteParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays recorded location traces through {@link RouteEngine#onLocationChanged(ValhallaLocation)}
+ * as fast as possible. Every replay starts from a freshly parsed copy of the same route; parsing
+ * and reading the trace are not measured.
+ *
+ * <p>From the command line: {@code TraceReplay [options] <route> <trace>...} where the route is a
+ * response file or the name of a test fixture, and each trace is a file or a directory of files
+ * read with {@link TraceReader}. Options are {@code --strategy=vincenty|hybrid|equirectangular},
+ * {@code --warmup=<replays of every trace before measuring>}, {@code --batch=<fixes per batch>}
+ * to deliver fixes with {@link RouteEngine#onLocationsChanged(List)} and {@code --events} to print
+ * the instruction events of each replay. Without arguments {@code locations.txt} is replayed against
+ * a route following it.
+ */
+public class TraceReplay {
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final String routeJson;
+    private DistanceStrategy distanceStrategy;
+    private int batchSize = 1;
+
+    public TraceReplay(String routeJson) {
+        this.routeJson = routeJson;
+    }
+
+    /**
+     * Sets the strategy given to the engine. If never set, routes use their default strategy.
+     */
+    public void setDistanceStrategy(DistanceStrategy distanceStrategy) {
+        this.distanceStrategy = distanceStrategy;
+    }
+
+    /**
+     * Sets the number of fixes delivered together. Batches of more than one fix are delivered
+     * with {@link RouteEngine#onLocationsChanged(List)} and every fix of a batch is given an
+     * equal share of the time it took.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Replays the trace against a new route and engine. The trace itself is not modified.
+     */
+    public ReplayResult replay(List<ValhallaLocation> trace) throws IOException {
+        final ValhallaLocation[] fixes = new ValhallaLocation[trace.size()];
+        for (int i = 0; i < fixes.length; i++) {
+            fixes[i] = new ValhallaLocation(trace.get(i));
+        }
+
+        final Route route = new RouteParser().parse(new StringReader(routeJson));
+        final EventLog events = new EventLog();
+        final RouteEngine engine = new RouteEngine();
+        engine.setListener(events);
+        if (distanceStrategy != null) {
+            engine.setDistanceStrategy(distanceStrategy);
+        }
+        engine.setRoute(route);
+
+        final long[] latencies = new long[fixes.length];
+        final long allocatedBefore = getAllocatedBytes();
+        if (batchSize == 1) {
+            for (int i = 0; i < fixes.length; i++) {
+                events.setFix(i);
+                final long start = System.nanoTime();
+                engine.onLocationChanged(fixes[i]);
+                latencies[i] = System.nanoTime() - start;
+            }
+        } else {
+            final List<ValhallaLocation> locations = Arrays.asList(fixes);
+            for (int from = 0; from < fixes.length; from += batchSize) {
+                final int to = Math.min(from + batchSize, fixes.length);
+                final List<ValhallaLocation> batch = locations.subList(from, to);
+                events.setFix(to - 1);
+                final long start = System.nanoTime();
+                engine.onLocationsChanged(batch);
+                final long latency = (System.nanoTime() - start) / (to - from);
+                Arrays.fill(latencies, from, to, latency);
+            }
+        }
+        final long allocatedAfter = getAllocatedBytes();
+
+        final long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new ReplayResult(latencies, allocated, events);
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if not supported.
+     */
+    private static long getAllocatedBytes() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()
+                    && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String strategy = null;
+        int warmup = 0;
+        int batchSize = 1;
+        boolean printEvents = false;
+        final List<String> operands = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--strategy=")) {
+                strategy = arg.substring("--strategy=".length());
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--batch=")) {
+                batchSize = Integer.parseInt(arg.substring("--batch=".length()));
+            } else if (arg.equals("--events")) {
+                printEvents = true;
+            } else {
+                operands.add(arg);
+            }
+        }
+
+        final String routeJson;
+        final List<File> traceFiles = new ArrayList<>();
+        if (operands.isEmpty()) {
+            routeJson = Fixtures.getRoute(Fixtures.LOCATIONS);
+            traceFiles.add(Fixtures.getFile("locations.txt"));
+        } else if (operands.size() == 1) {
+            System.err.println("Usage: TraceReplay [--strategy=vincenty|hybrid|equirectangular] "
+                    + "[--warmup=N] [--batch=N] [--events] <route> <trace>...");
+            System.exit(1);
+            return;
+        } else {
+            final File routeFile = new File(operands.get(0));
+            routeJson = routeFile.isFile() ? Fixtures.read(routeFile)
+                    : Fixtures.getRoute(operands.get(0));
+            for (String operand : operands.subList(1, operands.size())) {
+                addTraceFiles(new File(operand), traceFiles);
+            }
+        }
+
+        final TraceReplay replay = new TraceReplay(routeJson);
+        replay.setBatchSize(batchSize);
+        if (strategy != null) {
+            replay.setDistanceStrategy(getDistanceStrategy(strategy));
+        }
+
+        final List<List<ValhallaLocation>> traces = new ArrayList<>();
+        for (File file : traceFiles) {
+            traces.add(TraceReader.read(file));
+        }
+        for (int i = 0; i < warmup; i++) {
+            for (List<ValhallaLocation> trace : traces) {
+                replay.replay(trace);
+            }
+        }
+
+        System.out.println(String.format(Locale.US, "%-24s %6s %8s %8s %8s %8s %10s %s",
+                "trace", "fixes", "p50 us", "p90 us", "p99 us", "max us", "bytes/fix",
+                "events"));
+        final List<long[]> allLatencies = new ArrayList<>();
+        int totalFixes = 0;
+        long totalAllocated = 0;
+        for (int i = 0; i < traces.size(); i++) {
+            final ReplayResult result = replay.replay(traces.get(i));
+            System.out.println(format(traceFiles.get(i).getName(), result));
+            if (printEvents) {
+                System.out.print(result.getEvents().describeMilestones());
+            }
+
+            final long[] latencies = new long[result.getFixCount()];
+            for (int fix = 0; fix < latencies.length; fix++) {
+                latencies[fix] = result.getLatency(fix);
+            }
+            allLatencies.add(latencies);
+            totalFixes += latencies.length;
+            totalAllocated = totalAllocated < 0 || result.getAllocatedBytes() < 0 ? -1
+                    : totalAllocated + result.getAllocatedBytes();
+        }
+
+        if (traces.size() > 1) {
+            final long[] sorted = new long[totalFixes];
+            int offset = 0;
+            for (long[] latencies : allLatencies) {
+                System.arraycopy(latencies, 0, sorted, offset, latencies.length);
+                offset += latencies.length;
+            }
+            Arrays.sort(sorted);
+            System.out.println(String.format(Locale.US, "%-24s %6d %8.1f %8.1f %8.1f %8.1f %10s",
+                    "total (" + traces.size() + " traces)", totalFixes,
+                    ReplayResult.percentile(sorted, 50) / NANOS_PER_MICRO,
+                    ReplayResult.percentile(sorted, 90) / NANOS_PER_MICRO,
+                    ReplayResult.percentile(sorted, 99) / NANOS_PER_MICRO,
+                    ReplayResult.percentile(sorted, 100) / NANOS_PER_MICRO,
+                    formatBytesPerFix(totalAllocated, totalFixes)));
+        }
+    }
+
+    static String format(String name, ReplayResult result) {
+        final EventLog events = result.getEvents();
+        return String.format(Locale.US, "%-24s %6d %8.1f %8.1f %8.1f %8.1f %10s "
+                        + "snap=%d instruction=%d recalculate=%d complete=%b",
+                name, result.getFixCount(),
+                result.getLatencyPercentile(50) / NANOS_PER_MICRO,
+                result.getLatencyPercentile(90) / NANOS_PER_MICRO,
+                result.getLatencyPercentile(99) / NANOS_PER_MICRO,
+                result.getLatencyPercentile(100) / NANOS_PER_MICRO,
+                formatBytesPerFix(result.getAllocatedBytes(), result.getFixCount()),
+                events.getCount(EventLog.Event.SNAP_LOCATION),
+                events.getCount(EventLog.Event.INSTRUCTION_COMPLETE),
+                events.getCount(EventLog.Event.RECALCULATE),
+                result.isComplete());
+    }
+
+    private static String formatBytesPerFix(long allocated, int fixes) {
+        if (allocated < 0 || fixes == 0) {
+            return "n/a";
+        }
+        return String.valueOf(allocated / fixes);
+    }
+
+    private static void addTraceFiles(File file, List<File> traceFiles) {
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    if (child.isFile()) {
+                        traceFiles.add(child);
+                    }
+                }
+            }
+        } else {
+            traceFiles.add(file);
+        }
+    }
+
+    private static DistanceStrategy getDistanceStrategy(String name) {
+        switch (name) {
+            case "hybrid":
+                return HybridDistanceStrategy.INSTANCE;
+            case "equirectangular":
+                return EquirectangularDistanceStrategy.INSTANCE;
+            case "vincenty":
+                return VincentyDistanceStrategy.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown distance strategy " + name);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.mapzen.benchmark.replay;
+
+import com.mapzen.benchmark.Fixtures;
+import com.mapzen.model.ValhallaLocation;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
+
+public class TraceReaderTest {
+    @Test
+    public void read_shouldReadLocationsFixture() throws Exception {
+        List<ValhallaLocation> trace = TraceReader.read(Fixtures.getFile("locations.txt"));
+        assertThat(trace).hasSize(Fixtures.getLocations().size());
+        assertThat(trace.get(0).getLatitude()).isEqualTo(43.6648467);
+        assertThat(trace.get(0).getLongitude()).isEqualTo(-70.26213046);
+    }
+
+    @Test
+    public void getFormat_shouldUseExtension() throws Exception {
+        assertThat(TraceReader.getFormat("drive.GPX")).isEqualTo(TraceReader.Format.GPX);
+        assertThat(TraceReader.getFormat("drive.nmea")).isEqualTo(TraceReader.Format.NMEA);
+        assertThat(TraceReader.getFormat("drive.log")).isEqualTo(TraceReader.Format.NMEA);
+        assertThat(TraceReader.getFormat("drive.csv")).isEqualTo(TraceReader.Format.CSV);
+        assertThat(TraceReader.getFormat("locations.txt")).isEqualTo(TraceReader.Format.CSV);
+    }
+
+    @Test
+    public void csv_shouldSkipHeaderAndCommentsAndReadBearing() throws Exception {
+        List<ValhallaLocation> trace = read("lat,lng,bearing\n"
+                + "# recorded in Brooklyn\n"
+                + "\n"
+                + "40.660709, -73.989327\n"
+                + "40.661,-73.989,90.5\n", TraceReader.Format.CSV);
+        assertThat(trace).hasSize(2);
+        assertThat(trace.get(0).getLatitude()).isEqualTo(40.660709);
+        assertThat(trace.get(0).hasBearing()).isFalse();
+        assertThat(trace.get(1).getLongitude()).isEqualTo(-73.989);
+        assertThat(trace.get(1).getBearing()).isEqualTo(90.5f);
+    }
+
+    @Test
+    public void gpx_shouldReadTrackPoints() throws Exception {
+        List<ValhallaLocation> trace = read("<?xml version=\"1.0\"?>\n"
+                + "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                + "  <trk><trkseg>\n"
+                + "    <trkpt lat=\"40.660709\" lon=\"-73.989327\"><time>2017-01-01T00:00:00Z"
+                + "</time></trkpt>\n"
+                + "    <trkpt lat=\"40.661\" lon=\"-73.989\"/>\n"
+                + "  </trkseg></trk>\n"
+                + "</gpx>\n", TraceReader.Format.GPX);
+        assertThat(trace).hasSize(2);
+        assertThat(trace.get(0).getLatitude()).isEqualTo(40.660709);
+        assertThat(trace.get(0).getLongitude()).isEqualTo(-73.989327);
+        assertThat(trace.get(1).getLatitude()).isEqualTo(40.661);
+    }
+
+    @Test(expected = IOException.class)
+    public void gpx_shouldThrowForInvalidDocument() throws Exception {
+        read("<gpx><trkpt", TraceReader.Format.GPX);
+    }
+
+    @Test
+    public void nmea_shouldReadValidRmcSentences() throws Exception {
+        List<ValhallaLocation> trace = read(
+                "$GPGGA,123519,4807.038,N,01131.000,W,1,08,0.9,545.4,M,46.9,M,,*55\n"
+                + "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A\n"
+                + "$GPRMC,123520,V,4807.038,N,01131.000,E,,,230394,003.1,W*7B\n"
+                + "$GPRMC,123521,A,4807.100,N,01131.100,E,022.4,,230394,003.1,W*00\n"
+                + "$GPRMC,123521,A,4807.100,N,01131.100,E,022.4,,230394,003.1,W*4C\n",
+                TraceReader.Format.NMEA);
+        assertThat(trace).hasSize(2);
+        assertThat(trace.get(0).getLatitude()).isEqualTo(48 + 7.038 / 60, offset(1e-9));
+        assertThat(trace.get(0).getLongitude()).isEqualTo(11 + 31.0 / 60, offset(1e-9));
+        assertThat(trace.get(0).getBearing()).isEqualTo(84.4f);
+        assertThat(trace.get(1).getLatitude()).isEqualTo(48 + 7.1 / 60, offset(1e-9));
+        assertThat(trace.get(1).hasBearing()).isFalse();
+    }
+
+    @Test
+    public void nmea_shouldFallBackToGgaWithoutRmc() throws Exception {
+        List<ValhallaLocation> trace = read(
+                "$GPGGA,123519,4807.038,N,01131.000,W,1,08,0.9,545.4,M,46.9,M,,*55\n"
+                + "$GPGGA,123520,,,,,0,00,,,M,,M,,*61\n"
+                + "$GPGGA,123521,4039.000,S,07359.400,W,2,08,0.9,545.4,M,46.9,M,,*40\n",
+                TraceReader.Format.NMEA);
+        assertThat(trace).hasSize(2);
+        assertThat(trace.get(0).getLongitude()).isEqualTo(-(11 + 31.0 / 60), offset(1e-9));
+        assertThat(trace.get(1).getLatitude()).isEqualTo(-(40 + 39.0 / 60), offset(1e-9));
+        assertThat(trace.get(1).getLongitude()).isEqualTo(-(73 + 59.4 / 60), offset(1e-9));
+    }
+
+    private static List<ValhallaLocation> read(String trace, TraceReader.Format format)
+            throws IOException {
+        return TraceReader.read(new StringReader(trace), format);
+    }
+}
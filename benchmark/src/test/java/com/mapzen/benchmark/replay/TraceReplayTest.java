@@ -0,0 +1,89 @@
+package com.mapzen.benchmark.replay;
+
+import com.mapzen.benchmark.Fixtures;
+import com.mapzen.model.HybridDistanceStrategy;
+import com.mapzen.model.ValhallaLocation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class TraceReplayTest {
+    private TraceReplay replay;
+    private List<ValhallaLocation> trace;
+
+    @Before
+    public void setUp() throws Exception {
+        replay = new TraceReplay(Fixtures.getRoute(Fixtures.LOCATIONS));
+        trace = TraceReader.read(Fixtures.getFile("locations.txt"));
+    }
+
+    @Test
+    public void replay_shouldMeasureEveryFix() throws Exception {
+        ReplayResult result = replay.replay(trace);
+        assertThat(result.getFixCount()).isEqualTo(trace.size());
+        assertThat(result.getLatencyPercentile(50))
+                .isLessThanOrEqualTo(result.getLatencyPercentile(99));
+        assertThat(result.getLatencyPercentile(100)).isGreaterThan(0);
+    }
+
+    @Test
+    public void replay_shouldCompleteRouteFollowingTrace() throws Exception {
+        ReplayResult result = replay.replay(trace);
+        EventLog events = result.getEvents();
+        assertThat(events.getEvent(0)).isEqualTo(EventLog.Event.ROUTE_START);
+        assertThat(events.getFix(0)).isEqualTo(-1);
+        assertThat(events.getCount(EventLog.Event.RECALCULATE)).isEqualTo(0);
+        assertThat(events.getCount(EventLog.Event.INSTRUCTION_COMPLETE)).isGreaterThan(0);
+        assertThat(result.isComplete()).isTrue();
+        assertThat(events.getEvent(events.size() - 1))
+                .isEqualTo(EventLog.Event.UPDATE_DISTANCE);
+        assertThat(events.describe(events.size() - 1)).endsWith("UPDATE_DISTANCE 0 0");
+    }
+
+    @Test
+    public void replay_shouldBeRepeatable() throws Exception {
+        replay.setDistanceStrategy(HybridDistanceStrategy.INSTANCE);
+        String first = replay.replay(trace).getEvents().describeMilestones();
+        String second = replay.replay(trace).getEvents().describeMilestones();
+        assertThat(first).isNotEmpty();
+        assertThat(second).isEqualTo(first);
+    }
+
+    @Test
+    public void replay_shouldCoalesceEventsInBatches() throws Exception {
+        replay.setBatchSize(30);
+        ReplayResult result = replay.replay(trace);
+        EventLog events = result.getEvents();
+        int batches = (trace.size() + 29) / 30;
+        assertThat(result.getFixCount()).isEqualTo(trace.size());
+        assertThat(result.isComplete()).isTrue();
+        assertThat(events.getCount(EventLog.Event.UPDATE_DISTANCE)).isEqualTo(batches);
+        assertThat(events.getCount(EventLog.Event.SNAP_LOCATION)).isEqualTo(batches);
+        assertThat(events.getCount(EventLog.Event.INSTRUCTION_COMPLETE))
+                .isEqualTo(new TraceReplay(Fixtures.getRoute(Fixtures.LOCATIONS)).replay(trace)
+                        .getEvents().getCount(EventLog.Event.INSTRUCTION_COMPLETE));
+    }
+
+    @Test
+    public void replay_shouldNotModifyTrace() throws Exception {
+        ValhallaLocation first = new ValhallaLocation(trace.get(0));
+        replay.replay(trace);
+        assertThat(trace.get(0).getLatitude()).isEqualTo(first.getLatitude());
+        assertThat(trace.get(0).getLongitude()).isEqualTo(first.getLongitude());
+        assertThat(trace.get(0).hasBearing()).isEqualTo(first.hasBearing());
+    }
+
+    @Test
+    public void percentile_shouldUseNearestRank() throws Exception {
+        long[] sorted = new long[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        assertThat(ReplayResult.percentile(sorted, 0)).isEqualTo(1);
+        assertThat(ReplayResult.percentile(sorted, 50)).isEqualTo(5);
+        assertThat(ReplayResult.percentile(sorted, 90)).isEqualTo(9);
+        assertThat(ReplayResult.percentile(sorted, 99)).isEqualTo(10);
+        assertThat(ReplayResult.percentile(new long[0], 50)).isEqualTo(0);
+    }
+}
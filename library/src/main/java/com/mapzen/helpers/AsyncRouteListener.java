@@ -0,0 +1,296 @@
+package com.mapzen.helpers;
+
+import com.mapzen.model.ValhallaLocation;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link RouteListener} that queues events and delivers them to another listener on an
+ * {@link Executor}, so that a slow listener does not hold up {@link RouteEngine}. Events are
+ * delivered one at a time, in the order they were raised.
+ *
+ * {@link RouteListener#onSnapLocation} and {@link RouteListener#onUpdateDistance} are superseded
+ * by the next update of the same kind, so once more than {@link #getMaxPendingUpdates()} of either
+ * are waiting the oldest of that kind is dropped. Each kind has its own budget, so the latest snap
+ * and the latest distance are always delivered. All other events are always delivered.
+ *
+ * <pre>
+ * routeEngine.setListener(new AsyncRouteListener(listener, mainThreadExecutor, 4));
+ * </pre>
+ */
+public class AsyncRouteListener implements RouteListener {
+    public static final int DEFAULT_MAX_PENDING_UPDATES = 4;
+
+    private final RouteListener listener;
+    private final Executor executor;
+    private final int maxPendingUpdates;
+    private final ExecutorService ownedExecutor;
+    private final ArrayDeque<Event> pending = new ArrayDeque<>();
+    private final Runnable drain = new Runnable() {
+        @Override public void run() {
+            deliverPending();
+        }
+    };
+    private final int[] pendingUpdates = new int[Event.TYPE_COUNT];
+    private long droppedUpdates;
+    private boolean scheduled;
+
+    /**
+     * Delivers events on a new daemon thread. Call {@link #shutdown()} to stop the thread once the
+     * listener is no longer used.
+     */
+    public AsyncRouteListener(RouteListener listener) {
+        this(listener, Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "AsyncRouteListener");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), DEFAULT_MAX_PENDING_UPDATES, true);
+    }
+
+    /**
+     * Delivers events with the given executor, such as one posting to the main thread.
+     *
+     * @param maxPendingUpdates number of snap events, and of distance events, kept while the
+     * listener is busy
+     */
+    public AsyncRouteListener(RouteListener listener, Executor executor, int maxPendingUpdates) {
+        this(listener, executor, maxPendingUpdates, false);
+    }
+
+    private AsyncRouteListener(RouteListener listener, Executor executor, int maxPendingUpdates,
+            boolean ownsExecutor) {
+        if (maxPendingUpdates < 1) {
+            throw new IllegalArgumentException("maxPendingUpdates must be at least 1");
+        }
+
+        this.listener = listener;
+        this.executor = executor;
+        this.maxPendingUpdates = maxPendingUpdates;
+        ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+    }
+
+    public int getMaxPendingUpdates() {
+        return maxPendingUpdates;
+    }
+
+    /**
+     * Returns the number of snap and distance events dropped because the listener fell behind.
+     */
+    public synchronized long getDroppedUpdateCount() {
+        return droppedUpdates;
+    }
+
+    public synchronized int getPendingEventCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops the delivery thread created by {@link #AsyncRouteListener(RouteListener)} after
+     * pending events have been delivered. Does nothing for a listener using a given executor.
+     */
+    public void shutdown() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    @Override public void onRouteStart() {
+        enqueue(new Event(Event.ROUTE_START));
+    }
+
+    @Override public void onRecalculate(ValhallaLocation location) {
+        final Event event = new Event(Event.RECALCULATE);
+        event.location = new ValhallaLocation(location);
+        enqueue(event);
+    }
+
+    @Override public void onSnapLocation(ValhallaLocation originalLocation,
+            ValhallaLocation snapLocation) {
+        final Event event = new Event(Event.SNAP_LOCATION);
+        event.location = new ValhallaLocation(originalLocation);
+        event.snapLocation = new ValhallaLocation(snapLocation);
+        enqueue(event);
+    }
+
+    @Override public void onMilestoneReached(int index, RouteEngine.Milestone milestone) {
+        final Event event = new Event(Event.MILESTONE_REACHED);
+        event.first = index;
+        event.milestone = milestone;
+        enqueue(event);
+    }
+
+    @Override public void onApproachInstruction(int index) {
+        final Event event = new Event(Event.APPROACH_INSTRUCTION);
+        event.first = index;
+        enqueue(event);
+    }
+
+    @Override public void onInstructionComplete(int index) {
+        final Event event = new Event(Event.INSTRUCTION_COMPLETE);
+        event.first = index;
+        enqueue(event);
+    }
+
+    @Override public void onUpdateDistance(int distanceToNextInstruction,
+            int distanceToDestination) {
+        final Event event = new Event(Event.UPDATE_DISTANCE);
+        event.first = distanceToNextInstruction;
+        event.second = distanceToDestination;
+        enqueue(event);
+    }
+
+    @Override public void onRouteComplete() {
+        enqueue(new Event(Event.ROUTE_COMPLETE));
+    }
+
+    private void enqueue(Event event) {
+        synchronized (this) {
+            if (event.isUpdate()) {
+                if (pendingUpdates[event.type] == maxPendingUpdates) {
+                    dropOldestUpdate(event.type);
+                }
+                pendingUpdates[event.type]++;
+            }
+            pending.add(event);
+        }
+        scheduleIfIdle();
+    }
+
+    private void dropOldestUpdate(int type) {
+        final Iterator<Event> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().type == type) {
+                iterator.remove();
+                pendingUpdates[type]--;
+                droppedUpdates++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Delivers events until the queue is empty. If the listener throws, delivery of the remaining
+     * events is scheduled again before the exception is rethrown.
+     */
+    private void deliverPending() {
+        boolean delivered = false;
+        try {
+            while (true) {
+                final Event event;
+                synchronized (this) {
+                    event = pending.poll();
+                    if (event == null) {
+                        scheduled = false;
+                        delivered = true;
+                        return;
+                    }
+                    if (event.isUpdate()) {
+                        pendingUpdates[event.type]--;
+                    }
+                }
+                deliver(event);
+            }
+        } finally {
+            if (!delivered) {
+                synchronized (this) {
+                    scheduled = false;
+                }
+                if (getPendingEventCount() > 0) {
+                    scheduleIfIdle();
+                }
+            }
+        }
+    }
+
+    /**
+     * Submits delivery unless it is already submitted. If the executor rejects it, for example
+     * after {@link #shutdown()}, the events stay queued and the next event tries again.
+     */
+    private void scheduleIfIdle() {
+        synchronized (this) {
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        try {
+            executor.execute(drain);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                scheduled = false;
+            }
+        }
+    }
+
+    private void deliver(Event event) {
+        switch (event.type) {
+            case Event.ROUTE_START:
+                listener.onRouteStart();
+                break;
+            case Event.RECALCULATE:
+                listener.onRecalculate(event.location);
+                break;
+            case Event.SNAP_LOCATION:
+                listener.onSnapLocation(event.location, event.snapLocation);
+                break;
+            case Event.MILESTONE_REACHED:
+                listener.onMilestoneReached(event.first, event.milestone);
+                break;
+            case Event.APPROACH_INSTRUCTION:
+                listener.onApproachInstruction(event.first);
+                break;
+            case Event.INSTRUCTION_COMPLETE:
+                listener.onInstructionComplete(event.first);
+                break;
+            case Event.UPDATE_DISTANCE:
+                listener.onUpdateDistance(event.first, event.second);
+                break;
+            case Event.ROUTE_COMPLETE:
+                listener.onRouteComplete();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * A queued callback and its arguments. Locations are copies, so the caller may reuse its own.
+     */
+    private static class Event {
+        static final int ROUTE_START = 0;
+        static final int RECALCULATE = 1;
+        static final int SNAP_LOCATION = 2;
+        static final int MILESTONE_REACHED = 3;
+        static final int APPROACH_INSTRUCTION = 4;
+        static final int INSTRUCTION_COMPLETE = 5;
+        static final int UPDATE_DISTANCE = 6;
+        static final int ROUTE_COMPLETE = 7;
+        static final int TYPE_COUNT = 8;
+
+        final int type;
+        ValhallaLocation location;
+        ValhallaLocation snapLocation;
+        RouteEngine.Milestone milestone;
+        int first;
+        int second;
+
+        Event(int type) {
+            this.type = type;
+        }
+
+        /**
+         * Snap and distance events are superseded by the next update and may be dropped
+         */
+        boolean isUpdate() {
+            return type == SNAP_LOCATION || type == UPDATE_DISTANCE;
+        }
+    }
+}
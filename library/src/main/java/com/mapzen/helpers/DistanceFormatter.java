@@ -2,9 +2,11 @@ package com.mapzen.helpers;
 
 import com.mapzen.valhalla.Router.DistanceUnits;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Formats a distance in meters according to the following rules:
@@ -14,15 +16,67 @@ import java.util.Locale;
  *     <li>Distances under 10 feet return the actual value in feet in normal (list) mode.</li>
  *     <li>Distances under 10 feet return "now" in real-time (navigation) mode.</li>
  * </ul>
+ * Numbers are formatted for the locale of the formatter, which is obtained with
+ * {@link #getInstance(Locale)}. Formatters are cached per locale and can be used from several
+ * threads. The static methods use the same cached formatters. Each formatter keeps a bounded cache
+ * of labels, and can append them to a reused {@link StringBuilder} to avoid allocating per update.
  */
 public final class DistanceFormatter {
     public static final double METERS_IN_ONE_MILE = 1609.0;
     public static final double METERS_IN_ONE_FOOT = 0.3048;
     public static final double FEET_IN_ONE_MILE = 5280;
 
-    private static DecimalFormat decimalFormat;
+    private static final ConcurrentHashMap<Locale, DistanceFormatter> FORMATTERS =
+            new ConcurrentHashMap<>();
+    private static final int LABEL_CACHE_SIZE = 512;
+    private static final int LABEL_EMPTY = 0;
+    private static final int LABEL_NOW = 1;
+    private static final int LABEL_METERS = 2;
+    private static final int LABEL_KILOMETERS = 3;
+    private static final int LABEL_FEET = 4;
+    private static final int LABEL_MILES = 5;
 
-    private DistanceFormatter() {
+    private final Locale locale;
+    private final boolean useMiles;
+    /**
+     * {@link DecimalFormat} is not thread safe, so each thread formats with its own copy, built
+     * once per thread rather than once per call.
+     */
+    private final ThreadLocal<DecimalFormat> decimalFormat = new ThreadLocal<DecimalFormat>() {
+        @Override protected DecimalFormat initialValue() {
+            final DecimalFormat format = (DecimalFormat) NumberFormat.getNumberInstance(locale);
+            format.applyPattern("#.#");
+            return format;
+        }
+    };
+    /**
+     * Recently formatted labels, so a label that changes by a meter per location update does not
+     * format the same kilometers, miles or feet again
+     */
+    private final Label[] labels = new Label[LABEL_CACHE_SIZE];
+
+    private DistanceFormatter(Locale locale) {
+        this.locale = locale;
+        useMiles = locale.equals(Locale.US) || locale.equals(Locale.UK);
+    }
+
+    /**
+     * Returns the formatter for the locale. Formatters are created once per locale and can be
+     * shared between threads.
+     *
+     * @param locale Locale that defines the number format and default units.
+     * @return formatter for the locale.
+     */
+    public static DistanceFormatter getInstance(Locale locale) {
+        DistanceFormatter formatter = FORMATTERS.get(locale);
+        if (formatter == null) {
+            formatter = new DistanceFormatter(locale);
+            final DistanceFormatter existing = FORMATTERS.putIfAbsent(locale, formatter);
+            if (existing != null) {
+                formatter = existing;
+            }
+        }
+        return formatter;
     }
 
     /**
@@ -44,8 +98,7 @@ public final class DistanceFormatter {
      * @return distance string formatted according to the rules of the formatter.
      */
     public static String format(int distanceInMeters, boolean realTime) {
-        Locale locale = Locale.getDefault();
-        return format(distanceInMeters, realTime, locale);
+        return getInstance(Locale.getDefault()).formatDistance(distanceInMeters, realTime);
     }
 
     /**
@@ -57,7 +110,7 @@ public final class DistanceFormatter {
      * @return distance string formatted according to the rules of the formatter.
      */
     public static String format(int distanceInMeters, boolean realTime, DistanceUnits units) {
-        return format(distanceInMeters, realTime, Locale.getDefault(), units);
+        return getInstance(Locale.getDefault()).formatDistance(distanceInMeters, realTime, units);
     }
 
     /**
@@ -69,11 +122,7 @@ public final class DistanceFormatter {
      * @return distance string formatted according to the rules of the formatter.
      */
     public static String format(int distanceInMeters, boolean realTime, Locale locale) {
-        if (useMiles(locale)) {
-            return format(distanceInMeters, realTime, locale, DistanceUnits.MILES);
-        } else {
-            return format(distanceInMeters, realTime, locale, DistanceUnits.KILOMETERS);
-        }
+        return getInstance(locale).formatDistance(distanceInMeters, realTime);
     }
 
     /**
@@ -87,85 +136,157 @@ public final class DistanceFormatter {
      */
     public static String format(int distanceInMeters, boolean realTime, Locale locale,
             DistanceUnits units) {
+        return getInstance(locale).formatDistance(distanceInMeters, realTime, units);
+    }
 
-        decimalFormat = (DecimalFormat) NumberFormat.getNumberInstance(locale);
-        decimalFormat.applyPattern("#.#");
-
-        if (distanceInMeters == 0) {
-            return "";
-        }
-
-        switch (units) {
-            case MILES:
-                return formatMiles(distanceInMeters, realTime);
-            case KILOMETERS:
-                return formatKilometers(distanceInMeters, realTime);
-            default:
-                return "";
-        }
+    public Locale getLocale() {
+        return locale;
     }
 
-    private static String formatMiles(int distanceInMeters, boolean realTime) {
-        double distanceInFeet = distanceInMeters / METERS_IN_ONE_FOOT;
-        if (distanceInFeet < 10) {
-            return formatDistanceLessThanTenFeet(distanceInFeet, realTime);
-        } else if (distanceInFeet < FEET_IN_ONE_MILE / 10) {
-            return formatDistanceOverTenFeet(distanceInFeet);
-        } else {
-            return formatDistanceInMiles(distanceInMeters);
-        }
+    /**
+     * Format a distance in the units customary for this formatter's locale, miles for the US and
+     * UK and kilometers elsewhere.
+     *
+     * @param distanceInMeters the actual distance in meters.
+     * @param realTime boolean flag for navigation vs. list view.
+     * @return distance string formatted according to the rules of the formatter.
+     */
+    public String formatDistance(int distanceInMeters, boolean realTime) {
+        return formatDistance(distanceInMeters, realTime,
+                useMiles ? DistanceUnits.MILES : DistanceUnits.KILOMETERS);
     }
 
-    private static String formatKilometers(int distanceInMeters, boolean realTime) {
-        if (distanceInMeters >= 100) {
-            return formatDistanceInKilometers(distanceInMeters);
-        } else if (distanceInMeters > 10) {
-            return formatDistanceOverTenMeters(distanceInMeters);
-        } else {
-            return formatShortMeters(distanceInMeters, realTime);
-        }
+    /**
+     * Format a distance in the given units with this formatter's number format.
+     *
+     * @param distanceInMeters the actual distance in meters.
+     * @param realTime boolean flag for navigation vs. list view.
+     * @param units miles or kilometers.
+     * @return distance string formatted according to the rules of the formatter.
+     */
+    public String formatDistance(int distanceInMeters, boolean realTime, DistanceUnits units) {
+        return getLabel(getLabelKey(distanceInMeters, realTime, units));
     }
 
-    private static boolean useMiles(Locale locale) {
-        return locale.equals(Locale.US) || locale.equals(Locale.UK);
+    /**
+     * Appends a formatted distance to the builder. Labels that were formatted recently are
+     * appended without allocating, so a builder that is reused for each location update produces
+     * no garbage.
+     *
+     * @param distanceInMeters the actual distance in meters.
+     * @param realTime boolean flag for navigation vs. list view.
+     * @param units miles or kilometers.
+     * @param out builder to append the distance to.
+     * @return the builder.
+     */
+    public StringBuilder formatDistance(int distanceInMeters, boolean realTime,
+            DistanceUnits units, StringBuilder out) {
+        return out.append(formatDistance(distanceInMeters, realTime, units));
     }
 
-    private static String formatDistanceOverTenMeters(int distanceInMeters) {
-        return String.format(Locale.getDefault(), "%s m", distanceInMeters);
+    /**
+     * Appends a formatted distance, see {@link #formatDistance(int, boolean, DistanceUnits,
+     * StringBuilder)}.
+     *
+     * @param distanceInMeters the actual distance in meters.
+     * @param realTime boolean flag for navigation vs. list view.
+     * @param units miles or kilometers.
+     * @param out destination to append the distance to.
+     * @throws IOException if the destination fails to append.
+     */
+    public void formatDistance(int distanceInMeters, boolean realTime, DistanceUnits units,
+            Appendable out) throws IOException {
+        out.append(formatDistance(distanceInMeters, realTime, units));
     }
 
-    private static String formatShortMeters(int distanceInMeters, boolean realTime) {
-        if (realTime) {
-            return "now";
-        } else {
-            return formatDistanceOverTenMeters(distanceInMeters);
+    /**
+     * Returns the key of the label for a distance: the kind of label in the high bits and the
+     * value it shows, in whole meters or feet or in tenths of kilometers or miles, in the low bits.
+     * Every distance that shares a key has the same label.
+     */
+    private static long getLabelKey(int distanceInMeters, boolean realTime, DistanceUnits units) {
+        if (distanceInMeters == 0) {
+            return getLabelKey(LABEL_EMPTY, 0);
         }
-    }
 
-    private static String formatDistanceInKilometers(int distanceInMeters) {
-        String value = decimalFormat.format((float) distanceInMeters / 1000);
-        return String.format(Locale.getDefault(), "%s km", value);
+        // tenths are rounded with rint, which rounds half to even like DecimalFormat
+        switch (units) {
+            case MILES:
+                final double distanceInFeet = distanceInMeters / METERS_IN_ONE_FOOT;
+                if (distanceInFeet < 10) {
+                    if (realTime) {
+                        return getLabelKey(LABEL_NOW, 0);
+                    }
+                    return getLabelKey(LABEL_FEET, (int) Math.floor(distanceInFeet));
+                } else if (distanceInFeet < FEET_IN_ONE_MILE / 10) {
+                    return getLabelKey(LABEL_FEET, roundDownToNearestTen(distanceInFeet));
+                } else {
+                    return getLabelKey(LABEL_MILES,
+                            (int) Math.rint(distanceInMeters / METERS_IN_ONE_MILE * 10));
+                }
+            case KILOMETERS:
+                if (distanceInMeters >= 100) {
+                    final double distanceInKilometers = (float) distanceInMeters / 1000;
+                    return getLabelKey(LABEL_KILOMETERS,
+                            (int) Math.rint(distanceInKilometers * 10));
+                } else if (distanceInMeters > 10 || !realTime) {
+                    return getLabelKey(LABEL_METERS, distanceInMeters);
+                } else {
+                    return getLabelKey(LABEL_NOW, 0);
+                }
+            default:
+                return getLabelKey(LABEL_EMPTY, 0);
+        }
     }
 
-    private static String formatDistanceLessThanTenFeet(double distanceInFeet, boolean realTime) {
-        if (realTime) {
-            return "now";
-        } else {
-            return String.format(Locale.getDefault(), "%d ft", (int) Math.floor(distanceInFeet));
-        }
+    private static long getLabelKey(int kind, int value) {
+        return ((long) kind << 32) | (value & 0xffffffffL);
     }
 
-    private static String formatDistanceOverTenFeet(double distanceInFeet) {
-        int roundedDistanceInFeet = roundDownToNearestTen(distanceInFeet);
-        return String.format(Locale.getDefault(), "%d ft", roundedDistanceInFeet);
+    /**
+     * Returns the label for the key from the cache, formatting and caching it if it is not there.
+     * Each key has a single slot, so a label evicts whichever label last used its slot. Labels are
+     * immutable, so threads sharing the cache see either a complete label or none.
+     */
+    private String getLabel(long key) {
+        final int hash = (int) (key ^ (key >>> 32)) * 0x9e3779b9;
+        final int slot = (hash ^ (hash >>> 16)) & (LABEL_CACHE_SIZE - 1);
+        Label label = labels[slot];
+        if (label == null || label.key != key) {
+            label = new Label(key, createLabel((int) (key >>> 32), (int) key));
+            labels[slot] = label;
+        }
+        return label.text;
     }
 
-    private static String formatDistanceInMiles(int distanceInMeters) {
-        return String.format(Locale.getDefault(), "%s mi",
-                decimalFormat.format(distanceInMeters / METERS_IN_ONE_MILE));
+    private String createLabel(int kind, int value) {
+        switch (kind) {
+            case LABEL_NOW:
+                return "now";
+            case LABEL_METERS:
+                return decimalFormat.get().format(value) + " m";
+            case LABEL_KILOMETERS:
+                return decimalFormat.get().format(value / 10.0) + " km";
+            case LABEL_FEET:
+                return decimalFormat.get().format(value) + " ft";
+            case LABEL_MILES:
+                return decimalFormat.get().format(value / 10.0) + " mi";
+            default:
+                return "";
+        }
     }
 
     private static int roundDownToNearestTen(double distance) {
         return (int) Math.floor(distance / 10) * 10;
     }
+
+    private static final class Label {
+        private final long key;
+        private final String text;
+
+        private Label(long key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
 }
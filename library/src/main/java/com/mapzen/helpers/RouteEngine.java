@@ -1,10 +1,13 @@
 package com.mapzen.helpers;
 
+import com.mapzen.model.DistanceStrategy;
 import com.mapzen.model.ValhallaLocation;
 import com.mapzen.valhalla.Instruction;
 import com.mapzen.valhalla.Route;
+import com.mapzen.valhalla.SegmentIndex;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import static com.mapzen.helpers.DistanceFormatter.METERS_IN_ONE_MILE;
 
@@ -38,6 +41,17 @@ public class RouteEngine {
     private Instruction currentInstruction;
     private ArrayList<Instruction> instructions;
     private Milestone lastMilestoneUpdate;
+    private DistanceStrategy distanceStrategy;
+    private final ArrayList<Route> alternates = new ArrayList<>();
+    /**
+     * True while {@link #onLocationsChanged(List)} is handling a batch. Snap, distance and
+     * milestone events are then held back in the fields below and reported once at the end.
+     */
+    private boolean batching;
+    private ValhallaLocation batchOriginalLocation;
+    private ValhallaLocation batchSnapLocation;
+    private Milestone batchMilestone;
+    private int batchMilestoneIndex;
 
     /**
      * Sets {@link RouteEngine#location} and snaps it to the {@link RouteEngine#route}. Checks that
@@ -51,14 +65,62 @@ public class RouteEngine {
             return;
         }
 
+        handleLocation(location);
+    }
+
+    /**
+     * Handles an ordered batch of location updates, such as fixes buffered by a device and
+     * uploaded together, in a single forward pass along the route. Every location is snapped in
+     * turn but listener events are coalesced:
+     * <ul>
+     *     <li>{@link RouteListener#onSnapLocation} and {@link RouteListener#onUpdateDistance} are
+     *     invoked once, after the whole batch, for the last location that was snapped.</li>
+     *     <li>Only the last milestone reached is reported, after the snapped location, and only
+     *     if its instruction has not been approached by the end of the batch.</li>
+     *     <li>Approached and completed instructions are reported as they happen, in order.</li>
+     *     <li>Handling stops at the first location that completes the route or is off course,
+     *     so {@link RouteListener#onRecalculate} is invoked at most once per batch.</li>
+     * </ul>
+     */
+    public void onLocationsChanged(final List<ValhallaLocation> locations) {
+        if (routeState == RouteState.COMPLETE || locations.isEmpty()) {
+            return;
+        }
+
+        batching = true;
+        batchOriginalLocation = null;
+        batchSnapLocation = null;
+        batchMilestone = null;
+        try {
+            for (ValhallaLocation location : locations) {
+                handleLocation(location);
+                if (routeState == RouteState.COMPLETE || routeState == RouteState.LOST) {
+                    break;
+                }
+            }
+        } finally {
+            batching = false;
+        }
+
+        if (batchSnapLocation != null) {
+            listener.onSnapLocation(batchOriginalLocation, batchSnapLocation);
+        }
+        updateDistance();
+        if (batchMilestone != null && routeState == RouteState.PRE_INSTRUCTION
+                && route.getNextInstructionIndex() != null
+                && route.getNextInstructionIndex() == batchMilestoneIndex) {
+            listener.onMilestoneReached(batchMilestoneIndex, batchMilestone);
+        }
+        batchOriginalLocation = null;
+        batchSnapLocation = null;
+        batchMilestone = null;
+    }
+
+    private void handleLocation(final ValhallaLocation location) {
         this.location = location;
         snapLocation();
-
-        if (routeState == RouteState.COMPLETE) {
-            listener.onUpdateDistance(0, 0);
-        } else {
-            listener.onUpdateDistance(route.getDistanceToNextInstruction(),
-                    route.getRemainingDistanceToDestination());
+        if (!batching) {
+            updateDistance();
         }
 
         if (routeState == RouteState.LOST) {
@@ -89,13 +151,27 @@ public class RouteEngine {
         currentInstruction = route.getNextInstruction();
     }
 
+    private void updateDistance() {
+        if (routeState == RouteState.COMPLETE) {
+            listener.onUpdateDistance(0, 0);
+        } else {
+            listener.onUpdateDistance(route.getDistanceToNextInstruction(),
+                    route.getRemainingDistanceToDestination());
+        }
+    }
+
     private void checkApproachMilestone(Milestone milestone, double distance) {
         if (routeState == RouteState.PRE_INSTRUCTION
                 && Math.abs(route.getDistanceToNextInstruction() - distance) < APPROACH_RADIUS
                 && lastMilestoneUpdate != milestone
                 && route.getNextInstructionIndex() != null) {
             final int nextIndex = route.getNextInstructionIndex();
-            listener.onMilestoneReached(nextIndex, milestone);
+            if (batching) {
+                batchMilestone = milestone;
+                batchMilestoneIndex = nextIndex;
+            } else {
+                listener.onMilestoneReached(nextIndex, milestone);
+            }
             lastMilestoneUpdate = milestone;
         }
     }
@@ -106,9 +182,17 @@ public class RouteEngine {
      */
     private void snapLocation() {
         snapLocation = route.snapToRoute(location);
+        if (snapLocation == null && route.isLost()) {
+            snapLocation = switchToAlternate(location);
+        }
 
         if (snapLocation != null) {
-            listener.onSnapLocation(location, snapLocation);
+            if (batching) {
+                batchOriginalLocation = location;
+                batchSnapLocation = snapLocation;
+            } else {
+                listener.onSnapLocation(location, snapLocation);
+            }
         }
 
         if (youHaveArrived()) {
@@ -122,19 +206,60 @@ public class RouteEngine {
         }
     }
 
+    /**
+     * Tries to continue on a cached alternate route near the location before giving up on the
+     * current route. The first alternate with a segment within {@link Route#LOST_THRESHOLD_METERS}
+     * becomes the route being navigated, the route that was left becomes an alternate, and
+     * {@link RouteListener#onRouteStart()} is invoked so the listener can show the new route.
+     *
+     * @return snapped location on the new route, or null if no alternate is close enough
+     */
+    private ValhallaLocation switchToAlternate(ValhallaLocation location) {
+        for (int i = 0; i < alternates.size(); i++) {
+            // alternates of a session were decoded and indexed by Route.newSession, so this
+            // only reads the index shared with other sessions
+            final SegmentIndex index = alternates.get(i).getSegmentIndex();
+            if (index == null || index.findNearestSegment(location.getLatitude(),
+                    location.getLongitude(), Route.LOST_THRESHOLD_METERS) < 0) {
+                continue;
+            }
+
+            final Route candidate = alternates.get(i).newSession();
+            if (distanceStrategy != null) {
+                candidate.setDistanceStrategy(distanceStrategy);
+            }
+            final ValhallaLocation snapped = candidate.snapToNearestSegment(location);
+            if (snapped == null) {
+                continue;
+            }
+
+            alternates.remove(i);
+            alternates.add(route);
+            route = candidate;
+            instructions = candidate.getRouteInstructions();
+            currentInstruction = candidate.getNextInstruction() != null
+                    ? candidate.getNextInstruction() : candidate.getCurrentInstruction();
+            routeState = RouteState.PRE_INSTRUCTION;
+            lastMilestoneUpdate = null;
+            listener.onRouteStart();
+            return snapped;
+        }
+        return null;
+    }
+
     private boolean youHaveArrived() {
         return getLocationForDestination() != null
                 && snapLocation != null
-                && snapLocation.distanceTo(getLocationForDestination()) < DESTINATION_RADIUS;
+                && snapLocation.distanceTo(getLocationForDestination(),
+                route.getDistanceStrategy()) < DESTINATION_RADIUS;
     }
 
     private ValhallaLocation getLocationForDestination() {
-        if (route.getRouteInstructions() == null) {
+        if (instructions == null) {
             return null;
         }
 
-        final int destinationIndex = route.getRouteInstructions().size() - 1;
-        return route.getRouteInstructions().get(destinationIndex).getLocation();
+        return instructions.get(instructions.size() - 1).getLocation();
     }
 
     /**
@@ -150,10 +275,15 @@ public class RouteEngine {
         }
 
         this.route = route;
+        if (distanceStrategy != null) {
+            route.setDistanceStrategy(distanceStrategy);
+        }
         instructions = route.getRouteInstructions();
         if (instructions != null) {
             currentInstruction = instructions.get(0);
         }
+        alternates.clear();
+        alternates.addAll(route.getAlternates());
 
         listener.onRouteStart();
         routeState = RouteState.PRE_INSTRUCTION;
@@ -163,6 +293,37 @@ public class RouteEngine {
         return route;
     }
 
+    /**
+     * Adds a route to try when the user leaves the current route, such as one fetched in the
+     * background. Alternates returned with the route are added by {@link #setRoute(Route)}.
+     *
+     * If the user is off course and near an alternate, the engine switches to it and invokes
+     * {@link RouteListener#onRouteStart()} instead of {@link RouteListener#onRecalculate}. The
+     * route that was left is kept as an alternate.
+     */
+    public void addAlternateRoute(Route route) {
+        alternates.add(route);
+    }
+
+    /**
+     * Returns the routes the engine may switch to when the user leaves the current route.
+     */
+    public List<Route> getAlternateRoutes() {
+        return alternates;
+    }
+
+    /**
+     * Sets the strategy used to measure distances while navigating. It is applied to the current
+     * route and every route set afterwards. If never set, each route keeps its own strategy.
+     * @param distanceStrategy
+     */
+    public void setDistanceStrategy(DistanceStrategy distanceStrategy) {
+        this.distanceStrategy = distanceStrategy;
+        if (route != null) {
+            route.setDistanceStrategy(distanceStrategy);
+        }
+    }
+
     /**
      * There must be a listener to call {@link #setRoute(Route)} on the engine
      * @param listener
@@ -0,0 +1,201 @@
+package com.mapzen.helpers;
+
+import com.mapzen.model.ValhallaLocation;
+import com.mapzen.valhalla.Route;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many navigation sessions, one {@link RouteEngine} per vehicle, on a bounded pool of worker
+ * threads. Sessions started from the same {@link Route} share its decoded shape and maneuvers
+ * through {@link Route#newSession()} while each keeps its own progress and listener.
+ *
+ * Location updates for a session are handled one at a time, in the order they were submitted,
+ * and listeners are invoked on the worker thread handling the update. Updates for different
+ * sessions are handled in parallel. If a session falls behind by more than
+ * {@link #getMaxPendingUpdates()} updates the oldest pending update is dropped.
+ */
+public class RouteEngineHost {
+    public static final int DEFAULT_MAX_PENDING_UPDATES = 64;
+    /**
+     * Number of updates a worker handles for one session before letting other sessions run
+     */
+    static final int UPDATES_PER_TURN = 16;
+
+    private final ExecutorService executor;
+    private final int maxPendingUpdates;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong droppedUpdates = new AtomicLong();
+
+    /**
+     * Creates a host with a fixed pool of worker threads.
+     */
+    public RouteEngineHost(int threads) {
+        this(Executors.newFixedThreadPool(threads), DEFAULT_MAX_PENDING_UPDATES);
+    }
+
+    /**
+     * Creates a host running sessions on the given executor, which should have a bounded number
+     * of threads. The executor is shut down by {@link #shutdown()}.
+     */
+    public RouteEngineHost(ExecutorService executor, int maxPendingUpdates) {
+        if (maxPendingUpdates < 1) {
+            throw new IllegalArgumentException("maxPendingUpdates must be at least 1");
+        }
+
+        this.executor = executor;
+        this.maxPendingUpdates = maxPendingUpdates;
+    }
+
+    /**
+     * Starts navigating a new session of the route for the given vehicle, replacing any session
+     * the vehicle already had. {@link RouteListener#onRouteStart()} is invoked on a worker thread.
+     *
+     * @param route shared route, which should not be navigated directly while sessions use it
+     */
+    public void startSession(String vehicleId, Route route, RouteListener listener) {
+        final Session session = new Session(route.newSession(), listener);
+        sessions.put(vehicleId, session);
+        session.schedule();
+    }
+
+    /**
+     * Queues a location update for the vehicle's session.
+     *
+     * @return false if the vehicle has no session
+     */
+    public boolean onLocationChanged(String vehicleId, ValhallaLocation location) {
+        final Session session = sessions.get(vehicleId);
+        if (session == null) {
+            return false;
+        }
+
+        session.pending.add(location);
+        if (session.pendingCount.incrementAndGet() > maxPendingUpdates
+                && session.pending.poll() != null) {
+            session.pendingCount.decrementAndGet();
+            droppedUpdates.incrementAndGet();
+        }
+        session.schedule();
+        return true;
+    }
+
+    /**
+     * Ends the vehicle's session. Updates that are still pending are discarded.
+     */
+    public void endSession(String vehicleId) {
+        final Session session = sessions.remove(vehicleId);
+        if (session != null) {
+            session.ended = true;
+        }
+    }
+
+    /**
+     * Returns the route navigated by the vehicle's session, or null if it has no session. The
+     * route is updated by worker threads and should only be read from listener callbacks.
+     */
+    public Route getRoute(String vehicleId) {
+        final Session session = sessions.get(vehicleId);
+        return session == null ? null : session.engine.getRoute();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public int getMaxPendingUpdates() {
+        return maxPendingUpdates;
+    }
+
+    /**
+     * Returns the number of updates dropped because a session fell too far behind.
+     */
+    public long getDroppedUpdateCount() {
+        return droppedUpdates.get();
+    }
+
+    /**
+     * Ends all sessions and stops the worker threads once queued work has finished.
+     */
+    public void shutdown() {
+        for (Session session : sessions.values()) {
+            session.ended = true;
+        }
+        sessions.clear();
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Engine and queue of pending updates for one vehicle. At most one worker drains the queue at
+     * a time, which is what keeps updates for a session in order.
+     */
+    private class Session implements Runnable {
+        private final RouteEngine engine = new RouteEngine();
+        private final Route route;
+        private final ConcurrentLinkedQueue<ValhallaLocation> pending =
+                new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private boolean started;
+        private volatile boolean ended;
+
+        Session(Route route, RouteListener listener) {
+            this.route = route;
+            engine.setListener(listener);
+        }
+
+        /**
+         * Submits the session unless it is already submitted. If the executor rejects it, for
+         * example after {@link #shutdown()}, the pending updates stay queued and the next update
+         * tries again.
+         */
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Handles a turn of pending updates. An exception thrown by the engine or listener ends
+         * the turn and is passed to the executor, but later updates are still handled.
+         */
+        @Override public void run() {
+            try {
+                if (!started) {
+                    engine.setRoute(route);
+                    started = true;
+                }
+
+                int handled = 0;
+                ValhallaLocation location;
+                while (!ended && handled < UPDATES_PER_TURN
+                        && (location = pending.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    engine.onLocationChanged(location);
+                    handled++;
+                }
+            } finally {
+                scheduled.set(false);
+                if (!ended && !pending.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
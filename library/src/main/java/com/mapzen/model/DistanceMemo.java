@@ -0,0 +1,66 @@
+package com.mapzen.model;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Small direct-mapped memo of Vincenty results keyed on coordinate pairs. Entries are immutable and
+ * slots are replaced atomically, so lookups from any number of threads never lock and never see a
+ * distance paired with the wrong bearing. Colliding pairs simply overwrite each other.
+ */
+final class DistanceMemo {
+  private static final int SIZE = 256;
+  private static final AtomicReferenceArray<Entry> ENTRIES = new AtomicReferenceArray<>(SIZE);
+
+  private DistanceMemo() {
+  }
+
+  /**
+   * Returns the distance and initial bearing between two coordinates, computing and storing them
+   * if they are not already memoized.
+   */
+  static Entry get(double lat1, double lon1, double lat2, double lon2) {
+    final int slot = slot(lat1, lon1, lat2, lon2);
+    Entry entry = ENTRIES.get(slot);
+    if (entry != null && entry.matches(lat1, lon1, lat2, lon2)) {
+      return entry;
+    }
+
+    final float[] results = new float[2];
+    ValhallaLocation.distanceBetween(lat1, lon1, lat2, lon2, results);
+    entry = new Entry(lat1, lon1, lat2, lon2, results[0], results[1]);
+    ENTRIES.set(slot, entry);
+    return entry;
+  }
+
+  private static int slot(double lat1, double lon1, double lat2, double lon2) {
+    long hash = Double.doubleToLongBits(lat1);
+    hash = hash * 31 + Double.doubleToLongBits(lon1);
+    hash = hash * 31 + Double.doubleToLongBits(lat2);
+    hash = hash * 31 + Double.doubleToLongBits(lon2);
+    hash *= 0x9E3779B97F4A7C15L;
+    return (int) (hash >>> 56) & (SIZE - 1);
+  }
+
+  static final class Entry {
+    final double lat1;
+    final double lon1;
+    final double lat2;
+    final double lon2;
+    final float distance;
+    final float initialBearing;
+
+    Entry(double lat1, double lon1, double lat2, double lon2, float distance,
+        float initialBearing) {
+      this.lat1 = lat1;
+      this.lon1 = lon1;
+      this.lat2 = lat2;
+      this.lon2 = lon2;
+      this.distance = distance;
+      this.initialBearing = initialBearing;
+    }
+
+    boolean matches(double lat1, double lon1, double lat2, double lon2) {
+      return this.lat1 == lat1 && this.lon1 == lon1 && this.lat2 == lat2 && this.lon2 == lon2;
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.mapzen.model;
+
+/**
+ * Computes distances and bearings between coordinates. Navigation code measures many short spans
+ * for every location update, so a strategy can trade accuracy over long spans for speed.
+ *
+ * @see VincentyDistanceStrategy
+ * @see EquirectangularDistanceStrategy
+ * @see HybridDistanceStrategy
+ */
+public interface DistanceStrategy {
+
+  /**
+   * Returns the distance in meters between two coordinates given in degrees.
+   */
+  float distanceBetween(double lat1, double lon1, double lat2, double lon2);
+
+  /**
+   * Returns the initial bearing in degrees East of true North, in the range [-180, 180], when
+   * traveling from the first coordinate to the second.
+   */
+  float bearingBetween(double lat1, double lon1, double lat2, double lon2);
+}
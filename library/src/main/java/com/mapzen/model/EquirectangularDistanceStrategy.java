@@ -0,0 +1,62 @@
+package com.mapzen.model;
+
+/**
+ * Treats the ellipsoid as flat around the midpoint of the two coordinates, scaling latitude and
+ * longitude differences by the WGS84 meridional and prime vertical radii of curvature at the mean
+ * latitude. This takes one square root and three trigonometric calls instead of iterating.
+ *
+ * <p>Compared to {@link VincentyDistanceStrategy}, distances below 10 km are within 0.05% or
+ * 5 cm, whichever is larger, and bearings within 0.01 degrees at latitudes up to 70 degrees. Error
+ * grows with the square of the span, so use {@link HybridDistanceStrategy} when long spans are
+ * possible.
+ */
+public class EquirectangularDistanceStrategy implements DistanceStrategy {
+  public static final EquirectangularDistanceStrategy INSTANCE =
+      new EquirectangularDistanceStrategy();
+
+  private static final double A = 6378137.0; // WGS84 major axis
+  private static final double E_SQ = 6.69437999014e-3; // WGS84 first eccentricity squared
+
+  @Override
+  public float distanceBetween(double lat1, double lon1, double lat2, double lon2) {
+    double meanLat = Math.toRadians((lat1 + lat2) / 2);
+    double sinLat = Math.sin(meanLat);
+    double w = 1.0 - E_SQ * sinLat * sinLat;
+    double primeVertical = A / Math.sqrt(w);
+    double meridional = primeVertical * (1.0 - E_SQ) / w;
+    double x = Math.toRadians(deltaLongitude(lon1, lon2)) * primeVertical * Math.cos(meanLat);
+    double y = Math.toRadians(lat2 - lat1) * meridional;
+    return (float) Math.sqrt(x * x + y * y);
+  }
+
+  @Override
+  public float bearingBetween(double lat1, double lon1, double lat2, double lon2) {
+    double meanLat = Math.toRadians((lat1 + lat2) / 2);
+    double sinLat = Math.sin(meanLat);
+    double w = 1.0 - E_SQ * sinLat * sinLat;
+    double deltaLon = Math.toRadians(deltaLongitude(lon1, lon2));
+    double x = deltaLon * Math.cos(meanLat);
+    double y = Math.toRadians(lat2 - lat1) * (1.0 - E_SQ) / w;
+    // bearing at the midpoint, turned back by half the convergence of the meridians
+    double bearing = Math.toDegrees(Math.atan2(x, y) - deltaLon * sinLat / 2);
+    if (bearing > 180.0) {
+      bearing -= 360.0;
+    } else if (bearing < -180.0) {
+      bearing += 360.0;
+    }
+    return (float) bearing;
+  }
+
+  /**
+   * Difference in longitude wrapped to [-180, 180] so spans across the antimeridian stay short.
+   */
+  private static double deltaLongitude(double lon1, double lon2) {
+    double delta = lon2 - lon1;
+    if (delta > 180.0) {
+      delta -= 360.0;
+    } else if (delta < -180.0) {
+      delta += 360.0;
+    }
+    return delta;
+  }
+}
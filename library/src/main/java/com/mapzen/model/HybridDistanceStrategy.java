@@ -0,0 +1,45 @@
+package com.mapzen.model;
+
+/**
+ * Uses {@link EquirectangularDistanceStrategy} for short spans and falls back to
+ * {@link VincentyDistanceStrategy} once the approximate distance exceeds a threshold. Spans
+ * between a location and the route being navigated are almost always short, so most calls take
+ * the fast path while long spans keep ellipsoidal accuracy.
+ */
+public class HybridDistanceStrategy implements DistanceStrategy {
+  public static final double DEFAULT_THRESHOLD_METERS = 10000;
+  public static final HybridDistanceStrategy INSTANCE = new HybridDistanceStrategy();
+
+  private final double thresholdMeters;
+
+  public HybridDistanceStrategy() {
+    this(DEFAULT_THRESHOLD_METERS);
+  }
+
+  /**
+   * @param thresholdMeters approximate distance above which the Vincenty formula is used
+   */
+  public HybridDistanceStrategy(double thresholdMeters) {
+    this.thresholdMeters = thresholdMeters;
+  }
+
+  @Override
+  public float distanceBetween(double lat1, double lon1, double lat2, double lon2) {
+    float distance = EquirectangularDistanceStrategy.INSTANCE.distanceBetween(
+        lat1, lon1, lat2, lon2);
+    if (distance > thresholdMeters) {
+      return VincentyDistanceStrategy.INSTANCE.distanceBetween(lat1, lon1, lat2, lon2);
+    }
+    return distance;
+  }
+
+  @Override
+  public float bearingBetween(double lat1, double lon1, double lat2, double lon2) {
+    float distance = EquirectangularDistanceStrategy.INSTANCE.distanceBetween(
+        lat1, lon1, lat2, lon2);
+    if (distance > thresholdMeters) {
+      return VincentyDistanceStrategy.INSTANCE.bearingBetween(lat1, lon1, lat2, lon2);
+    }
+    return EquirectangularDistanceStrategy.INSTANCE.bearingBetween(lat1, lon1, lat2, lon2);
+  }
+}
@@ -3,7 +3,9 @@ package com.mapzen.model;
 /**
  * A data class representing a geographic location.
  *
- * <p>A location can consist of a latitude, longitude, and bearing.
+ * <p>A location can consist of a latitude, longitude, and bearing. Distance and bearing
+ * calculations do not modify the location, so locations that are no longer being changed can be
+ * shared between threads.
  */
 public class ValhallaLocation {
 
@@ -12,17 +14,6 @@ public class ValhallaLocation {
   private float mBearing = 0.0f;
   private boolean mHasBearing = false;
 
-  // Cache the inputs and outputs of computeDistanceAndBearing
-  // so calls to distanceTo() and bearingTo() can share work
-  private double mLat1 = 0.0;
-  private double mLon1 = 0.0;
-  private double mLat2 = 0.0;
-  private double mLon2 = 0.0;
-  private float mDistance = 0.0f;
-  private float mInitialBearing = 0.0f;
-  // Scratchpad
-  private final float[] mResults = new float[2];
-
   public ValhallaLocation() {
   }
 
@@ -43,6 +34,32 @@ public class ValhallaLocation {
     mBearing = l.mBearing;
   }
 
+  /**
+   * Computes the approximate distance in meters between two locations, and optionally the
+   * initial and final bearings of the shortest path between them. Distance and bearing are
+   * defined using the WGS84 ellipsoid.
+   *
+   * <p>The computed distance is stored in results[0]. If results has length 2 or greater, the
+   * initial bearing is stored in results[1]. If results has length 3 or greater, the final
+   * bearing is stored in results[2].
+   *
+   * <p>This does not allocate or lock and is safe to call from any thread.
+   *
+   * @param startLatitude the starting latitude
+   * @param startLongitude the starting longitude
+   * @param endLatitude the ending latitude
+   * @param endLongitude the ending longitude
+   * @param results an array of floats to hold the results
+   * @throws IllegalArgumentException if results is null or has length < 1
+   */
+  public static void distanceBetween(double startLatitude, double startLongitude,
+      double endLatitude, double endLongitude, float[] results) {
+    if (results == null || results.length < 1) {
+      throw new IllegalArgumentException("results is null or has length < 1");
+    }
+    computeDistanceAndBearing(startLatitude, startLongitude, endLatitude, endLongitude, results);
+  }
+
   private static void computeDistanceAndBearing(double lat1, double lon1,
       double lat2, double lon2, float[] results) {
     // Based on http://www.ngs.noaa.gov/PUBS_LIB/inverse.pdf
@@ -153,21 +170,7 @@ public class ValhallaLocation {
    * @return the approximate distance in meters
    */
   public float distanceTo(ValhallaLocation dest) {
-    // See if we already have the result
-    synchronized (mResults) {
-      if (mLatitude != mLat1 || mLongitude != mLon1 ||
-          dest.mLatitude != mLat2 || dest.mLongitude != mLon2) {
-        computeDistanceAndBearing(mLatitude, mLongitude,
-            dest.mLatitude, dest.mLongitude, mResults);
-        mLat1 = mLatitude;
-        mLon1 = mLongitude;
-        mLat2 = dest.mLatitude;
-        mLon2 = dest.mLongitude;
-        mDistance = mResults[0];
-        mInitialBearing = mResults[1];
-      }
-      return mDistance;
-    }
+    return DistanceMemo.get(mLatitude, mLongitude, dest.mLatitude, dest.mLongitude).distance;
   }
 
   /**
@@ -181,21 +184,24 @@ public class ValhallaLocation {
    * @return the initial bearing in degrees
    */
   public float bearingTo(ValhallaLocation dest) {
-    synchronized (mResults) {
-      // See if we already have the result
-      if (mLatitude != mLat1 || mLongitude != mLon1 ||
-          dest.mLatitude != mLat2 || dest.mLongitude != mLon2) {
-        computeDistanceAndBearing(mLatitude, mLongitude,
-            dest.mLatitude, dest.mLongitude, mResults);
-        mLat1 = mLatitude;
-        mLon1 = mLongitude;
-        mLat2 = dest.mLatitude;
-        mLon2 = dest.mLongitude;
-        mDistance = mResults[0];
-        mInitialBearing = mResults[1];
-      }
-      return mInitialBearing;
-    }
+    return DistanceMemo.get(mLatitude, mLongitude, dest.mLatitude, dest.mLongitude)
+        .initialBearing;
+  }
+
+  /**
+   * Returns the distance in meters between this location and the given location as computed by
+   * the given strategy.
+   */
+  public float distanceTo(ValhallaLocation dest, DistanceStrategy strategy) {
+    return strategy.distanceBetween(mLatitude, mLongitude, dest.mLatitude, dest.mLongitude);
+  }
+
+  /**
+   * Returns the initial bearing in degrees East of true North when traveling from this location
+   * to the given location as computed by the given strategy.
+   */
+  public float bearingTo(ValhallaLocation dest, DistanceStrategy strategy) {
+    return strategy.bearingBetween(mLatitude, mLongitude, dest.mLatitude, dest.mLongitude);
   }
 
   /**
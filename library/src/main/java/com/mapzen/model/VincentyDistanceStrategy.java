@@ -0,0 +1,31 @@
+package com.mapzen.model;
+
+/**
+ * Distances and bearings on the WGS84 ellipsoid using the iterative Vincenty inverse formula. This
+ * is what {@link ValhallaLocation#distanceTo(ValhallaLocation)} and
+ * {@link ValhallaLocation#bearingTo(ValhallaLocation)} use. Results are computed directly into a
+ * per-thread array, so unlike those methods no memo entries are allocated.
+ */
+public class VincentyDistanceStrategy implements DistanceStrategy {
+  public static final VincentyDistanceStrategy INSTANCE = new VincentyDistanceStrategy();
+
+  private static final ThreadLocal<float[]> RESULTS = new ThreadLocal<float[]>() {
+    @Override protected float[] initialValue() {
+      return new float[2];
+    }
+  };
+
+  @Override
+  public float distanceBetween(double lat1, double lon1, double lat2, double lon2) {
+    final float[] results = RESULTS.get();
+    ValhallaLocation.distanceBetween(lat1, lon1, lat2, lon2, results);
+    return results[0];
+  }
+
+  @Override
+  public float bearingBetween(double lat1, double lon1, double lat2, double lon2) {
+    final float[] results = RESULTS.get();
+    ValhallaLocation.distanceBetween(lat1, lon1, lat2, lon2, results);
+    return results[1];
+  }
+}
@@ -5,14 +5,31 @@ import com.mapzen.http.Tls12OkHttpClientFactory;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
 
 import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import okhttp3.logging.HttpLoggingInterceptor;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Converter;
@@ -27,14 +44,43 @@ import retrofit2.converter.scalars.ScalarsConverterFactory;
  */
 public class HttpHandler {
 
+  /**
+   * How route requests are sent. {@link #GET} sends the request as the json query parameter,
+   * which is what the server has always accepted. {@link #POST} sends it as the request body,
+   * which avoids long URLs for routes with many locations, and {@link #POST_GZIP} also
+   * compresses the body. Responses are gzip compressed when the server supports it regardless.
+   */
+  public enum RequestMethod {
+    GET,
+    POST,
+    POST_GZIP
+  }
+
   protected static final String DEFAULT_URL = "https://valhalla.mapzen.com/";
   protected static final HttpLoggingInterceptor.Level DEFAULT_LOG_LEVEL =
       HttpLoggingInterceptor.Level.NONE;
+  static final String HEADER_ROUTE_CACHE = "X-Route-Cache";
+  private static final String QUERY_JSON = "json";
+  private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+  private static final String GZIP = "gzip";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final MediaType JSON_MEDIA_TYPE =
+      MediaType.parse("application/json;charset=utf-8");
+  private static final InFlightRequest.Sharer<Route> ROUTE_SHARER =
+      new InFlightRequest.Sharer<Route>() {
+        @Override public Route share(Route route) {
+          return route.newSession();
+        }
+      };
 
   String endpoint;
   HttpLoggingInterceptor.Level logLevel;
   Retrofit adapter;
   RoutingService service;
+  private volatile RouteCache routeCache;
+  private volatile RequestMethod requestMethod = RequestMethod.GET;
+  private final Map<String, InFlightRequest<String>> inFlightRoutes = new HashMap<>();
+  private final Map<String, InFlightRequest<Route>> inFlightParsedRoutes = new HashMap<>();
 
   private Interceptor requestInterceptor = new Interceptor() {
     @Override public Response intercept(Chain chain) throws IOException {
@@ -42,6 +88,24 @@ public class HttpHandler {
     }
   };
 
+  private Interceptor cacheInterceptor = new Interceptor() {
+    @Override public Response intercept(Chain chain) throws IOException {
+      return onCachedRequest(chain);
+    }
+  };
+
+  private Interceptor gzipInterceptor = new Interceptor() {
+    @Override public Response intercept(Chain chain) throws IOException {
+      final Request request = chain.request();
+      if (request.body() == null || !GZIP.equals(request.header(HEADER_CONTENT_ENCODING))) {
+        return chain.proceed(request);
+      }
+      return chain.proceed(request.newBuilder()
+          .method(request.method(), gzip(request.body()))
+          .build());
+    }
+  };
+
   private Gson gson = new GsonBuilder()
       .registerTypeAdapter(JSON.Location.class, new LocationSerializer())
       .create();
@@ -66,6 +130,8 @@ public class HttpHandler {
     final OkHttpClient.Builder builder = Tls12OkHttpClientFactory.Companion.
         enableTls12OnPreLollipop(new OkHttpClient.Builder());
     final OkHttpClient client = builder
+        .addInterceptor(cacheInterceptor)
+        .addInterceptor(gzipInterceptor)
         .addNetworkInterceptor(requestInterceptor)
         .addNetworkInterceptor(new HttpLoggingInterceptor().setLevel(logLevel))
         .build();
@@ -76,24 +142,193 @@ public class HttpHandler {
         .baseUrl(endpoint)
         .client(client)
         .addConverterFactory(ScalarsConverterFactory.create())
+        .addConverterFactory(new RouteConverterFactory())
         .addConverterFactory(new Converter.Factory() {
           @Override public Converter<?, String> stringConverter(Type type, Annotation[] annotations,
               Retrofit retrofit) {
+            if (type == String.class) {
+              return null;
+            }
+
             return new Converter<Object, String>() {
               @Override public String convert(Object value) throws IOException {
                 return gson.toJson(value);
               }
             };
           }
+
+          @Override public Converter<?, RequestBody> requestBodyConverter(Type type,
+              Annotation[] parameterAnnotations, Annotation[] methodAnnotations,
+              Retrofit retrofit) {
+            if (type != JSON.class) {
+              return null;
+            }
+
+            return new Converter<JSON, RequestBody>() {
+              @Override public RequestBody convert(JSON value) throws IOException {
+                final Buffer buffer = new Buffer();
+                final Writer writer = new OutputStreamWriter(buffer.outputStream(), UTF_8);
+                gson.toJson(value, writer);
+                writer.close();
+                return RequestBody.create(JSON_MEDIA_TYPE, buffer.readByteString());
+              }
+            };
+          }
         })
         .build();
     this.service = new RestAdapterFactory(this.adapter).getRoutingService();
   }
 
+  /**
+   * Requests a route. Identical requests made while one is in flight share its network call and
+   * response; cancelling the returned call only stops this callback from receiving it.
+   */
   public Call<String> requestRoute(JSON routeJson, Callback<String> callback) {
-    Call call = service.getRoute(routeJson);
-    call.enqueue(callback);
-    return call;
+    final RequestMethod method = requestMethod;
+    final Call<String> call = method == RequestMethod.GET ? service.getRoute(routeJson)
+        : service.postRoute(routeJson, getContentEncoding(method));
+    return InFlightRequest.enqueue(inFlightRoutes, gson.toJson(routeJson), call, callback, null);
+  }
+
+  /**
+   * Requests a route which is parsed while the response is read, on the http client's thread.
+   * The resulting route does not keep the raw response.
+   *
+   * Identical requests made while one is in flight share its network call and parsed route. The
+   * first callback receives the parsed route and the others each receive a
+   * {@link Route#newSession()} of it, so they can be navigated independently.
+   */
+  public Call<Route> requestParsedRoute(JSON routeJson, Callback<Route> callback) {
+    final RequestMethod method = requestMethod;
+    final Call<Route> call = method == RequestMethod.GET ? service.getParsedRoute(routeJson)
+        : service.postParsedRoute(routeJson, getContentEncoding(method));
+    return InFlightRequest.enqueue(inFlightParsedRoutes, gson.toJson(routeJson), call, callback,
+        ROUTE_SHARER);
+  }
+
+  /**
+   * Requests a parsed route for an immutable request. Safe to call from many threads at once; the
+   * returned future completes on the http client's thread.
+   */
+  public RouteFuture requestRoute(RouteRequest request) {
+    final RouteFuture future = new RouteFuture();
+    future.setCall(requestParsedRoute(request.toJSON(), future.callback));
+    return future;
+  }
+
+  /**
+   * Sets how route requests are sent, {@link RequestMethod#GET} by default. The server must
+   * accept POST requests, and gzip request bodies for {@link RequestMethod#POST_GZIP}.
+   */
+  public void setRequestMethod(RequestMethod requestMethod) {
+    this.requestMethod = requestMethod;
+  }
+
+  public RequestMethod getRequestMethod() {
+    return requestMethod;
+  }
+
+  private static String getContentEncoding(RequestMethod method) {
+    return method == RequestMethod.POST_GZIP ? GZIP : null;
+  }
+
+  /**
+   * Compresses the body as it is written, so the uncompressed request is never copied.
+   */
+  private static RequestBody gzip(final RequestBody body) {
+    return new RequestBody() {
+      @Override public MediaType contentType() {
+        return body.contentType();
+      }
+
+      @Override public long contentLength() {
+        return -1;
+      }
+
+      @Override public void writeTo(BufferedSink sink) throws IOException {
+        final BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
+        body.writeTo(gzipSink);
+        gzipSink.close();
+      }
+    };
+  }
+
+  /**
+   * Sets the cache checked before route requests go to the network, or null to disable caching.
+   * Only successful responses are cached. While a cache is set, parsed route requests read the
+   * whole response before parsing it so that it can be stored.
+   */
+  public void setRouteCache(RouteCache routeCache) {
+    this.routeCache = routeCache;
+  }
+
+  public RouteCache getRouteCache() {
+    return routeCache;
+  }
+
+  /**
+   * Answers route requests from {@link #routeCache} when it has a response for the request and
+   * stores successful responses from the network. Cached responses are marked with
+   * {@link #HEADER_ROUTE_CACHE}.
+   */
+  private Response onCachedRequest(Interceptor.Chain chain) throws IOException {
+    final RouteCache cache = routeCache;
+    final Request request = chain.request();
+    if (cache == null) {
+      return chain.proceed(request);
+    }
+
+    String json = request.url().queryParameter(QUERY_JSON);
+    if ("POST".equals(request.method()) && request.body() != null) {
+      final Buffer body = new Buffer();
+      request.body().writeTo(body);
+      json = body.readUtf8();
+    } else if (!"GET".equals(request.method())) {
+      json = null;
+    }
+    if (json == null) {
+      return chain.proceed(request);
+    }
+
+    final String key = cache.getKey(json);
+    final String cached = cache.get(key);
+    if (cached != null) {
+      return new Response.Builder()
+          .request(request)
+          .protocol(Protocol.HTTP_1_1)
+          .code(200)
+          .message("OK")
+          .header(HEADER_ROUTE_CACHE, "hit")
+          .body(ResponseBody.create(JSON_MEDIA_TYPE, cached))
+          .build();
+    }
+
+    final Response response = chain.proceed(request);
+    if (!response.isSuccessful() || response.body() == null) {
+      return response;
+    }
+
+    final MediaType contentType = response.body().contentType();
+    final String body = response.body().string();
+    if (isRouteFound(body)) {
+      cache.put(key, body);
+    }
+    return response.newBuilder()
+        .body(ResponseBody.create(contentType != null ? contentType : JSON_MEDIA_TYPE, body))
+        .build();
+  }
+
+  /**
+   * Valhalla reports errors such as too many requests with a non-zero trip status in a 200
+   * response, so only bodies with a status of 0 are worth caching.
+   */
+  private static boolean isRouteFound(String body) {
+    try {
+      final JSONObject trip = new JSONObject(body).optJSONObject(Route.KEY_TRIP);
+      return trip != null && trip.optInt(Route.KEY_STATUS, -1) == 0;
+    } catch (JSONException e) {
+      return false;
+    }
   }
 
   /**
@@ -0,0 +1,175 @@
+package com.mapzen.valhalla;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * A route request shared by every caller that asked for the same route while it was in flight.
+ * Each caller gets its own {@link Call}, which can be cancelled without affecting the others; the
+ * shared request is only cancelled once every caller has cancelled.
+ *
+ * The request is kept in the given map, keyed on its payload, until it completes.
+ */
+class InFlightRequest<T> implements Callback<T> {
+  private final Map<String, InFlightRequest<T>> inFlight;
+  private final String key;
+  private final Call<T> call;
+  private final Sharer<T> sharer;
+  private final List<SharedCall> callers = new ArrayList<>();
+  private int activeCallers;
+
+  /**
+   * Gives each caller after the first its own copy of a successful response body
+   */
+  interface Sharer<T> {
+    T share(T body);
+  }
+
+  private InFlightRequest(Map<String, InFlightRequest<T>> inFlight, String key, Call<T> call,
+      Sharer<T> sharer) {
+    this.inFlight = inFlight;
+    this.key = key;
+    this.call = call;
+    this.sharer = sharer;
+  }
+
+  /**
+   * Adds the callback to the request in flight for the key, or enqueues the given call as a new
+   * request if there is none.
+   *
+   * @param sharer copies the response body for additional callers, or null to share it as is
+   */
+  static <T> Call<T> enqueue(Map<String, InFlightRequest<T>> inFlight, String key, Call<T> call,
+      Callback<T> callback, Sharer<T> sharer) {
+    final InFlightRequest<T> request;
+    final Call<T> caller;
+    synchronized (inFlight) {
+      final InFlightRequest<T> existing = inFlight.get(key);
+      if (existing != null) {
+        return existing.add(callback);
+      }
+      request = new InFlightRequest<>(inFlight, key, call, sharer);
+      inFlight.put(key, request);
+      caller = request.add(callback);
+    }
+
+    call.enqueue(request);
+    return caller;
+  }
+
+  private SharedCall add(Callback<T> callback) {
+    final SharedCall caller = new SharedCall(callback);
+    callers.add(caller);
+    activeCallers++;
+    return caller;
+  }
+
+  private void cancel(SharedCall caller) {
+    synchronized (inFlight) {
+      if (caller.canceled) {
+        return;
+      }
+      caller.canceled = true;
+      activeCallers--;
+      if (activeCallers > 0) {
+        return;
+      }
+      inFlight.remove(key);
+    }
+    call.cancel();
+  }
+
+  private List<SharedCall> complete() {
+    synchronized (inFlight) {
+      if (inFlight.get(key) == this) {
+        inFlight.remove(key);
+      }
+      return new ArrayList<>(callers);
+    }
+  }
+
+  /**
+   * Copies the body for every caller after the first before any callback runs, so no callback
+   * can modify the body while it is still being copied.
+   */
+  @Override public void onResponse(Call<T> call, Response<T> response) {
+    final List<SharedCall> callers = complete();
+    final List<Response<T>> responses = new ArrayList<>(callers.size());
+    boolean first = true;
+    for (SharedCall caller : callers) {
+      Response<T> shared = response;
+      if (!caller.canceled) {
+        if (!first && response.isSuccessful() && response.body() != null && sharer != null) {
+          shared = Response.success(sharer.share(response.body()), response.raw());
+        }
+        first = false;
+      }
+      responses.add(shared);
+    }
+
+    for (int i = 0; i < callers.size(); i++) {
+      final SharedCall caller = callers.get(i);
+      if (caller.canceled) {
+        caller.callback.onFailure(caller, new IOException("Canceled"));
+      } else {
+        caller.callback.onResponse(caller, responses.get(i));
+      }
+    }
+  }
+
+  @Override public void onFailure(Call<T> call, Throwable t) {
+    for (SharedCall caller : complete()) {
+      caller.callback.onFailure(caller, t);
+    }
+  }
+
+  /**
+   * One caller's view of the shared request
+   */
+  private class SharedCall implements Call<T> {
+    private final Callback<T> callback;
+    private volatile boolean canceled;
+
+    SharedCall(Callback<T> callback) {
+      this.callback = callback;
+    }
+
+    @Override public Response<T> execute() throws IOException {
+      throw new IllegalStateException("Already executed.");
+    }
+
+    @Override public void enqueue(Callback<T> callback) {
+      throw new IllegalStateException("Already executed.");
+    }
+
+    @Override public boolean isExecuted() {
+      return true;
+    }
+
+    @Override public void cancel() {
+      InFlightRequest.this.cancel(this);
+    }
+
+    @Override public boolean isCanceled() {
+      return canceled;
+    }
+
+    /**
+     * Returns a new call for the same route, which is not shared with other callers.
+     */
+    @Override public Call<T> clone() {
+      return call.clone();
+    }
+
+    @Override public Request request() {
+      return call.request();
+    }
+  }
+}
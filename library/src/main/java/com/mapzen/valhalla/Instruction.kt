@@ -29,13 +29,56 @@ open class Instruction {
         const val KEY_TIME = "time"
     }
 
+    /**
+     * Maneuver this instruction was read from. Its values are read once when the instruction is
+     * constructed, so later changes to it are not reflected by the getters.
+     */
     lateinit var json: JSONObject
 
     var turnInstruction: Int = 0
     var distance: Int = 0
     var location: ValhallaLocation = ValhallaLocation()
-    var liveDistanceToNext: Int = -1
     var bearing: Int = 0
+    /**
+     * Sum of the distances of the route instructions up to and including this one
+     */
+    internal var cumulativeDistance: Int = 0
+    /**
+     * Progress of the route this instruction belongs to, null for standalone instructions
+     */
+    internal var progress: RouteProgress? = null
+    private var liveDistance: Int = -1
+    private var liveDistanceStamp: Int = -1
+    private var humanTurnInstruction: String? = null
+    private var streetName: String = ""
+    private var beginStreetName: String = ""
+    private var time: Int = 0
+    private var beginPolygonIndex: Int = 0
+    private var endPolygonIndex: Int = 0
+    private var verbalPreTransitionInstruction: String = ""
+    private var verbalTransitionAlertInstruction: String = ""
+    private var verbalPostTransitionInstruction: String = ""
+    private var travelMode: TravelMode = TravelMode.DRIVE
+    private var travelType: TravelType = TravelType.CAR
+    private var transitInfo: TransitInfo? = null
+
+    /**
+     * Remaining distance to the end of this instruction. For route instructions this is computed
+     * from the route's distance travelled when read. A value that is set explicitly is kept until
+     * the route's progress next changes.
+     */
+    var liveDistanceToNext: Int
+        get() {
+            val progress = this.progress
+            if (progress == null || liveDistanceStamp == progress.stamp) {
+                return liveDistance
+            }
+            return cumulativeDistance - progress.distanceTravelled
+        }
+        set(value) {
+            liveDistance = value
+            liveDistanceStamp = progress?.stamp ?: -1
+        }
 
     constructor(json: JSONObject) : this(json, Router.DistanceUnits.KILOMETERS) { }
 
@@ -45,6 +88,23 @@ open class Instruction {
         }
         this.json = json
         turnInstruction = parseTurnInstruction(json)
+        if (json.has(KEY_INSTRUCTION)) {
+            humanTurnInstruction = json.getString(KEY_INSTRUCTION)
+        }
+        streetName = parseStreetNames(json, KEY_STREET_NAMES) ?: humanTurnInstruction ?: ""
+        beginStreetName = parseStreetNames(json, KEY_BEGIN_STREET_NAMES) ?: ""
+        time = json.getInt(KEY_TIME)
+        beginPolygonIndex = json.getInt(KEY_BEGIN_SHAPE_INDEX)
+        endPolygonIndex = json.getInt(KEY_END_SHAPE_INDEX)
+        verbalPreTransitionInstruction = json.optString(KEY_VERBAL_PRE_TRANSITION_INSTRUCTION)
+        verbalTransitionAlertInstruction = json.optString(KEY_VERBAL_TRANSITION_ALERT_INSTRUCTION)
+        verbalPostTransitionInstruction = json.optString(KEY_VERBAL_POST_TRANSITION_INSTRUCTION)
+        travelMode = parseTravelMode(json.optString(KEY_TRAVEL_MODE))
+        travelType = parseTravelType(json.optString(KEY_TRAVEL_TYPE))
+        val transitInfoJson = json.optJSONObject(KEY_TRANSIT_INFO)
+        if (transitInfoJson != null) {
+            transitInfo = TransitInfo(transitInfoJson)
+        }
 
         val raw = json.getDouble(KEY_LENGTH)
         when (units) {
@@ -58,40 +118,15 @@ open class Instruction {
     }
 
     fun getHumanTurnInstruction(): String? {
-        return json.getString(KEY_INSTRUCTION);
+        return humanTurnInstruction
     }
 
     fun getBeginStreetNames(): String {
-        if (json.has(KEY_BEGIN_STREET_NAMES)) {
-            var streetName = "";
-            val numStreetNames = (json.getJSONArray(KEY_BEGIN_STREET_NAMES).length())
-            for(i in 0..numStreetNames - 1) {
-                streetName += json.getJSONArray(KEY_BEGIN_STREET_NAMES).get(i);
-                if((numStreetNames > 1) && (i < numStreetNames - 1)) {
-                    streetName += "/"
-                }
-            }
-            return streetName;
-        }
-
-        return ""
+        return beginStreetName
     }
 
-
     fun getName(): String {
-        if (json.has(KEY_STREET_NAMES)) {
-            var streetName = "";
-            val numStreetNames = (json.getJSONArray(KEY_STREET_NAMES).length())
-            for(i in 0..numStreetNames - 1) {
-                streetName += json.getJSONArray(KEY_STREET_NAMES).get(i);
-                if((numStreetNames > 1) && (i < numStreetNames - 1)) {
-                    streetName += "/"
-                }
-            }
-            return streetName;
-        }
-
-        return json.getString(KEY_INSTRUCTION) ?: ""
+        return streetName
     }
 
     fun getFormattedDistance(): String {
@@ -99,15 +134,15 @@ open class Instruction {
     }
 
     fun getTime(): Int {
-        return json.getInt(KEY_TIME)
+        return time
     }
 
     fun getBeginPolygonIndex(): Int {
-        return json.getInt(KEY_BEGIN_SHAPE_INDEX);
+        return beginPolygonIndex
     }
 
     fun getEndPolygonIndex(): Int {
-        return json.getInt(KEY_END_SHAPE_INDEX);
+        return endPolygonIndex
     }
 
     fun getDirectionAngle(): Float {
@@ -160,16 +195,9 @@ open class Instruction {
     }
 
     override fun toString(): String {
-        var name = ""
-        try {
-            name = getName()
-        } catch (e: JSONException) {
-            System.out.println("Json exception unable to get name" + e.stackTrace)
-        }
-
         return java.lang.String.format(Locale.US, "Instruction: (%.5f, %.5f) %s %s" +
                 "LiveDistanceTo: %d", location.latitude, location.longitude,
-                turnInstruction, name, liveDistanceToNext)
+                turnInstruction, streetName, liveDistanceToNext)
     }
 
     override fun equals(obj: Any?): Boolean {
@@ -191,33 +219,27 @@ open class Instruction {
     private fun parseTurnInstruction(json: JSONObject): Int =
             json.getInt(KEY_TYPE)
 
-    fun getVerbalPreTransitionInstruction(): String {
-        if (json.has(KEY_VERBAL_PRE_TRANSITION_INSTRUCTION)) {
-            return json.getString(KEY_VERBAL_PRE_TRANSITION_INSTRUCTION) ?: ""
-        }
-
-        return ""
-    }
-
-    fun getVerbalTransitionAlertInstruction(): String {
-        if (json.has(KEY_VERBAL_TRANSITION_ALERT_INSTRUCTION)) {
-            return json.getString(KEY_VERBAL_TRANSITION_ALERT_INSTRUCTION) ?: ""
+    /**
+     * Joins the street names with slashes, or returns null if the maneuver has none. Names are
+     * interned since the same streets recur across maneuvers and routes.
+     */
+    private fun parseStreetNames(json: JSONObject, key: String): String? {
+        val names = json.optJSONArray(key) ?: return null
+        if (names.length() == 1) {
+            return names.getString(0).intern()
         }
 
-        return ""
-    }
-
-    fun getVerbalPostTransitionInstruction(): String {
-        if (json.has(KEY_VERBAL_POST_TRANSITION_INSTRUCTION)) {
-            return json.getString(KEY_VERBAL_POST_TRANSITION_INSTRUCTION) ?: ""
+        val streetName = StringBuilder()
+        for (i in 0..names.length() - 1) {
+            if (i > 0) {
+                streetName.append('/')
+            }
+            streetName.append(names.getString(i))
         }
-
-        return ""
+        return streetName.toString().intern()
     }
 
-    fun getTravelMode(): TravelMode {
-        val mode = json.getString(KEY_TRAVEL_MODE)
-
+    private fun parseTravelMode(mode: String): TravelMode {
         when (mode) {
             TravelMode.DRIVE.toString() -> return TravelMode.DRIVE
             TravelMode.PEDESTRIAN.toString() -> return TravelMode.PEDESTRIAN
@@ -227,9 +249,7 @@ open class Instruction {
         }
     }
 
-    fun getTravelType(): TravelType {
-        val type = json.getString(KEY_TRAVEL_TYPE)
-
+    private fun parseTravelType(type: String): TravelType {
         when (type) {
             TravelType.CAR.toString() -> return TravelType.CAR
             TravelType.FOOT.toString() -> return TravelType.FOOT
@@ -246,9 +266,28 @@ open class Instruction {
         }
     }
 
+    fun getVerbalPreTransitionInstruction(): String {
+        return verbalPreTransitionInstruction
+    }
+
+    fun getVerbalTransitionAlertInstruction(): String {
+        return verbalTransitionAlertInstruction
+    }
+
+    fun getVerbalPostTransitionInstruction(): String {
+        return verbalPostTransitionInstruction
+    }
+
+    fun getTravelMode(): TravelMode {
+        return travelMode
+    }
+
+    fun getTravelType(): TravelType {
+        return travelType
+    }
+
     fun getTransitInfo(): TransitInfo? {
-        val transitInfoJson = json.optJSONObject(KEY_TRANSIT_INFO) ?: return null
-        return TransitInfo(transitInfoJson)
+        return transitInfo
     }
 
     /**
@@ -256,11 +295,7 @@ open class Instruction {
      * the value in the response is invalid.
      */
     fun getTransitInfoColorHex(): String? {
-        if (getTransitInfo() == null) {
-            return null
-        }
-
-        val color = getTransitInfo()?.getColor() ?: return null
+        val color = transitInfo?.getColor() ?: return null
         return formatColorString(Integer.toHexString(color))
     }
 
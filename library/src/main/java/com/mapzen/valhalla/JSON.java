@@ -11,6 +11,10 @@ public class JSON {
 
     public List<JSON.Location> locations = new ArrayList<>();
     public String costing;
+    /**
+     * Number of alternative routes to return in addition to the best route, omitted when null
+     */
+    public Integer alternates;
 
     @SerializedName("directions_options")
     public DirectionOptions directionsOptions = new DirectionOptions();
@@ -0,0 +1,295 @@
+package com.mapzen.valhalla
+
+import com.mapzen.model.ValhallaLocation
+
+/**
+ * Decoded route shape stored as parallel primitive arrays instead of one [Node] per point.
+ * Coordinates, cumulative distance, bearing and leg distance for the point at index `i` live at
+ * index `i` of their respective arrays. Points of every leg are stored back to back; the index of
+ * the first point of each leg is available from [getLegStart].
+ *
+ * A lazy polyline only counts the points of each leg up front. A leg is decoded, and its
+ * distances and bearings computed, the first time one of its points is accessed.
+ */
+class Polyline {
+
+    private val encodedLegs: Array<String?>
+    private val legStarts: IntArray
+    private var pendingLegs: Int
+    private var latitudes = DoubleArray(0)
+    private var longitudes = DoubleArray(0)
+    private var totalDistances = DoubleArray(0)
+    private var bearings = DoubleArray(0)
+    private var legDistances = DoubleArray(0)
+    private val legOffsets: DoubleArray
+    private var knownLegOffsets = 1
+
+    constructor(encodedLegs: List<String>) : this(encodedLegs, false) {
+    }
+
+    /**
+     * Creates a polyline from the encoded (precision 6) shape of each leg. Distances and bearings
+     * are computed between consecutive points of the same leg.
+     *
+     * @param lazy defer decoding of each leg until one of its points is accessed
+     */
+    constructor(encodedLegs: List<String>, lazy: Boolean) {
+        this.encodedLegs = arrayOfNulls<String>(encodedLegs.size)
+        legStarts = IntArray(encodedLegs.size + 1)
+        legOffsets = DoubleArray(encodedLegs.size + 1)
+        pendingLegs = 0
+        for (leg in 0..encodedLegs.size - 1) {
+            val points = countPoints(encodedLegs[leg])
+            legStarts[leg + 1] = legStarts[leg] + points
+            if (points > 0) {
+                this.encodedLegs[leg] = encodedLegs[leg]
+                pendingLegs++
+            }
+        }
+
+        if (!lazy) {
+            decodeAll()
+        }
+    }
+
+    /**
+     * Creates a decoded polyline from values saved by [RouteFormat]. The arrays are used as they
+     * are, not copied, and must not be modified afterwards.
+     *
+     * @param legStarts index of the first point of each leg, followed by the number of points
+     */
+    internal constructor(legStarts: IntArray, latitudes: DoubleArray, longitudes: DoubleArray,
+            totalDistances: DoubleArray, bearings: DoubleArray, legDistances: DoubleArray) {
+        encodedLegs = arrayOfNulls<String>(legStarts.size - 1)
+        this.legStarts = legStarts
+        legOffsets = DoubleArray(legStarts.size)
+        pendingLegs = 0
+        this.latitudes = latitudes
+        this.longitudes = longitudes
+        this.totalDistances = totalDistances
+        this.bearings = bearings
+        this.legDistances = legDistances
+        getLegOffset(getLegCount())
+    }
+
+    /**
+     * Decodes every leg that has not been accessed yet and accumulates the distance to the start
+     * of every leg. A polyline is not modified after this, so it can be read from several threads
+     * once it has been safely published.
+     */
+    fun decodeAll() {
+        for (leg in 0..encodedLegs.size - 1) {
+            decodeLeg(leg)
+        }
+        getLegOffset(getLegCount())
+    }
+
+    /*
+     * Backing arrays read by [RouteFormat], only complete once the polyline is decoded
+     */
+    internal fun getLegStarts(): IntArray = legStarts
+    internal fun getLatitudes(): DoubleArray = latitudes
+    internal fun getLongitudes(): DoubleArray = longitudes
+    internal fun getTotalDistances(): DoubleArray = totalDistances
+    internal fun getBearings(): DoubleArray = bearings
+    internal fun getLegDistances(): DoubleArray = legDistances
+
+    fun isDecoded(): Boolean {
+        return pendingLegs == 0
+    }
+
+    fun size(): Int {
+        return legStarts[legStarts.size - 1]
+    }
+
+    fun getLegCount(): Int {
+        return legStarts.size - 1
+    }
+
+    /**
+     * Returns the index of the first point of the given leg.
+     */
+    fun getLegStart(leg: Int): Int {
+        return legStarts[leg]
+    }
+
+    /**
+     * Returns the leg that contains the point at the given index.
+     */
+    fun getLegForIndex(index: Int): Int {
+        var low = 0
+        var high = getLegCount() - 1
+        while (low < high) {
+            val mid = (low + high + 1) ushr 1
+            if (legStarts[mid] <= index) {
+                low = mid
+            } else {
+                high = mid - 1
+            }
+        }
+        return low
+    }
+
+    fun getLatitude(index: Int): Double {
+        ensureDecoded(index)
+        return latitudes[index]
+    }
+
+    fun getLongitude(index: Int): Double {
+        ensureDecoded(index)
+        return longitudes[index]
+    }
+
+    /**
+     * Distance in meters from the first point of the leg to this point.
+     */
+    fun getTotalDistance(index: Int): Double {
+        ensureDecoded(index)
+        return totalDistances[index]
+    }
+
+    /**
+     * Bearing in degrees from this point to the next point of the same leg.
+     */
+    fun getBearing(index: Int): Double {
+        ensureDecoded(index)
+        return bearings[index]
+    }
+
+    /**
+     * Distance in meters from this point to the next point of the same leg.
+     */
+    fun getLegDistance(index: Int): Double {
+        ensureDecoded(index)
+        return legDistances[index]
+    }
+
+    /**
+     * Distance in meters from the first point of the route to this point, summed over every leg.
+     * Equal to the sum of [getLegDistance] for all points before this one.
+     */
+    fun getDistanceFromStart(index: Int): Double {
+        return getLegOffset(getLegForIndex(index)) + getTotalDistance(index)
+    }
+
+    /**
+     * Distance in meters from the first point of the route to the first point of the given leg.
+     * Offsets are accumulated once, decoding earlier legs as needed.
+     */
+    private fun getLegOffset(leg: Int): Double {
+        while (knownLegOffsets <= leg) {
+            val previous = knownLegOffsets - 1
+            var length = 0.0
+            if (legStarts[previous + 1] > legStarts[previous]) {
+                length = getTotalDistance(legStarts[previous + 1] - 1)
+            }
+            legOffsets[knownLegOffsets] = legOffsets[previous] + length
+            knownLegOffsets++
+        }
+        return legOffsets[leg]
+    }
+
+    /**
+     * Returns a new [ValhallaLocation] for the point at the given index.
+     */
+    fun getLocation(index: Int): ValhallaLocation {
+        ensureDecoded(index)
+        val loc = ValhallaLocation()
+        loc.latitude = latitudes[index]
+        loc.longitude = longitudes[index]
+        loc.bearing = bearings[index].toFloat()
+        return loc
+    }
+
+    /**
+     * Returns a new [Node] view of the point at the given index.
+     */
+    fun getNode(index: Int): Node {
+        ensureDecoded(index)
+        val node = Node(latitudes[index], longitudes[index])
+        node.totalDistance = totalDistances[index]
+        node.bearing = bearings[index]
+        node.legDistance = legDistances[index]
+        return node
+    }
+
+    private fun ensureDecoded(index: Int) {
+        if (pendingLegs > 0) {
+            decodeLeg(getLegForIndex(index))
+        }
+    }
+
+    private fun decodeLeg(leg: Int) {
+        val encoded = encodedLegs[leg] ?: return
+        if (latitudes.size == 0) {
+            val size = size()
+            latitudes = DoubleArray(size)
+            longitudes = DoubleArray(size)
+            totalDistances = DoubleArray(size)
+            bearings = DoubleArray(size)
+            legDistances = DoubleArray(size)
+        }
+
+        decode(encoded, legStarts[leg])
+        // computed directly rather than through the distance memo, which bulk decoding would
+        // only flush, with one result array reused for the whole leg
+        val results = FloatArray(2)
+        for (i in legStarts[leg] + 1..legStarts[leg + 1] - 1) {
+            ValhallaLocation.distanceBetween(latitudes[i - 1], longitudes[i - 1], latitudes[i],
+                    longitudes[i], results)
+            val distance = results[0].toDouble()
+            totalDistances[i] = distance + totalDistances[i - 1]
+            bearings[i - 1] = ((results[1] + 360) % 360).toDouble()
+            legDistances[i - 1] = distance
+        }
+
+        encodedLegs[leg] = null
+        pendingLegs--
+    }
+
+    /**
+     * Each encoded value ends with a character below 95 (no continuation bit) and every point is
+     * made of two values, so points can be counted without decoding them.
+     */
+    private fun countPoints(encoded: String): Int {
+        var values = 0
+        for (i in 0..encoded.length - 1) {
+            if (encoded[i].toInt() - 63 < 32) {
+                values++
+            }
+        }
+        return values / 2
+    }
+
+    private fun decode(encoded: String, offset: Int) {
+        var point = offset
+        var index = 0
+        val len = encoded.length
+        var lat = 0
+        var lng = 0
+        while (index < len) {
+            var b: Int
+            var shift = 0
+            var result = 0
+            do {
+                b = encoded[index++].toInt() - 63
+                result = result or ((b and 31) shl shift)
+                shift += 5
+            } while (b >= 32)
+            val dlat = (if ((result and 1) != 0) (result shr 1).inv() else (result shr 1))
+            lat += dlat
+            shift = 0
+            result = 0
+            do {
+                b = encoded[index++].toInt() - 63
+                result = result or ((b and 31) shl shift)
+                shift += 5
+            } while (b >= 32)
+            val dlng = (if ((result and 1) != 0) (result shr 1).inv() else (result shr 1))
+            lng += dlng
+            latitudes[point] = lat.toDouble() / 1E6.toDouble()
+            longitudes[point] = lng.toDouble() / 1E6.toDouble()
+            point++
+        }
+    }
+}
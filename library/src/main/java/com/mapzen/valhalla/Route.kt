@@ -1,7 +1,8 @@
 package com.mapzen.valhalla
 
-import com.mapzen.helpers.GeometryHelper.getBearing
+import com.mapzen.model.DistanceStrategy
 import com.mapzen.model.ValhallaLocation
+import com.mapzen.model.VincentyDistanceStrategy
 import org.json.JSONArray
 import org.json.JSONObject
 import java.lang.Math.toRadians
@@ -21,6 +22,7 @@ open class Route {
         const val KEY_TIME = "time"
         const val KEY_LOCATIONS = "locations"
         const val KEY_SUMMARY = "summary"
+        const val KEY_ALTERNATES = "alternates"
         const val CLOSE_TO_DESTINATION_THRESHOLD_METERS: Int = 20
         const val CLOSE_TO_NEXT_LEG_THRESHOLD_METERS: Int = 5
         const val LOST_THRESHOLD_METERS: Int = 50
@@ -29,32 +31,87 @@ open class Route {
         const val COUNTERCLOCKWISE_DEGREES: Double = -90.0
         const val REVERSE_DEGREES: Int = 180
         const val LOCATION_FUZZY_EQUAL_THRESHOLD_DEGREES: Double = 0.00001
+        const val DEFAULT_SNAP_LOOK_AHEAD_SEGMENTS: Int = 250
     }
 
-    lateinit var rawRoute: JSONObject
+    /**
+     * Response this route was parsed from. Routes read with [RouteParser] do not keep the raw
+     * response and return null.
+     */
+    var rawRoute: JSONObject? = null
+    private var status: Int = -1
+    private var totalLength: Double = 0.0
+    private var totalTime: Int = 0
     /**
      * Because https://valhalla.mapzen.com/route does not use http status codes, "status" key
      * in response can indicate too many requests in which case no poly line will be present
      */
-    private var poly: ArrayList<Node>? = null
+    private var poly: Polyline? = null
     //private var fullpoly: ArrayList<Node>? = null
     /**
      * Because https://valhalla.mapzen.com/route does not use http status codes, "status" key
      * in response can indicate too many requests in which case no instructions will be present
      */
     private var instructions: ArrayList<Instruction>? = null
+    /**
+     * Maneuvers waiting to be turned into [instructions] when a lazy route is first navigated
+     */
+    private var pendingManeuvers: JSONArray? = null
+    /**
+     * Maneuvers the [instructions] were built from, kept so [newSession] can build instructions
+     * of its own without reading the response again
+     */
+    private var maneuvers: JSONArray? = null
+    /**
+     * Index of the first poly line point of each instruction, used to look up the instruction
+     * for a point without reading instruction json
+     */
+    private var instructionBeginIndices = IntArray(0)
+    private val progress = RouteProgress()
     var units: Router.DistanceUnits = Router.DistanceUnits.KILOMETERS
     var currentLeg: Int = 0
     private val seenInstructions = HashSet<Instruction>()
     private var lost: Boolean = false
     /**
-     * Snapped location along route poly line
+     * Snapped location along route poly line. Kept as coordinates so that snapping only allocates
+     * the location it returns.
      */
-    private var lastFixedLocation: ValhallaLocation? = null
+    private var hasFixedLocation: Boolean = false
+    private var fixedLatitude: Double = 0.0
+    private var fixedLongitude: Double = 0.0
+    /**
+     * True when the user's location matched a node and is itself the snapped location
+     */
+    private var fixedToLocation: Boolean = false
+    /**
+     * Result of the last successful [snapTo] intersection
+     */
+    private var intersectionLatitude: Double = 0.0
+    private var intersectionLongitude: Double = 0.0
     private var currentInstructionIndex: Int = 0
     var totalDistanceTravelled: Double = 0.0
+    private var alternates: List<Route> = emptyList()
     private var beginningRouteLostThresholdMeters: Int? = null
-    private var fullString: ArrayList<String>? = null
+    private var segmentIndex: SegmentIndex? = null
+    private var transitStopIndex: TransitStopIndex? = null
+    private var resnapping: Boolean = false
+    /**
+     * When enabled, a location that is too far from the current segment is matched against every
+     * segment of the route using a [SegmentIndex] before the user is considered lost. This lets
+     * navigation resume after a GPS jump or a tunnel without fetching a new route.
+     */
+    var isGlobalResnapEnabled: Boolean = false
+    /**
+     * Maximum number of segments [snapToRoute] may advance through for a single location. A
+     * location further ahead than this is treated like any other location far from the current
+     * segment.
+     */
+    var snapLookAheadSegments: Int = DEFAULT_SNAP_LOOK_AHEAD_SEGMENTS
+    /**
+     * Used for the distances and bearings measured while snapping locations to the route. The
+     * shape itself is always measured with [VincentyDistanceStrategy] when it is decoded.
+     */
+    var distanceStrategy: DistanceStrategy = VincentyDistanceStrategy.INSTANCE
 
     constructor(jsonString: String) {
         setJsonObject(JSONObject(jsonString))
@@ -64,103 +121,176 @@ open class Route {
         setJsonObject(jsonObject)
     }
 
+    /**
+     * @param lazy defer decoding of leg shapes and construction of instructions until they are
+     * first accessed. Summary values such as [getTotalDistance] are available immediately.
+     */
+    constructor(jsonString: String, lazy: Boolean) {
+        setJsonObject(JSONObject(jsonString), lazy)
+    }
+
+    constructor(jsonObject: JSONObject, lazy: Boolean) {
+        setJsonObject(jsonObject, lazy)
+    }
+
+    /**
+     * Used by [RouteParser] which calls [initialize] once the response has been read.
+     */
+    internal constructor() {
+    }
+
     fun setJsonObject(jsonObject: JSONObject) {
+        setJsonObject(jsonObject, false)
+    }
+
+    fun setJsonObject(jsonObject: JSONObject, lazy: Boolean) {
         this.rawRoute = jsonObject
-        if (foundRoute()) {
-            initializeDistanceUnits(jsonObject)
+        alternates = emptyList()
+        val alternatesJson = jsonObject.optJSONArray(KEY_ALTERNATES)
+        if (alternatesJson != null) {
+            val routes = ArrayList<Route>(alternatesJson.length())
+            for (i in 0..alternatesJson.length() - 1) {
+                routes.add(Route(alternatesJson.getJSONObject(i), true))
+            }
+            alternates = routes
+        }
+
+        val trip = jsonObject.optJSONObject(KEY_TRIP)
+        if (trip == null) {
+            initialize(-1, null, 0.0, 0, null, null, lazy)
+            return
+        }
+
+        val summary = trip.optJSONObject(KEY_SUMMARY)
+        val length = summary?.getDouble(KEY_LENGTH) ?: 0.0
+        val time = summary?.getInt(KEY_TIME) ?: 0
+        val status = trip.getInt(KEY_STATUS)
+        if (status != 0) {
+            initialize(status, null, length, time, null, null, lazy)
+            return
+        }
 
-            fullString = ArrayList()
-            for ( i in 0..(jsonObject.getJSONObject(KEY_TRIP).getJSONArray(KEY_LEGS).length()-1)){
+        val legs = trip.getJSONArray(KEY_LEGS)
+        val shapes = ArrayList<String>()
+        for (i in 0..legs.length() - 1) {
+            shapes.add(legs.getJSONObject(i).getString(KEY_SHAPE))
+        }
+        initialize(status, trip.getString(KEY_UNITS), length, time, shapes,
+                legs.getJSONObject(0).getJSONArray(KEY_MANEUVERS), lazy)
+    }
 
-                fullString!!.add(jsonObject.getJSONObject(KEY_TRIP).getJSONArray(KEY_LEGS).
-                        getJSONObject(i).getString(KEY_SHAPE))
+    /**
+     * Sets up the route from values extracted from a response.
+     *
+     * @param shapes encoded shape of each leg, only used when a route was found
+     * @param maneuvers maneuvers of the first leg, only used when a route was found
+     */
+    internal fun initialize(status: Int, units: String?, length: Double, time: Int,
+            shapes: List<String>?, maneuvers: JSONArray?, lazy: Boolean) {
+        this.status = status
+        this.totalLength = length
+        this.totalTime = time
+        poly = null
+        instructions = null
+        pendingManeuvers = null
+        this.maneuvers = null
+        segmentIndex = null
+        transitStopIndex = null
+        if (foundRoute()) {
+            initializeDistanceUnits(units)
+            initializePolyline(shapes, lazy)
+            if (lazy) {
+                pendingManeuvers = maneuvers
+            } else {
+                initializeTurnByTurn(maneuvers!!)
             }
-            initializePolyline(fullString)
+        }
+    }
 
-            initializeTurnByTurn(jsonObject.getJSONObject(KEY_TRIP).getJSONArray(KEY_LEGS).
-                    getJSONObject(0).getJSONArray(KEY_MANEUVERS))
+    /**
+     * Sets up the route from values saved by [RouteFormat], with an already decoded shape.
+     */
+    internal fun initialize(status: Int, units: Router.DistanceUnits, length: Double, time: Int,
+            polyline: Polyline?, maneuvers: JSONArray?) {
+        this.status = status
+        this.units = units
+        this.totalLength = length
+        this.totalTime = time
+        poly = polyline
+        instructions = null
+        pendingManeuvers = null
+        this.maneuvers = null
+        segmentIndex = null
+        transitStopIndex = null
+        if (foundRoute()) {
+            initializeTurnByTurn(maneuvers!!)
         }
     }
 
-    private fun initializeDistanceUnits(jsonObject: JSONObject) {
-        when (jsonObject.getJSONObject(KEY_TRIP).getString(KEY_UNITS)) {
+    /**
+     * Summary length in [units], as given in the response
+     */
+    internal fun getLength(): Double {
+        return totalLength
+    }
+
+    /**
+     * Returns the maneuvers the instructions are built from, building them first if this route
+     * was parsed lazily.
+     */
+    internal fun getManeuvers(): JSONArray? {
+        loadInstructions()
+        return maneuvers
+    }
+
+    private fun initializeDistanceUnits(name: String?) {
+        when (name) {
             Router.DistanceUnits.KILOMETERS.toString() -> units = Router.DistanceUnits.KILOMETERS
             Router.DistanceUnits.MILES.toString() -> units = Router.DistanceUnits.MILES
         }
     }
 
+    private fun initializePolyline(encodedFull: List<String>?, lazy: Boolean): Polyline {
+        poly = Polyline(encodedFull!!, lazy)
+        return poly!!
+    }
 
-    private fun initializePolyline(encodedFull: ArrayList<String>?): ArrayList<Node> {
-        val fullpoly: ArrayList<Node> = ArrayList()
-        for ( a in 0..(encodedFull!!.size-1)) {
-            val encoded = encodedFull[a]
-            poly = ArrayList<Node>()
-            var lastNode: Node? = null
-
-            var index = 0
-            val len = encoded.length
-            var lat = 0
-            var lng = 0
-            while (index < len) {
-                var b: Int
-                var shift = 0
-                var result = 0
-                do {
-                    b = encoded[index++].toInt() - 63
-                    result = result or ((b and 31) shl shift)
-                    shift += 5
-                } while (b >= 32)
-                val dlat = (if ((result and 1) != 0) (result shr 1).inv() else (result shr 1))
-                lat += dlat
-                shift = 0
-                result = 0
-                do {
-                    b = encoded[index++].toInt() - 63
-                    result = result or ((b and 31) shl shift)
-                    shift += 5
-                } while (b >= 32)
-                val dlng = (if ((result and 1) != 0) (result shr 1).inv() else (result shr 1))
-                lng += dlng
-                val x = lat.toDouble() / 1E6.toDouble()
-                val y = lng.toDouble() / 1E6.toDouble()
-                val node = Node(x, y)
-                if (!poly!!.isEmpty()) {
-                    val lastElement = poly!![poly!!.size - 1]
-                    val distance = node.getLocation().distanceTo(lastElement.getLocation()).toDouble()
-                    val totalDistance = distance + lastElement.totalDistance
-                    node.totalDistance = totalDistance
-                    if (lastNode != null) {
-                        lastNode.bearing = getBearing(lastNode.getLocation(), node.getLocation())
-                    }
-                    lastNode!!.legDistance = distance
-                }
-
-                lastNode = node
-                poly!!.add(node)
-                fullpoly.add(node)
-            }
+    /**
+     * Returns the route instructions, building them first if this route was parsed lazily.
+     */
+    private fun loadInstructions(): ArrayList<Instruction>? {
+        val maneuvers = pendingManeuvers
+        if (maneuvers != null) {
+            pendingManeuvers = null
+            initializeTurnByTurn(maneuvers)
         }
-        poly = fullpoly
-        return poly!!
+        return instructions
     }
 
     private fun initializeTurnByTurn(instructions: JSONArray) {
+        maneuvers = instructions
         var gapDistance = 0
+        var cumulativeDistance = 0
         this.instructions = ArrayList<Instruction>()
+        instructionBeginIndices = IntArray(instructions.length())
         for (i in 0..instructions.length() - 1) {
             val instruction = Instruction(instructions.getJSONObject(i), units)
-            instruction.bearing = Math.ceil(poly!!.get(instruction.getBeginPolygonIndex()).bearing)
-                    .toInt()
+            val beginIndex = instruction.getBeginPolygonIndex()
+            instruction.bearing = Math.ceil(poly!!.getBearing(beginIndex)).toInt()
             var distance = instruction.distance
             distance += gapDistance
             instruction.distance = distance
             gapDistance = 0
+            cumulativeDistance += distance
+            instruction.cumulativeDistance = cumulativeDistance
+            instruction.progress = progress
+            instructionBeginIndices[i] = beginIndex
             this.instructions!!.add(instruction)
         }
     }
 
     open fun getTotalDistance(): Int {
-        var distance = getSummary().getDouble(KEY_LENGTH)
+        var distance = totalLength
         when (units) {
             Router.DistanceUnits.KILOMETERS -> distance *= Instruction.KM_TO_METERS
             Router.DistanceUnits.MILES -> distance *= Instruction.MI_TO_METERS
@@ -170,10 +300,7 @@ open class Route {
     }
 
     open fun getStatus(): Int? {
-        if (rawRoute.optJSONObject(KEY_TRIP) == null) {
-            return -1
-        }
-        return rawRoute.optJSONObject(KEY_TRIP).getInt(KEY_STATUS)
+        return status
     }
 
     open fun foundRoute(): Boolean {
@@ -181,7 +308,7 @@ open class Route {
     }
 
     open fun getTotalTime(): Int {
-        return getSummary().getInt(KEY_TIME)
+        return totalTime
     }
 
     open fun getDistanceToNextInstruction(): Int {
@@ -189,40 +316,127 @@ open class Route {
     }
 
     open fun getRemainingDistanceToDestination(): Int {
-        return instructions!![instructions!!.size - 1].liveDistanceToNext
+        val instructions = loadInstructions()
+        return instructions!![instructions.size - 1].liveDistanceToNext
     }
 
     open fun getRouteInstructions(): ArrayList<Instruction>? {
-        if (instructions == null) {
-            return null
-        }
-        var accumulatedDistance = 0
-        for (instruction in instructions!!) {
-            instruction.location = poly!![instruction.getBeginPolygonIndex()].getLocation()
-            if (instruction.liveDistanceToNext < 0) {
-                accumulatedDistance += instruction.distance
-                instruction.liveDistanceToNext = accumulatedDistance
-            }
+        val instructions = loadInstructions() ?: return null
+        for (i in 0..instructions.size - 1) {
+            instructions[i].location = poly!!.getLocation(instructionBeginIndices[i])
         }
         return instructions
     }
 
     open fun getGeometry(): ArrayList<ValhallaLocation> {
-        val geometry = ArrayList<ValhallaLocation>()
-        val polyline = poly
-        if (polyline is ArrayList<Node>) {
-            for (node in polyline) {
-                geometry.add(node.getLocation())
-            }
+        val polyline = poly ?: return ArrayList()
+        val geometry = ArrayList<ValhallaLocation>(polyline.size())
+        for (i in 0..polyline.size() - 1) {
+            geometry.add(polyline.getLocation(i))
         }
 
         return geometry
     }
 
+    /**
+     * Returns the decoded route shape, or null if no route was found. Unlike [getGeometry] this
+     * does not allocate a location per point.
+     */
+    open fun getPolyline(): Polyline? {
+        return poly
+    }
+
+    /**
+     * Returns the spatial index over the segments of this route, building it on first use, or
+     * null if no route was found.
+     */
+    open fun getSegmentIndex(): SegmentIndex? {
+        val polyline = poly ?: return null
+        if (segmentIndex == null) {
+            segmentIndex = SegmentIndex(polyline)
+        }
+        return segmentIndex
+    }
+
+    /**
+     * Returns the index over the transit stops of this route, building it on first use, or null
+     * if no route was found. Routes without transit instructions have an empty index.
+     */
+    open fun getTransitStopIndex(): TransitStopIndex? {
+        val polyline = poly ?: return null
+        if (transitStopIndex == null) {
+            transitStopIndex = TransitStopIndex(loadInstructions()!!, polyline)
+        }
+        return transitStopIndex
+    }
+
+    /**
+     * Returns the first transit stop ahead of the distance travelled along the route, or null if
+     * there is none.
+     */
+    open fun getNextTransitStop(): TransitStop? {
+        val index = getTransitStopIndex() ?: return null
+        val next = index.findNextStop(totalDistanceTravelled)
+        return if (next >= 0) index.getStop(next) else null
+    }
+
+    /**
+     * Returns the alternative routes returned with this route when they were requested with
+     * [ValhallaRouter.setAlternates], or an empty list. Alternates are parsed lazily and are not
+     * navigated themselves; use [newSession] to navigate one.
+     */
+    open fun getAlternates(): List<Route> {
+        return alternates
+    }
+
+    internal fun setAlternates(alternates: List<Route>) {
+        this.alternates = alternates
+    }
+
+    /**
+     * Returns a new route for another user of the same trip. The new route shares this route's
+     * decoded shape, spatial indexes and maneuvers, and copies its snapping settings, but has its
+     * own instructions and progress, starting from the beginning of the route.
+     *
+     * Shared parts are fully built before this returns and are not modified afterwards, so routes
+     * created this way can be navigated on different threads. This includes the alternates, whose
+     * shapes are decoded and indexed here so sessions can look for a nearby alternate without
+     * building them concurrently. This route should only be used as a template once it is shared;
+     * navigating it while sessions are created is not supported.
+     */
+    @Synchronized open fun newSession(): Route {
+        val session = Route()
+        session.rawRoute = rawRoute
+        session.status = status
+        session.totalLength = totalLength
+        session.totalTime = totalTime
+        session.units = units
+        session.isGlobalResnapEnabled = isGlobalResnapEnabled
+        session.snapLookAheadSegments = snapLookAheadSegments
+        session.distanceStrategy = distanceStrategy
+        session.alternates = alternates
+        for (alternate in alternates) {
+            alternate.getSegmentIndex()
+        }
+
+        val polyline = poly ?: return session
+        polyline.decodeAll()
+        session.poly = polyline
+        if (isGlobalResnapEnabled) {
+            session.segmentIndex = getSegmentIndex()
+        } else {
+            session.segmentIndex = segmentIndex
+        }
+        session.transitStopIndex = transitStopIndex
+        loadInstructions()
+        session.initializeTurnByTurn(maneuvers!!)
+        return session
+    }
+
     open fun getStartCoordinates(): ValhallaLocation {
         val location = ValhallaLocation()
-        location.latitude = poly!![0].lat
-        location.longitude = poly!![0].lng
+        location.latitude = poly!!.getLatitude(0)
+        location.longitude = poly!!.getLongitude(0)
         return location
     }
 
@@ -230,16 +444,8 @@ open class Route {
         return lost
     }
 
-    private fun getViaPoints(): JSONArray {
-        return rawRoute.getJSONObject(KEY_TRIP).getJSONArray(KEY_LOCATIONS)
-    }
-
-    private fun getSummary(): JSONObject {
-        return rawRoute.getJSONObject(KEY_TRIP).getJSONObject(KEY_SUMMARY)
-    }
-
     open fun getCurrentRotationBearing(): Double {
-        return 360 - poly!!.get(currentLeg).bearing
+        return 360 - poly!!.getBearing(currentLeg)
     }
 
     open fun rewind() {
@@ -249,17 +455,18 @@ open class Route {
     /**
      *  Takes current location and tries to snap it to a location along the route. If we are past
      *  the end of the poly line, consider user lost and don't return location to snap to. If we are
-     *  close to destination, snap to the destination location. If we are close to the next leg of
-     *  route, increment current leg and rerun this function otherwise get fixed location along
-     *  route which is closest to user's current location. If user's location is within certain
-     *  distance to route, snap to that location along path, otherwise consider user lost, dont
-     *  snap to anything
+     *  close to destination, snap to the destination location. Otherwise get fixed location along
+     *  the current segment which is closest to user's current location, advancing through up to
+     *  [snapLookAheadSegments] segments while the fixed location is close to the next segment.
+     *  If user's location is within certain distance to route, snap to that location along path,
+     *  otherwise consider user lost, dont snap to anything. Distance travelled and instructions are
+     *  updated once, after the final segment has been found.
      *
      *  @param currentLocation User's current location
      *  @return location along path that user's location is snapped to, or null if lost
      */
     open fun snapToRoute(currentLocation: ValhallaLocation): ValhallaLocation? {
-        val sizeOfPoly = poly!!.size
+        val sizeOfPoly = poly!!.size()
 
         // we are lost
         if (pastEndOfPoly()) {
@@ -269,27 +476,30 @@ open class Route {
 
         // snap to destination location
         if (closeToDestination(currentLocation)) {
-            val destination = poly!!.get(sizeOfPoly - 1)
+            val destination = sizeOfPoly - 1
             updateDistanceTravelled(destination)
-            return destination.getLocation()
+            return poly!!.getLocation(destination)
         }
 
-        // snap currentNode's location to a location along the route, if we are close
-        // to the next leg, go to next leg and then retry snapping
-        val currentNode = poly!![currentLeg]
-        lastFixedLocation = snapTo(currentNode, currentLocation)
-        if (lastFixedLocation == null) {
-            lastFixedLocation = currentNode.getLocation()
-        } else {
-            if (closeToNextLeg(currentNode.getLocation(), currentNode.legDistance)) {
-                ++currentLeg
-                updateCurrentInstructionIndex()
-                return snapToRoute(currentLocation)
+        // snap location to a location along the current segment, if we are close
+        // to the next segment, go to next segment and then retry snapping
+        var advanced = 0
+        var snapped = snapTo(currentLeg, currentLocation)
+        while (snapped && advanced < snapLookAheadSegments && closeToNextLeg(currentLeg)) {
+            ++currentLeg
+            ++advanced
+            updateCurrentInstructionIndex()
+            if (pastEndOfPoly()) {
+                lost = true
+                return null
             }
+            snapped = snapTo(currentLeg, currentLocation)
         }
 
         if (beginningRouteLostThresholdMeters == null) {
-            val distanceToFirstLoc = currentLocation.distanceTo(poly!![0].getLocation()).toInt()
+            val distanceToFirstLoc = distanceBetween(currentLocation.latitude,
+                    currentLocation.longitude, poly!!.getLatitude(0), poly!!.getLongitude(0))
+                    .toInt()
             beginningRouteLostThresholdMeters = distanceToFirstLoc + LOST_THRESHOLD_METERS
         }
 
@@ -297,21 +507,101 @@ open class Route {
         // route and we arent close to another part of the route, dont consider user lost.
         // otherwise user is in middle of route but far from fixed location along route and
         // is therefore lost
-        var distanceToRoute = currentLocation.distanceTo(lastFixedLocation).toDouble()
+        var distanceToRoute = distanceBetween(currentLocation.latitude, currentLocation.longitude,
+                fixedLatitude, fixedLongitude)
         if (distanceToRoute < LOST_THRESHOLD_METERS) {
-            updateDistanceTravelled(currentNode)
-            return lastFixedLocation
+            updateDistanceTravelled(currentLeg)
+            return getFixedLocation(currentLocation)
         } else if (totalDistanceTravelled == 0.0 && currentLeg == 0
                 && distanceToRoute < beginningRouteLostThresholdMeters!!) {
             return currentLocation
         } else {
+            val resnapped = resnap(currentLocation)
+            if (resnapped != null) {
+                return resnapped
+            }
             lost = true
             return null
         }
     }
 
+    /**
+     * Moves to the segment closest to the location anywhere along the route and snaps to it,
+     * regardless of the current progress. Used to join a route part way along, such as when
+     * switching to an alternate route after leaving this one.
+     *
+     * @return snapped location, or null if no segment is within [LOST_THRESHOLD_METERS]
+     */
+    open fun snapToNearestSegment(location: ValhallaLocation): ValhallaLocation? {
+        val segment = getSegmentIndex()?.findNearestSegment(location.latitude,
+                location.longitude, LOST_THRESHOLD_METERS.toDouble()) ?: return null
+        if (segment < 0) {
+            return null
+        }
+
+        currentLeg = segment
+        currentInstructionIndex = findInstructionIndex(segment)
+        lost = false
+        return snapToRoute(location)
+    }
+
+    /**
+     * Moves to the segment closest to the location anywhere along the route and snaps to it.
+     * Only one resnap is attempted per location; if snapping to the new segment fails the
+     * previous position is restored.
+     *
+     * @return snapped location, or null if global resnap is disabled or no segment is close enough
+     */
+    private fun resnap(location: ValhallaLocation): ValhallaLocation? {
+        if (!isGlobalResnapEnabled || resnapping) {
+            return null
+        }
+
+        val segment = getSegmentIndex()!!.findNearestSegment(location.latitude,
+                location.longitude, LOST_THRESHOLD_METERS.toDouble())
+        if (segment < 0 || segment == currentLeg) {
+            return null
+        }
+
+        val previousLeg = currentLeg
+        val previousInstructionIndex = currentInstructionIndex
+        currentLeg = segment
+        currentInstructionIndex = findInstructionIndex(segment)
+        resnapping = true
+        try {
+            val snapped = snapToRoute(location)
+            if (snapped != null) {
+                return snapped
+            }
+        } finally {
+            resnapping = false
+        }
+
+        currentLeg = previousLeg
+        currentInstructionIndex = previousInstructionIndex
+        return null
+    }
+
+    /**
+     * Returns the index of the last instruction that begins at or before the given point.
+     */
+    private fun findInstructionIndex(index: Int): Int {
+        loadInstructions()
+        var low = 0
+        var high = instructionBeginIndices.size - 1
+        while (low < high) {
+            val mid = (low + high + 1) ushr 1
+            if (instructionBeginIndices[mid] <= index) {
+                low = mid
+            } else {
+                high = mid - 1
+            }
+        }
+        return low
+    }
+
     private fun pastEndOfPoly(): Boolean {
-        return currentLeg >= poly!!.size
+        return currentLeg >= poly!!.size()
     }
 
     /**
@@ -319,106 +609,149 @@ open class Route {
      * {@link CLOSE_TO_DESTINATION_THRESHOLD} user is close to destination
      */
     private fun closeToDestination(location: ValhallaLocation): Boolean {
-        val destination = poly!![poly!!.size - 1]
-        val distanceToDestination = destination.getLocation().distanceTo(location).toDouble()
+        val destination = poly!!.size() - 1
+        val distanceToDestination = distanceBetween(poly!!.getLatitude(destination),
+                poly!!.getLongitude(destination), location.latitude, location.longitude)
         return (Math.floor(distanceToDestination) < CLOSE_TO_DESTINATION_THRESHOLD_METERS)
     }
 
     /**
-     * If the distance from this location to the last fixed location is almost the length of the
+     * If the distance from this node to the last fixed location is almost the length of the
      * leg, then we are close to the next leg
      */
-    private fun closeToNextLeg(location: ValhallaLocation, legDistance: Double): Boolean {
-        return location.distanceTo(lastFixedLocation) >
-                legDistance - CLOSE_TO_NEXT_LEG_THRESHOLD_METERS
+    private fun closeToNextLeg(node: Int): Boolean {
+        return distanceBetween(poly!!.getLatitude(node), poly!!.getLongitude(node),
+                fixedLatitude, fixedLongitude) >
+                poly!!.getLegDistance(node) - CLOSE_TO_NEXT_LEG_THRESHOLD_METERS
     }
 
-    private fun updateDistanceTravelled(current: Node) {
-        totalDistanceTravelled = 0.0
-        var tempDist: Double = 0.0
-        for (i in 0..currentLeg - 1) {
+    private fun distanceBetween(lat1: Double, lng1: Double, lat2: Double, lng2: Double): Double {
+        return distanceStrategy.distanceBetween(lat1, lng1, lat2, lng2).toDouble()
+    }
 
-            tempDist += poly!![i].legDistance
+    /**
+     * Returns the last fixed location, which is the user's location itself if it matched a node.
+     * Otherwise a new location is created with the bearing of the current segment.
+     */
+    private fun getFixedLocation(location: ValhallaLocation): ValhallaLocation {
+        if (fixedToLocation) {
+            return location
         }
-        if (lastFixedLocation != null) {
-            totalDistanceTravelled = Math.ceil(tempDist
-                    + current.getLocation().distanceTo(lastFixedLocation).toDouble())
+
+        val fixedLocation = ValhallaLocation()
+        fixedLocation.latitude = fixedLatitude
+        fixedLocation.longitude = fixedLongitude
+        fixedLocation.bearing = poly!!.getBearing(currentLeg).toFloat()
+        return fixedLocation
+    }
+
+    /**
+     * Distance to the start of the current segment comes from the poly line's prefix sums so this
+     * does not depend on how far along the route we are.
+     */
+    private fun updateDistanceTravelled(current: Int) {
+        totalDistanceTravelled = 0.0
+        if (hasFixedLocation) {
+            totalDistanceTravelled = Math.ceil(poly!!.getDistanceFromStart(currentLeg)
+                    + distanceBetween(poly!!.getLatitude(current), poly!!.getLongitude(current),
+                    fixedLatitude, fixedLongitude))
         }
         updateAllInstructions()
     }
 
+    /**
+     * Publishes [totalDistanceTravelled] to the route instructions. Each instruction's live
+     * distance is its cumulative distance minus the distance travelled, computed when read.
+     */
     open fun updateAllInstructions() {
-        // this constructs a distance table
-        // and calculates from it
-        // 3 instruction has the distance of
-        // first 3 combined
-        var combined = 0
-        for (instruction in instructions!!) {
-            combined += instruction.distance
-            val remaining = (combined) - Math.ceil(totalDistanceTravelled).toInt()
-            instruction.liveDistanceToNext = remaining
-        }
+        progress.update(Math.ceil(totalDistanceTravelled).toInt())
     }
 
     /**
-     * Returns the closes location along the current route segment that the location should snap to
+     * Finds the closest location along the current route segment that the location should snap
+     * to and stores it as the last fixed location
      *
-     *  @param node Current node user is at along poly line (potentially near a turn along route)
+     *  @param node Index of the point user is at along poly line (potentially near a turn along
+     *  route)
      *  @param location Current location of user
-     *  @return ValhallaLocation along route to snap to
+     *  @return false if no location along the segment was found and the node itself was stored
      */
-    private fun snapTo(node: Node, location: ValhallaLocation): ValhallaLocation {
+    private fun snapTo(node: Int, location: ValhallaLocation): Boolean {
+        val lat = poly!!.getLatitude(node)
+        val lng = poly!!.getLongitude(node)
+        val bearing = poly!!.getBearing(node)
+        hasFixedLocation = true
+
         // if lat/lng of node and location are same, just update location's bearing to node
         // and snap to it
-        if (fuzzyEqual(node.getLocation(), location)) {
-            updateDistanceTravelled(node)
-            location.bearing = node.bearing.toFloat()
-            return location
+        if (fuzzyEqual(lat, lng, location)) {
+            location.bearing = bearing.toFloat()
+            setFixedLocation(location.latitude, location.longitude, true)
+            return true
         }
 
-        var correctedLocation = snapTo(node, location, CLOCKWISE_DEGREES)
-        if (correctedLocation == null) {
-            correctedLocation = snapTo(node, location, COUNTERCLOCKWISE_DEGREES)
+        var corrected = snapTo(lat, lng, bearing, location, CLOCKWISE_DEGREES)
+        if (!corrected) {
+            corrected = snapTo(lat, lng, bearing, location, COUNTERCLOCKWISE_DEGREES)
         }
 
-        if (correctedLocation != null) {
-            val distance = correctedLocation.distanceTo(location).toDouble()
+        if (corrected) {
+            val distance = distanceBetween(intersectionLatitude, intersectionLongitude,
+                    location.latitude, location.longitude)
             // check if results are on the otherside of the globe
             if (Math.round(distance) > CORRECTION_THRESHOLD_METERS) {
-                val tmpNode = Node(node.lat, node.lng)
-                tmpNode.bearing = node.bearing - REVERSE_DEGREES.toDouble()
-                correctedLocation = snapTo(tmpNode, location, CLOCKWISE_DEGREES)
-                if (correctedLocation == null) {
-                    correctedLocation = snapTo(tmpNode, location, COUNTERCLOCKWISE_DEGREES)
+                val reverseBearing = bearing - REVERSE_DEGREES.toDouble()
+                corrected = snapTo(lat, lng, reverseBearing, location, CLOCKWISE_DEGREES)
+                if (!corrected) {
+                    corrected = snapTo(lat, lng, reverseBearing, location,
+                            COUNTERCLOCKWISE_DEGREES)
                 }
             }
         }
 
-        val bearingDelta = node.bearing - node.getLocation().bearingTo(correctedLocation).toDouble()
+        // without an intersection there is nothing better than the node itself
+        if (!corrected) {
+            setFixedLocation(lat, lng, false)
+            return false
+        }
+
+        val bearingDelta = bearing - distanceStrategy.bearingBetween(lat, lng,
+                intersectionLatitude, intersectionLongitude).toDouble()
         if (Math.abs(bearingDelta) > 10 && Math.abs(bearingDelta) < 350) {
-            correctedLocation = node.getLocation()
+            setFixedLocation(lat, lng, false)
+        } else {
+            setFixedLocation(intersectionLatitude, intersectionLongitude, false)
         }
+        return true
+    }
 
-        correctedLocation?.bearing = node.getLocation().bearing
-        return correctedLocation!!
+    private fun setFixedLocation(lat: Double, lng: Double, fixedToLocation: Boolean) {
+        fixedLatitude = lat
+        fixedLongitude = lng
+        this.fixedToLocation = fixedToLocation
     }
 
     /**
      * Uses haversine formula (http://www.movable-type.co.uk/scripts/latlong.html) to calculate
      * closest location along current route segment
      *
-     * @param node Current node
+     * @param nodeLat Latitude of current node
+     * @param nodeLng Longitude of current node
+     * @param nodeBearing Bearing of current node
      * @param location User's current location
      * @param degreeOffset Degrees to offset node bearing
+     * @return true if an intersection was found and stored in [intersectionLatitude] and
+     * [intersectionLongitude]
      */
-    private fun snapTo(node: Node, location: ValhallaLocation, degreeOffset: Double): ValhallaLocation? {
-        val lat1 = toRadians(node.lat)
-        val lon1 = toRadians(node.lng)
+    private fun snapTo(nodeLat: Double, nodeLng: Double, nodeBearing: Double,
+            location: ValhallaLocation, degreeOffset: Double): Boolean {
+        val lat1 = toRadians(nodeLat)
+        val lon1 = toRadians(nodeLng)
         val lat2 = toRadians(location.latitude)
         val lon2 = toRadians(location.longitude)
 
-        val brng13 = toRadians(node.bearing)
-        val brng23 = toRadians(node.bearing + degreeOffset)
+        val brng13 = toRadians(nodeBearing)
+        val brng23 = toRadians(nodeBearing + degreeOffset)
         val dLat = lat2 - lat1
         var dLon = lon2 - lon1
         if (dLon == 0.0) {
@@ -428,7 +761,7 @@ open class Route {
         val dist12 = 2 * Math.asin(Math.sqrt(Math.sin(dLat / 2) * Math.sin(dLat / 2)
                 + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2)))
         if (dist12 == 0.0) {
-            return null
+            return false
         }
 
         // initial/final bearings between points
@@ -452,10 +785,10 @@ open class Route {
         val alpha2 = (brng21 - brng23 + Math.PI) % (2 * Math.PI) - Math.PI  // angle 1-2-3
 
         if (Math.sin(alpha1) == 0.0 && Math.sin(alpha2) == 0.0) {
-            return null  // infinite intersections
+            return false  // infinite intersections
         }
         if (Math.sin(alpha1) * Math.sin(alpha2) < 0) {
-            return null       // ambiguous intersection
+            return false  // ambiguous intersection
         }
 
         val alpha3 = Math.acos(-Math.cos(alpha1) * Math.cos(alpha2) + Math.sin(alpha1)
@@ -469,18 +802,17 @@ open class Route {
         // normalise to -180..+180º
         val lon3 = ((lon1 + dLon13) + 3 * Math.PI) % (2 * Math.PI) - Math.PI
 
-        val loc = ValhallaLocation()
-        loc.latitude = Math.toDegrees(lat3)
-        loc.longitude = Math.toDegrees(lon3)
-        return loc
+        intersectionLatitude = Math.toDegrees(lat3)
+        intersectionLongitude = Math.toDegrees(lon3)
+        return true
     }
 
     /**
      * Determine if these two locations are more or less the same to avoid doing extra calculations
      */
-    private fun fuzzyEqual(l1: ValhallaLocation, l2: ValhallaLocation): Boolean {
-        val deltaLat = Math.abs(l1.latitude - l2.latitude)
-        val deltaLng = Math.abs(l1.longitude - l2.longitude)
+    private fun fuzzyEqual(lat: Double, lng: Double, location: ValhallaLocation): Boolean {
+        val deltaLat = Math.abs(lat - location.latitude)
+        val deltaLng = Math.abs(lng - location.longitude)
         return (deltaLat <= LOCATION_FUZZY_EQUAL_THRESHOLD_DEGREES)
                 && (deltaLng <= LOCATION_FUZZY_EQUAL_THRESHOLD_DEGREES)
     }
@@ -494,33 +826,39 @@ open class Route {
     }
 
     open fun getNextInstruction(): Instruction? {
+        val instructions = loadInstructions()
         val nextInstructionIndex = currentInstructionIndex + 1
         if (nextInstructionIndex >= instructions!!.size) {
             return null
         } else {
-            return instructions!![nextInstructionIndex]
+            return instructions[nextInstructionIndex]
         }
     }
 
     open fun getNextInstructionIndex(): Int? {
-        return instructions?.indexOf(getNextInstruction())
+        val instructions = loadInstructions() ?: return null
+        val nextInstructionIndex = currentInstructionIndex + 1
+        if (nextInstructionIndex >= instructions.size) {
+            return -1
+        }
+        return nextInstructionIndex
     }
 
     open fun getCurrentInstruction(): Instruction {
-        return instructions!![currentInstructionIndex]
+        return loadInstructions()!![currentInstructionIndex]
     }
 
     private fun updateCurrentInstructionIndex() {
         val next = getNextInstruction()
         if (next == null) {
             return
-        } else if (currentLeg >= next.getBeginPolygonIndex()) {
+        } else if (currentLeg >= instructionBeginIndices[currentInstructionIndex + 1]) {
             currentInstructionIndex++
         }
     }
 
     open fun getAccurateStartPoint(): ValhallaLocation {
-        return poly!![0].getLocation()
+        return poly!!.getLocation(0)
     }
 
 }
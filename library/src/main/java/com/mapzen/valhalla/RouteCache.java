@@ -0,0 +1,346 @@
+package com.mapzen.valhalla;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Bounded cache of route responses kept in memory and, optionally, on disk. Responses are keyed
+ * on the route request with coordinates rounded to {@link #getCoordinatePrecision()} decimal
+ * places, so requests from nearly the same place share an entry. Entries expire after a fixed
+ * time to live.
+ *
+ * The most recently used {@code maxMemoryEntries} responses are kept in memory. Responses on disk
+ * are evicted oldest first once the directory grows beyond {@code maxDiskBytes}.
+ *
+ * Set on an {@link HttpHandler} with {@link HttpHandler#setRouteCache(RouteCache)}.
+ */
+public class RouteCache {
+  public static final int DEFAULT_MAX_MEMORY_ENTRIES = 16;
+  public static final long DEFAULT_MAX_DISK_BYTES = 10 * 1024 * 1024;
+  public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.HOURS.toMillis(1);
+  /**
+   * Five decimal places is about a meter, well below GPS accuracy
+   */
+  public static final int DEFAULT_COORDINATE_PRECISION = 5;
+
+  private static final String FILE_SUFFIX = ".route";
+  private static final String KEY_LOCATIONS = "locations";
+  private static final String KEY_LAT = "lat";
+  private static final String KEY_LON = "lon";
+
+  private final File directory;
+  private final long maxDiskBytes;
+  private final int maxMemoryEntries;
+  private final long timeToLiveMillis;
+  private final int coordinatePrecision;
+  private final LinkedHashMap<String, Entry> memory;
+  private long diskBytes = -1;
+  private int hitCount;
+  private int missCount;
+
+  /**
+   * Creates a cache kept in memory only, with default limits.
+   */
+  public RouteCache() {
+    this(null, DEFAULT_MAX_DISK_BYTES, DEFAULT_MAX_MEMORY_ENTRIES, DEFAULT_TIME_TO_LIVE_MILLIS,
+        DEFAULT_COORDINATE_PRECISION);
+  }
+
+  /**
+   * Creates a cache kept in memory and in the given directory, with default limits.
+   */
+  public RouteCache(File directory) {
+    this(directory, DEFAULT_MAX_DISK_BYTES, DEFAULT_MAX_MEMORY_ENTRIES,
+        DEFAULT_TIME_TO_LIVE_MILLIS, DEFAULT_COORDINATE_PRECISION);
+  }
+
+  /**
+   * @param directory directory used only by this cache, or null to keep responses in memory only
+   * @param maxDiskBytes size the directory may grow to before the oldest responses are deleted
+   * @param maxMemoryEntries number of responses kept in memory
+   * @param timeToLiveMillis time after which a response is no longer returned
+   * @param coordinatePrecision decimal places request coordinates are rounded to for the key
+   */
+  public RouteCache(File directory, long maxDiskBytes, int maxMemoryEntries,
+      long timeToLiveMillis, int coordinatePrecision) {
+    if (maxMemoryEntries < 0 || maxDiskBytes < 0 || timeToLiveMillis < 0
+        || coordinatePrecision < 0) {
+      throw new IllegalArgumentException("Cache limits must not be negative");
+    }
+
+    this.directory = directory;
+    this.maxDiskBytes = maxDiskBytes;
+    this.maxMemoryEntries = maxMemoryEntries;
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.coordinatePrecision = coordinatePrecision;
+    memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > RouteCache.this.maxMemoryEntries;
+      }
+    };
+  }
+
+  public int getCoordinatePrecision() {
+    return coordinatePrecision;
+  }
+
+  public long getTimeToLiveMillis() {
+    return timeToLiveMillis;
+  }
+
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized int getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the cache key for a route request, the request as JSON, with every location's
+   * coordinates rounded. Other fields are kept as they are.
+   */
+  public String getKey(String requestJson) {
+    final JsonElement request;
+    try {
+      request = new JsonParser().parse(requestJson);
+    } catch (JsonParseException e) {
+      return requestJson;
+    }
+    if (!request.isJsonObject()) {
+      return requestJson;
+    }
+
+    final JsonElement locations = request.getAsJsonObject().get(KEY_LOCATIONS);
+    if (locations != null && locations.isJsonArray()) {
+      final JsonArray array = locations.getAsJsonArray();
+      for (int i = 0; i < array.size(); i++) {
+        if (array.get(i).isJsonObject()) {
+          round(array.get(i).getAsJsonObject(), KEY_LAT);
+          round(array.get(i).getAsJsonObject(), KEY_LON);
+        }
+      }
+    }
+    return request.toString();
+  }
+
+  private void round(JsonObject location, String name) {
+    final JsonElement value = location.get(name);
+    if (value == null || !value.isJsonPrimitive() || !value.getAsJsonPrimitive().isNumber()) {
+      return;
+    }
+
+    location.add(name, new JsonPrimitive(value.getAsBigDecimal()
+        .setScale(coordinatePrecision, RoundingMode.HALF_UP).stripTrailingZeros()));
+  }
+
+  /**
+   * Returns the response cached for the key, or null if there is none or it has expired.
+   */
+  public synchronized String get(String key) {
+    final long now = currentTimeMillis();
+    Entry entry = memory.get(key);
+    if (entry == null) {
+      entry = readFromDisk(key);
+      if (entry != null) {
+        memory.put(key, entry);
+      }
+    }
+
+    if (entry != null && now - entry.storedAt >= timeToLiveMillis) {
+      remove(key);
+      entry = null;
+    }
+
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.response;
+  }
+
+  /**
+   * Caches a successful route response for the key, replacing any previous response.
+   */
+  public synchronized void put(String key, String response) {
+    final Entry entry = new Entry(response, currentTimeMillis());
+    memory.put(key, entry);
+    writeToDisk(key, entry);
+  }
+
+  public synchronized void remove(String key) {
+    memory.remove(key);
+    final File file = getFile(key);
+    if (file != null && file.exists()) {
+      final long length = file.length();
+      if (file.delete() && diskBytes >= 0) {
+        diskBytes -= length;
+      }
+    }
+  }
+
+  /**
+   * Removes every response from memory and disk.
+   */
+  public synchronized void clear() {
+    memory.clear();
+    if (directory == null) {
+      return;
+    }
+
+    for (File file : listFiles()) {
+      file.delete();
+    }
+    diskBytes = 0;
+  }
+
+  /**
+   * Returns the current time. Overridden by tests to expire entries.
+   */
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private File getFile(String key) {
+    if (directory == null) {
+      return null;
+    }
+    return new File(directory, ByteString.encodeUtf8(key).sha1().hex() + FILE_SUFFIX);
+  }
+
+  private File[] listFiles() {
+    final File[] files = directory.listFiles(new FileFilter() {
+      @Override public boolean accept(File file) {
+        return file.getName().endsWith(FILE_SUFFIX);
+      }
+    });
+    return files == null ? new File[0] : files;
+  }
+
+  /**
+   * Files hold the key, the time the response was stored and the response, each on its own line.
+   * The key is checked so that a hash collision is treated as a miss.
+   */
+  private Entry readFromDisk(String key) {
+    final File file = getFile(key);
+    if (file == null || !file.exists()) {
+      return null;
+    }
+
+    BufferedSource source = null;
+    try {
+      source = Okio.buffer(Okio.source(file));
+      if (!key.equals(source.readUtf8LineStrict())) {
+        return null;
+      }
+      final long storedAt = Long.parseLong(source.readUtf8LineStrict());
+      return new Entry(source.readUtf8(), storedAt);
+    } catch (IOException | NumberFormatException e) {
+      file.delete();
+      return null;
+    } finally {
+      closeQuietly(source);
+    }
+  }
+
+  private void writeToDisk(String key, Entry entry) {
+    final File file = getFile(key);
+    if (file == null || (!directory.exists() && !directory.mkdirs())) {
+      return;
+    }
+
+    if (diskBytes < 0) {
+      diskBytes = 0;
+      for (File existing : listFiles()) {
+        diskBytes += existing.length();
+      }
+    }
+    if (file.exists()) {
+      diskBytes -= file.length();
+    }
+
+    BufferedSink sink = null;
+    try {
+      sink = Okio.buffer(Okio.sink(file));
+      sink.writeUtf8(key).writeUtf8("\n")
+          .writeUtf8(Long.toString(entry.storedAt)).writeUtf8("\n")
+          .writeUtf8(entry.response);
+    } catch (IOException e) {
+      closeQuietly(sink);
+      sink = null;
+      file.delete();
+      return;
+    } finally {
+      closeQuietly(sink);
+    }
+
+    diskBytes += file.length();
+    if (diskBytes > maxDiskBytes) {
+      trimToSize();
+    }
+  }
+
+  /**
+   * Deletes the least recently stored responses until the directory fits in
+   * {@link #maxDiskBytes}.
+   */
+  private void trimToSize() {
+    final File[] files = listFiles();
+    Arrays.sort(files, new Comparator<File>() {
+      @Override public int compare(File first, File second) {
+        final long firstStoredAt = first.lastModified();
+        final long secondStoredAt = second.lastModified();
+        return firstStoredAt < secondStoredAt ? -1 : (firstStoredAt == secondStoredAt ? 0 : 1);
+      }
+    });
+
+    for (int i = 0; i < files.length && diskBytes > maxDiskBytes; i++) {
+      final long length = files[i].length();
+      if (files[i].delete()) {
+        diskBytes -= length;
+      }
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // ignored
+    }
+  }
+
+  private static class Entry {
+    final String response;
+    final long storedAt;
+
+    Entry(String response, long storedAt) {
+      this.response = response;
+      this.storedAt = storedAt;
+    }
+  }
+}
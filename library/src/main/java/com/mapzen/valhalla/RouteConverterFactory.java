@@ -0,0 +1,34 @@
+package com.mapzen.valhalla;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Converts successful route responses straight from the response body into a {@link Route} using
+ * {@link RouteParser} so the body is never held in memory as a single string.
+ */
+class RouteConverterFactory extends Converter.Factory {
+  private final RouteParser parser = new RouteParser();
+
+  @Override public Converter<ResponseBody, ?> responseBodyConverter(Type type,
+      Annotation[] annotations, Retrofit retrofit) {
+    if (type != Route.class) {
+      return null;
+    }
+
+    return new Converter<ResponseBody, Route>() {
+      @Override public Route convert(ResponseBody value) throws IOException {
+        try {
+          return parser.parse(value.charStream());
+        } finally {
+          value.close();
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,52 @@
+package com.mapzen.valhalla;
+
+/**
+ * Reason a route could not be fetched by a {@link RouteFuture}.
+ */
+public class RouteException extends Exception {
+  public static final int NO_STATUS_CODE = -1;
+
+  public enum Kind {
+    /**
+     * The server answered with an unsuccessful status code, see {@link #getStatusCode()}
+     */
+    HTTP,
+    /**
+     * The server answered but no route was found between the locations
+     */
+    NO_ROUTE,
+    /**
+     * The request could not be sent or the response could not be read
+     */
+    NETWORK,
+    /**
+     * The response could not be parsed as a route
+     */
+    PARSE,
+    /**
+     * The request was cancelled
+     */
+    CANCELED
+  }
+
+  private final Kind kind;
+  private final int statusCode;
+
+  public RouteException(Kind kind, int statusCode, String message, Throwable cause) {
+    super(message, cause);
+    this.kind = kind;
+    this.statusCode = statusCode;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * Returns the http status code for {@link Kind#HTTP} and {@link Kind#NO_ROUTE} errors, or
+   * {@link #NO_STATUS_CODE}.
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+}
@@ -0,0 +1,210 @@
+package com.mapzen.valhalla
+
+import org.json.JSONArray
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+
+/**
+ * Versioned binary format for saving a route and restoring it without the original response.
+ * The decoded shape is saved with its distances and bearings, so restoring a route does not
+ * decode the polyline or measure it again. Instructions, including transit details, are rebuilt
+ * from their saved maneuvers. Progress along the route and alternates are not saved.
+ *
+ * Files are read through a memory-mapped [FileChannel] and each array of the shape is copied out
+ * with a single bulk read.
+ *
+ * Layout, little endian: a 40 byte header (magic, version, status, time, length, units byte
+ * count, point count, leg start count, maneuver byte count), the leg starts, padding to 8 bytes,
+ * the latitude, longitude, total distance, bearing and leg distance of every point, the
+ * maneuvers as UTF-8 JSON, then the distance units as their UTF-8 name.
+ */
+object RouteFormat {
+    /**
+     * "OTRR" in ASCII
+     */
+    const val MAGIC: Int = 0x4f545252
+    const val VERSION: Int = 2
+
+    private const val HEADER_BYTES = 40
+    private const val SHAPE_ARRAYS = 5
+    private val UTF_8 = Charset.forName("UTF-8")
+
+    /**
+     * Writes the route to the file, replacing it. The route's shape is decoded first if it was
+     * parsed lazily. The file is written next to the destination and renamed once complete, so a
+     * reader never sees a partially written route.
+     */
+    @JvmStatic fun write(route: Route, file: File) {
+        val polyline = route.getPolyline()
+        polyline?.decodeAll()
+        val legStarts = polyline?.getLegStarts() ?: IntArray(0)
+        val points = polyline?.size() ?: 0
+        val maneuvers = (if (route.foundRoute()) route.getManeuvers() else null)
+                ?.toString()?.toByteArray(UTF_8) ?: ByteArray(0)
+        val units = route.units.toString().toByteArray(UTF_8)
+        val shapeOffset = align(HEADER_BYTES + legStarts.size * 4)
+        val size = shapeOffset + points * 8 * SHAPE_ARRAYS + maneuvers.size + units.size
+
+        val temp = File(file.path + ".tmp")
+        RandomAccessFile(temp, "rw").use { output ->
+            output.setLength(size.toLong())
+            val buffer = output.channel.map(FileChannel.MapMode.READ_WRITE, 0, size.toLong())
+            buffer.order(ByteOrder.LITTLE_ENDIAN)
+            buffer.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(route.getStatus() ?: -1)
+                    .putInt(route.getTotalTime())
+                    .putDouble(route.getLength())
+                    .putInt(units.size)
+                    .putInt(points)
+                    .putInt(legStarts.size)
+                    .putInt(maneuvers.size)
+            buffer.asIntBuffer().put(legStarts)
+            buffer.position(shapeOffset)
+            if (polyline != null) {
+                putDoubles(buffer, polyline.getLatitudes(), points)
+                putDoubles(buffer, polyline.getLongitudes(), points)
+                putDoubles(buffer, polyline.getTotalDistances(), points)
+                putDoubles(buffer, polyline.getBearings(), points)
+                putDoubles(buffer, polyline.getLegDistances(), points)
+            }
+            buffer.put(maneuvers)
+            buffer.put(units)
+            buffer.force()
+        }
+
+        if (!temp.renameTo(file)) {
+            file.delete()
+            if (!temp.renameTo(file)) {
+                temp.delete()
+                throw IOException("Could not write route to " + file)
+            }
+        }
+    }
+
+    /**
+     * Reads a route written by [write].
+     *
+     * @throws IOException if the file is not a saved route, was written by an unsupported
+     * version of this format, is truncated or is corrupt
+     */
+    @JvmStatic fun read(file: File): Route {
+        RandomAccessFile(file, "r").use { input ->
+            val length = input.length()
+            if (length < HEADER_BYTES) {
+                throw IOException("Not a saved route: " + file)
+            }
+
+            val buffer = input.channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+            buffer.order(ByteOrder.LITTLE_ENDIAN)
+            return read(buffer, file)
+        }
+    }
+
+    private fun read(buffer: ByteBuffer, file: File): Route {
+        if (buffer.getInt() != MAGIC) {
+            throw IOException("Not a saved route: " + file)
+        }
+        val version = buffer.getInt()
+        if (version != VERSION) {
+            throw IOException("Unsupported route format version " + version + ": " + file)
+        }
+
+        val status = buffer.getInt()
+        val time = buffer.getInt()
+        val length = buffer.getDouble()
+        val unitsBytes = buffer.getInt()
+        val points = buffer.getInt()
+        val legStartCount = buffer.getInt()
+        val maneuverBytes = buffer.getInt()
+        if (unitsBytes < 0 || points < 0 || legStartCount < 0 || maneuverBytes < 0) {
+            throw IOException("Corrupt saved route: " + file)
+        }
+        val shapeOffset = align(HEADER_BYTES + legStartCount.toLong() * 4)
+        if (buffer.limit().toLong() != shapeOffset + points.toLong() * 8 * SHAPE_ARRAYS
+                + maneuverBytes + unitsBytes) {
+            throw IOException("Truncated saved route: " + file)
+        }
+
+        var polyline: Polyline? = null
+        if (legStartCount > 0) {
+            val legStarts = IntArray(legStartCount)
+            buffer.asIntBuffer().get(legStarts)
+            checkLegStarts(legStarts, points, file)
+            buffer.position(shapeOffset.toInt())
+            polyline = Polyline(legStarts, getDoubles(buffer, points), getDoubles(buffer, points),
+                    getDoubles(buffer, points), getDoubles(buffer, points),
+                    getDoubles(buffer, points))
+        } else if (points > 0) {
+            throw IOException("Corrupt saved route: " + file)
+        } else {
+            buffer.position(shapeOffset.toInt())
+        }
+
+        var maneuvers: JSONArray? = null
+        if (maneuverBytes > 0) {
+            val bytes = ByteArray(maneuverBytes)
+            buffer.get(bytes)
+            maneuvers = JSONArray(String(bytes, UTF_8))
+        }
+
+        val unitsName = ByteArray(unitsBytes)
+        buffer.get(unitsName)
+        val units = getUnits(String(unitsName, UTF_8))
+                ?: throw IOException("Unknown distance units in saved route: " + file)
+
+        val route = Route()
+        route.initialize(status, units, length, time, polyline, maneuvers)
+        return route
+    }
+
+    /**
+     * Leg starts must begin at the first point, never decrease and end at the point count.
+     */
+    private fun checkLegStarts(legStarts: IntArray, points: Int, file: File) {
+        var previous = 0
+        for (start in legStarts) {
+            if (start < previous) {
+                throw IOException("Corrupt saved route: " + file)
+            }
+            previous = start
+        }
+        if (legStarts[0] != 0 || legStarts[legStarts.size - 1] != points) {
+            throw IOException("Corrupt saved route: " + file)
+        }
+    }
+
+    private fun getUnits(name: String): Router.DistanceUnits? {
+        for (units in Router.DistanceUnits.values()) {
+            if (units.toString() == name) {
+                return units
+            }
+        }
+        return null
+    }
+
+    private fun align(offset: Int): Int {
+        return (offset + 7) and 7.inv()
+    }
+
+    private fun align(offset: Long): Long {
+        return (offset + 7) and 7L.inv()
+    }
+
+    private fun putDoubles(buffer: ByteBuffer, values: DoubleArray, count: Int) {
+        buffer.asDoubleBuffer().put(values, 0, count)
+        buffer.position(buffer.position() + count * 8)
+    }
+
+    private fun getDoubles(buffer: ByteBuffer, count: Int): DoubleArray {
+        val values = DoubleArray(count)
+        buffer.asDoubleBuffer().get(values)
+        buffer.position(buffer.position() + count * 8)
+        return values
+    }
+}
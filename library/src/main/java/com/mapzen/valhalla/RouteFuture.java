@@ -0,0 +1,223 @@
+package com.mapzen.valhalla;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Result of a route request made with {@link ValhallaRouter#fetchAsync()}. Either blocks for the
+ * route with {@link #get()} or {@link #get(long, TimeUnit)}, or adds a {@link Listener} to be
+ * notified without blocking. Failures are reported as a {@link RouteException}, which is the cause
+ * of the {@link ExecutionException} thrown by {@code get}.
+ *
+ * Cancelling the future cancels the http request. Many futures can be in flight at once; each
+ * snapshots the router's request when it is created, so the router can be reused straight away.
+ */
+public class RouteFuture implements Future<Route> {
+
+  /**
+   * Notified once the future completes, on the executor given to
+   * {@link #addListener(Listener, Executor)}.
+   */
+  public interface Listener {
+    void onSuccess(Route route);
+    void onFailure(RouteException exception);
+  }
+
+  private static final Executor DIRECT = new Executor() {
+    @Override public void execute(Runnable runnable) {
+      runnable.run();
+    }
+  };
+
+  private final List<Listener> listeners = new ArrayList<>();
+  private final List<Executor> executors = new ArrayList<>();
+  private Call<Route> call;
+  private boolean done;
+  private Route route;
+  private RouteException exception;
+
+  final Callback<Route> callback = new Callback<Route>() {
+    @Override public void onResponse(Call<Route> call, Response<Route> response) {
+      if (!response.isSuccessful() || response.body() == null) {
+        fail(new RouteException(RouteException.Kind.HTTP, response.code(),
+            "Route request failed with status " + response.code(), null));
+      } else if (!response.body().foundRoute()) {
+        fail(new RouteException(RouteException.Kind.NO_ROUTE, response.code(), "No route found",
+            null));
+      } else {
+        complete(response.body(), null);
+      }
+    }
+
+    @Override public void onFailure(Call<Route> call, Throwable t) {
+      if (call != null && call.isCanceled()) {
+        fail(new RouteException(RouteException.Kind.CANCELED, RouteException.NO_STATUS_CODE,
+            "Route request was cancelled", t));
+      } else if (t instanceof IOException && !(t instanceof MalformedJsonException)) {
+        fail(new RouteException(RouteException.Kind.NETWORK, RouteException.NO_STATUS_CODE,
+            "Route request failed", t));
+      } else {
+        fail(new RouteException(RouteException.Kind.PARSE, RouteException.NO_STATUS_CODE,
+            "Route response could not be parsed", t));
+      }
+    }
+  };
+
+  RouteFuture() {
+  }
+
+  /**
+   * Sets the request this future is waiting for. Cancels it straight away if the future was
+   * cancelled before the request was made.
+   */
+  void setCall(Call<Route> call) {
+    final boolean canceled;
+    synchronized (this) {
+      this.call = call;
+      canceled = isCancelled();
+    }
+    if (canceled) {
+      call.cancel();
+    }
+  }
+
+  /**
+   * Adds a listener invoked on the executor once the route is fetched or the request fails. If
+   * the future is already done the listener is invoked straight away.
+   */
+  public void addListener(final Listener listener, Executor executor) {
+    synchronized (this) {
+      if (!done) {
+        listeners.add(listener);
+        executors.add(executor);
+        return;
+      }
+    }
+    deliver(listener, executor);
+  }
+
+  /**
+   * Adds a listener invoked on the thread completing the future, which is the http client's
+   * thread unless the future is already done.
+   */
+  public void addListener(Listener listener) {
+    addListener(listener, DIRECT);
+  }
+
+  @Override public boolean cancel(boolean mayInterruptIfRunning) {
+    final Call<Route> call;
+    synchronized (this) {
+      call = this.call;
+    }
+    final boolean canceled = fail(new RouteException(RouteException.Kind.CANCELED,
+        RouteException.NO_STATUS_CODE, "Route request was cancelled", null));
+    if (canceled && call != null) {
+      call.cancel();
+    }
+    return canceled;
+  }
+
+  @Override public synchronized boolean isCancelled() {
+    return exception != null && exception.getKind() == RouteException.Kind.CANCELED;
+  }
+
+  @Override public synchronized boolean isDone() {
+    return done;
+  }
+
+  @Override public synchronized Route get() throws InterruptedException, ExecutionException {
+    while (!done) {
+      wait();
+    }
+    return getResult();
+  }
+
+  @Override public synchronized Route get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!done) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new TimeoutException("Route request did not complete in " + timeout + " " + unit);
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return getResult();
+  }
+
+  /**
+   * Returns the failure once the future is done, or null if a route was found.
+   */
+  public synchronized RouteException getException() {
+    return exception;
+  }
+
+  private Route getResult() throws ExecutionException {
+    if (isCancelled()) {
+      throw (CancellationException) new CancellationException(exception.getMessage())
+          .initCause(exception);
+    }
+    if (exception != null) {
+      throw new ExecutionException(exception);
+    }
+    return route;
+  }
+
+  private boolean fail(RouteException exception) {
+    return complete(null, exception);
+  }
+
+  private boolean complete(Route route, RouteException exception) {
+    final List<Listener> listeners;
+    final List<Executor> executors;
+    synchronized (this) {
+      if (done) {
+        return false;
+      }
+      done = true;
+      this.route = route;
+      this.exception = exception;
+      listeners = new ArrayList<>(this.listeners);
+      executors = new ArrayList<>(this.executors);
+      this.listeners.clear();
+      this.executors.clear();
+      notifyAll();
+    }
+
+    for (int i = 0; i < listeners.size(); i++) {
+      deliver(listeners.get(i), executors.get(i));
+    }
+    return true;
+  }
+
+  private void deliver(final Listener listener, Executor executor) {
+    final Route route;
+    final RouteException exception;
+    synchronized (this) {
+      route = this.route;
+      exception = this.exception;
+    }
+    executor.execute(new Runnable() {
+      @Override public void run() {
+        if (exception != null) {
+          listener.onFailure(exception);
+        } else {
+          listener.onSuccess(route);
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,183 @@
+package com.mapzen.valhalla
+
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.Reader
+import java.util.ArrayList
+
+/**
+ * Reads a route response in a single pass without building a [JSONObject] for the whole
+ * response. Trip status, units, summary and leg shapes are read into plain values; only the
+ * maneuvers of the first leg are kept as small [JSONObject]s for [Instruction].
+ */
+class RouteParser {
+
+    private val lazy: Boolean
+
+    constructor() : this(false) {
+    }
+
+    /**
+     * @param lazy create routes that defer decoding of leg shapes and construction of
+     * instructions until they are first accessed
+     */
+    constructor(lazy: Boolean) {
+        this.lazy = lazy
+    }
+
+    /**
+     * Parses a route from the given reader. The reader is not closed. Alternates included in the
+     * response are always parsed lazily.
+     */
+    fun parse(reader: Reader): Route {
+        val json = JsonReader(reader)
+        json.setLenient(true)
+        return readRoute(json, lazy, true)
+    }
+
+    private fun readRoute(json: JsonReader, lazy: Boolean, readAlternates: Boolean): Route {
+        var status = -1
+        var units: String? = null
+        var length = 0.0
+        var time = 0
+        val shapes = ArrayList<String>()
+        var maneuvers: JSONArray? = null
+        var alternates: List<Route>? = null
+
+        json.beginObject()
+        while (json.hasNext()) {
+            val name = json.nextName()
+            if (name == Route.KEY_ALTERNATES && readAlternates) {
+                val routes = ArrayList<Route>()
+                json.beginArray()
+                while (json.hasNext()) {
+                    routes.add(readRoute(json, true, false))
+                }
+                json.endArray()
+                alternates = routes
+                continue
+            } else if (name != Route.KEY_TRIP) {
+                json.skipValue()
+                continue
+            }
+
+            json.beginObject()
+            while (json.hasNext()) {
+                when (json.nextName()) {
+                    Route.KEY_STATUS -> status = json.nextInt()
+                    Route.KEY_UNITS -> units = json.nextString()
+                    Route.KEY_SUMMARY -> {
+                        json.beginObject()
+                        while (json.hasNext()) {
+                            when (json.nextName()) {
+                                Route.KEY_LENGTH -> length = json.nextDouble()
+                                Route.KEY_TIME -> time = json.nextDouble().toInt()
+                                else -> json.skipValue()
+                            }
+                        }
+                        json.endObject()
+                    }
+                    Route.KEY_LEGS -> {
+                        json.beginArray()
+                        var leg = 0
+                        while (json.hasNext()) {
+                            val legManeuvers = readLeg(json, shapes, leg == 0)
+                            if (leg == 0) {
+                                maneuvers = legManeuvers
+                            }
+                            leg++
+                        }
+                        json.endArray()
+                    }
+                    else -> json.skipValue()
+                }
+            }
+            json.endObject()
+        }
+        json.endObject()
+
+        val route = Route()
+        route.initialize(status, units, length, time, shapes, maneuvers ?: JSONArray(), lazy)
+        if (alternates != null) {
+            route.setAlternates(alternates)
+        }
+        return route
+    }
+
+    /**
+     * Adds the shape of the leg to the given list and returns its maneuvers if requested.
+     */
+    private fun readLeg(json: JsonReader, shapes: ArrayList<String>,
+            keepManeuvers: Boolean): JSONArray? {
+        var maneuvers: JSONArray? = null
+        json.beginObject()
+        while (json.hasNext()) {
+            when (json.nextName()) {
+                Route.KEY_SHAPE -> shapes.add(json.nextString())
+                Route.KEY_MANEUVERS -> {
+                    if (keepManeuvers) {
+                        maneuvers = readArray(json)
+                    } else {
+                        json.skipValue()
+                    }
+                }
+                else -> json.skipValue()
+            }
+        }
+        json.endObject()
+        return maneuvers
+    }
+
+    private fun readObject(json: JsonReader): JSONObject {
+        val obj = JSONObject()
+        json.beginObject()
+        while (json.hasNext()) {
+            obj.put(json.nextName(), readValue(json))
+        }
+        json.endObject()
+        return obj
+    }
+
+    private fun readArray(json: JsonReader): JSONArray {
+        val array = JSONArray()
+        json.beginArray()
+        while (json.hasNext()) {
+            array.put(readValue(json))
+        }
+        json.endArray()
+        return array
+    }
+
+    /**
+     * Keeps integral values as [Int] or [Long] so they can be read back with
+     * [JSONObject.getInt] and [JSONObject.getString] as they would be from the response text.
+     */
+    private fun readNumber(json: JsonReader): Any {
+        val number = json.nextString()
+        if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+            return number.toDouble()
+        }
+
+        val value = number.toLong()
+        if (value >= Int.MIN_VALUE && value <= Int.MAX_VALUE) {
+            return value.toInt()
+        }
+        return value
+    }
+
+    private fun readValue(json: JsonReader): Any {
+        when (json.peek()) {
+            JsonToken.BEGIN_OBJECT -> return readObject(json)
+            JsonToken.BEGIN_ARRAY -> return readArray(json)
+            JsonToken.NUMBER -> return readNumber(json)
+            JsonToken.BOOLEAN -> return json.nextBoolean()
+            JsonToken.NULL -> {
+                json.nextNull()
+                return JSONObject.NULL
+            }
+            else -> return json.nextString()
+        }
+    }
+}
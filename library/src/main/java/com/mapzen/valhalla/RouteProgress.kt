@@ -0,0 +1,21 @@
+package com.mapzen.valhalla
+
+/**
+ * Distance travelled along a route, shared with the route's instructions so their live distances
+ * can be computed when read instead of being rewritten on every location update.
+ */
+internal class RouteProgress {
+    /**
+     * Distance travelled in meters, rounded up
+     */
+    var distanceTravelled: Int = 0
+    /**
+     * Incremented each time [distanceTravelled] is updated
+     */
+    var stamp: Int = 0
+
+    fun update(distanceTravelled: Int) {
+        this.distanceTravelled = distanceTravelled
+        stamp++
+    }
+}
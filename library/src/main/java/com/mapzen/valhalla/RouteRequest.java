@@ -0,0 +1,289 @@
+package com.mapzen.valhalla;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable route request. Requests are built with a {@link Builder}, can be shared between
+ * threads and submitted concurrently with {@link HttpHandler#requestRoute(RouteRequest)}, and are
+ * equal when they would send the same request, so they can be used as cache keys.
+ *
+ * <pre>
+ * RouteRequest request = new RouteRequest.Builder()
+ *     .setLocation(new double[] { lat, lng })
+ *     .setLocation(new double[] { lat, lng })
+ *     .setType(Router.Type.WALKING)
+ *     .build();
+ * </pre>
+ */
+public final class RouteRequest {
+  private final List<JSON.Location> locations;
+  private final Router.Type type;
+  private final String language;
+  private final Router.DistanceUnits units;
+  private final int maxHikingDifficulty;
+  private final int alternates;
+
+  private RouteRequest(Builder builder) {
+    final List<JSON.Location> locations = new ArrayList<>(builder.locations.size());
+    for (JSON.Location location : builder.locations) {
+      locations.add(copy(location));
+    }
+    this.locations = Collections.unmodifiableList(locations);
+    type = builder.type;
+    language = builder.language != null ? builder.language : getDefaultLanguage();
+    units = builder.units;
+    maxHikingDifficulty = builder.maxHikingDifficulty;
+    alternates = builder.alternates;
+  }
+
+  /**
+   * Returns the language tag of the default locale if routes can be described in it, otherwise
+   * its two character language code.
+   */
+  public static String getDefaultLanguage() {
+    final Locale locale = Locale.getDefault();
+    final String tag = locale.getLanguage() + "-" + locale.getCountry();
+    for (Router.Language language : Router.Language.values()) {
+      if (language.toString().equals(tag)) {
+        return tag;
+      }
+    }
+    return locale.getLanguage();
+  }
+
+  public int getLocationCount() {
+    return locations.size();
+  }
+
+  /**
+   * Returns a copy of the location at the index.
+   */
+  public JSON.Location getLocation(int index) {
+    return copy(locations.get(index));
+  }
+
+  public Router.Type getType() {
+    return type;
+  }
+
+  /**
+   * Returns the language instructions are requested in, which is resolved from the default
+   * locale when the request is built if none was set.
+   */
+  public String getLanguage() {
+    return language;
+  }
+
+  public Router.DistanceUnits getUnits() {
+    return units;
+  }
+
+  public int getMaxHikingDifficulty() {
+    return maxHikingDifficulty;
+  }
+
+  public int getAlternates() {
+    return alternates;
+  }
+
+  /**
+   * Returns a new {@link JSON} for this request. The caller may modify it without affecting the
+   * request.
+   */
+  public JSON toJSON() {
+    final JSON json = new JSON();
+    for (JSON.Location location : locations) {
+      json.locations.add(copy(location));
+    }
+    json.costing = type.toString();
+    json.directionsOptions.language = language;
+    json.directionsOptions.units = units.toString();
+    json.costingOptions.maxHikingDifficulty = Integer.toString(maxHikingDifficulty);
+    if (alternates > 0) {
+      json.alternates = alternates;
+    }
+    return json;
+  }
+
+  /**
+   * Returns a builder starting from this request, to build a modified copy of it.
+   */
+  public Builder newBuilder() {
+    final Builder builder = new Builder();
+    builder.locations.addAll(locations);
+    builder.type = type;
+    builder.language = language;
+    builder.units = units;
+    builder.maxHikingDifficulty = maxHikingDifficulty;
+    builder.alternates = alternates;
+    return builder;
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RouteRequest)) {
+      return false;
+    }
+
+    final RouteRequest other = (RouteRequest) o;
+    if (type != other.type || units != other.units
+        || maxHikingDifficulty != other.maxHikingDifficulty || alternates != other.alternates
+        || !equal(language, other.language) || locations.size() != other.locations.size()) {
+      return false;
+    }
+    for (int i = 0; i < locations.size(); i++) {
+      if (!equal(locations.get(i), other.locations.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override public int hashCode() {
+    int result = type.hashCode();
+    result = 31 * result + (language != null ? language.hashCode() : 0);
+    result = 31 * result + units.hashCode();
+    result = 31 * result + maxHikingDifficulty;
+    result = 31 * result + alternates;
+    for (JSON.Location location : locations) {
+      result = 31 * result + hashCode(location);
+    }
+    return result;
+  }
+
+  @Override public String toString() {
+    return "RouteRequest{type=" + type + ", locations=" + locations.size() + ", language="
+        + language + ", units=" + units + "}";
+  }
+
+  private static JSON.Location copy(JSON.Location location) {
+    final JSON.Location copy = new JSON.Location(location.lat, location.lon, location.name,
+        location.street, location.city, location.state);
+    copy.heading = location.heading;
+    return copy;
+  }
+
+  private static boolean equal(JSON.Location first, JSON.Location second) {
+    return Double.compare(first.lat, second.lat) == 0
+        && Double.compare(first.lon, second.lon) == 0
+        && first.heading == second.heading
+        && equal(first.name, second.name)
+        && equal(first.street, second.street)
+        && equal(first.city, second.city)
+        && equal(first.state, second.state);
+  }
+
+  private static int hashCode(JSON.Location location) {
+    long bits = Double.doubleToLongBits(location.lat);
+    int result = (int) (bits ^ (bits >>> 32));
+    bits = Double.doubleToLongBits(location.lon);
+    result = 31 * result + (int) (bits ^ (bits >>> 32));
+    result = 31 * result + location.heading;
+    result = 31 * result + (location.name != null ? location.name.hashCode() : 0);
+    result = 31 * result + (location.street != null ? location.street.hashCode() : 0);
+    result = 31 * result + (location.city != null ? location.city.hashCode() : 0);
+    result = 31 * result + (location.state != null ? location.state.hashCode() : 0);
+    return result;
+  }
+
+  private static boolean equal(String first, String second) {
+    return first == null ? second == null : first.equals(second);
+  }
+
+  /**
+   * Builds {@link RouteRequest}s. Builders are not thread safe, but each request they build is
+   * independent of the builder and of other requests.
+   */
+  public static final class Builder {
+    private final List<JSON.Location> locations = new ArrayList<>();
+    private Router.Type type = Router.Type.DRIVING;
+    private String language;
+    private Router.DistanceUnits units = Router.DistanceUnits.KILOMETERS;
+    private int maxHikingDifficulty = 1;
+    private int alternates;
+
+    public Builder setLocation(double[] point) {
+      locations.add(new JSON.Location(point[0], point[1]));
+      return this;
+    }
+
+    public Builder setLocation(double[] point, int heading) {
+      locations.add(new JSON.Location(point[0], point[1], heading));
+      return this;
+    }
+
+    public Builder setLocation(double[] point, String name, String street, String city,
+        String state) {
+      locations.add(new JSON.Location(point[0], point[1], name, street, city, state));
+      return this;
+    }
+
+    /**
+     * Adds a copy of the location.
+     */
+    public Builder addLocation(JSON.Location location) {
+      locations.add(copy(location));
+      return this;
+    }
+
+    public Builder clearLocations() {
+      locations.clear();
+      return this;
+    }
+
+    public Builder setType(Router.Type type) {
+      if (type == null) {
+        throw new IllegalArgumentException("Type must not be null");
+      }
+      this.type = type;
+      return this;
+    }
+
+    public Builder setLanguage(Router.Language language) {
+      this.language = language == null ? null : language.toString();
+      return this;
+    }
+
+    public Builder setDistanceUnits(Router.DistanceUnits units) {
+      if (units == null) {
+        throw new IllegalArgumentException("Units must not be null");
+      }
+      this.units = units;
+      return this;
+    }
+
+    /**
+     * See {@link Router#setMaxHikingDifficulty(int)}.
+     */
+    public Builder setMaxHikingDifficulty(int difficulty) {
+      maxHikingDifficulty = difficulty;
+      return this;
+    }
+
+    /**
+     * See {@link ValhallaRouter#setAlternates(int)}.
+     */
+    public Builder setAlternates(int count) {
+      if (count < 0) {
+        throw new IllegalArgumentException("Alternates count must not be negative");
+      }
+      alternates = count;
+      return this;
+    }
+
+    /**
+     * @throws IllegalStateException if fewer than two locations were set
+     */
+    public RouteRequest build() {
+      if (locations.size() < 2) {
+        throw new IllegalStateException("At least two locations are required");
+      }
+      return new RouteRequest(this);
+    }
+  }
+}
@@ -1,9 +1,22 @@
 package com.mapzen.valhalla;
 
+import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.POST;
 import retrofit2.http.Query;
 import retrofit2.Call;
 
 public interface RoutingService {
     @GET("/route") Call<String> getRoute(@Query("json") JSON json);
+    @GET("/route") Call<Route> getParsedRoute(@Query("json") JSON json);
+
+    /**
+     * Sends the request as the body. The body is gzip compressed by {@link HttpHandler} when the
+     * content encoding is gzip; pass null to send it uncompressed.
+     */
+    @POST("/route") Call<String> postRoute(@Body JSON json,
+            @Header("Content-Encoding") String contentEncoding);
+    @POST("/route") Call<Route> postParsedRoute(@Body JSON json,
+            @Header("Content-Encoding") String contentEncoding);
 }
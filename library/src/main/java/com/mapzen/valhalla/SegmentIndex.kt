@@ -0,0 +1,216 @@
+package com.mapzen.valhalla
+
+import java.lang.Math.toRadians
+import java.util.ArrayList
+import java.util.Arrays
+import java.util.HashMap
+
+/**
+ * Uniform grid over the segments of a [Polyline] used to find the segment closest to a location
+ * without walking the whole route. A segment is identified by the index of its first point, the
+ * same index used for [Route.currentLeg]. The last point of each leg does not start a segment.
+ *
+ * Cells are square at the highest latitude covered by the route and at least [cellSizeMeters]
+ * wide everywhere else. Only occupied cells are stored, sorted by key, so memory grows with the
+ * length of the route rather than the area of its bounding box. Distances are measured on an
+ * equirectangular projection centered on the query location, which is within a fraction of a
+ * meter of the ellipsoidal distance at the ranges used for snapping. Routes crossing the
+ * antimeridian are not supported.
+ */
+class SegmentIndex {
+
+    companion object {
+        const val DEFAULT_CELL_SIZE_METERS: Double = 100.0
+        const val METERS_PER_DEGREE: Double = 111319.49079327357
+    }
+
+    private val polyline: Polyline
+    private val cellSizeMeters: Double
+    private val minLat: Double
+    private val minLng: Double
+    private val cellLat: Double
+    private val cellLng: Double
+    private val rows: Int
+    private val cols: Int
+    private val cellKeys: LongArray
+    private val cellStarts: IntArray
+    private val cellSegments: IntArray
+
+    constructor(polyline: Polyline) : this(polyline, DEFAULT_CELL_SIZE_METERS) {
+    }
+
+    constructor(polyline: Polyline, cellSizeMeters: Double) {
+        this.polyline = polyline
+        this.cellSizeMeters = cellSizeMeters
+        polyline.decodeAll()
+
+        var minLat = 90.0
+        var maxLat = -90.0
+        var minLng = 180.0
+        var maxLng = -180.0
+        for (i in 0..polyline.size() - 1) {
+            minLat = Math.min(minLat, polyline.getLatitude(i))
+            maxLat = Math.max(maxLat, polyline.getLatitude(i))
+            minLng = Math.min(minLng, polyline.getLongitude(i))
+            maxLng = Math.max(maxLng, polyline.getLongitude(i))
+        }
+        if (polyline.size() == 0) {
+            minLat = 0.0
+            maxLat = 0.0
+            minLng = 0.0
+            maxLng = 0.0
+        }
+
+        val maxAbsLat = Math.min(Math.max(Math.abs(minLat), Math.abs(maxLat)), 89.0)
+        this.minLat = minLat
+        this.minLng = minLng
+        cellLat = cellSizeMeters / METERS_PER_DEGREE
+        cellLng = cellSizeMeters / (METERS_PER_DEGREE * Math.cos(toRadians(maxAbsLat)))
+        rows = (Math.floor((maxLat - minLat) / cellLat) + 1).toInt()
+        cols = (Math.floor((maxLng - minLng) / cellLng) + 1).toInt()
+
+        val cells = HashMap<Long, ArrayList<Int>>()
+        for (segment in 0..polyline.size() - 2) {
+            if (isSegment(segment)) {
+                addSegment(cells, segment)
+            }
+        }
+
+        cellKeys = LongArray(cells.size)
+        var i = 0
+        for (key in cells.keys) {
+            cellKeys[i++] = key
+        }
+        Arrays.sort(cellKeys)
+
+        cellStarts = IntArray(cellKeys.size + 1)
+        for (cell in 0..cellKeys.size - 1) {
+            cellStarts[cell + 1] = cellStarts[cell] + cells[cellKeys[cell]]!!.size
+        }
+        cellSegments = IntArray(cellStarts[cellKeys.size])
+        for (cell in 0..cellKeys.size - 1) {
+            val segments = cells[cellKeys[cell]]!!
+            for (j in 0..segments.size - 1) {
+                cellSegments[cellStarts[cell] + j] = segments[j]
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the segment closest to the given location, or -1 if no segment is
+     * within [maxDistanceMeters].
+     */
+    fun findNearestSegment(lat: Double, lng: Double, maxDistanceMeters: Double): Int {
+        if (cellKeys.size == 0) {
+            return -1
+        }
+
+        val row = Math.floor((lat - minLat) / cellLat).toInt()
+        val col = Math.floor((lng - minLng) / cellLng).toInt()
+        val cosLat = Math.cos(toRadians(lat))
+        // a segment is registered in the cells it was sampled in, which may be a neighbour of a
+        // cell it only clips, so it can sit one ring further out than its distance suggests
+        val maxRing = Math.ceil(maxDistanceMeters / cellSizeMeters).toInt() + 2
+
+        var nearest = -1
+        var nearestDistance = maxDistanceMeters
+        for (ring in 0..maxRing) {
+            for (r in row - ring..row + ring) {
+                if (r < 0 || r >= rows) {
+                    continue
+                }
+                val edgeRow = r == row - ring || r == row + ring
+                val step = if (edgeRow || ring == 0) 1 else 2 * ring
+                var c = col - ring
+                while (c <= col + ring) {
+                    if (c >= 0 && c < cols) {
+                        val cell = Arrays.binarySearch(cellKeys, getKey(r, c))
+                        if (cell >= 0) {
+                            for (j in cellStarts[cell]..cellStarts[cell + 1] - 1) {
+                                val segment = cellSegments[j]
+                                val distance = distanceToSegment(segment, lat, lng, cosLat)
+                                if (distance <= nearestDistance
+                                        && (nearest < 0 || distance < nearestDistance
+                                        || segment < nearest)) {
+                                    nearest = segment
+                                    nearestDistance = distance
+                                }
+                            }
+                        }
+                    }
+                    c += step
+                }
+            }
+
+            // nothing in a later ring can be closer than this
+            if (nearest >= 0 && nearestDistance <= (ring - 1) * cellSizeMeters) {
+                break
+            }
+        }
+        return nearest
+    }
+
+    /**
+     * Returns the distance in meters from the given location to the closest point of a segment.
+     */
+    fun getDistanceToSegment(segment: Int, lat: Double, lng: Double): Double {
+        return distanceToSegment(segment, lat, lng, Math.cos(toRadians(lat)))
+    }
+
+    private fun distanceToSegment(segment: Int, lat: Double, lng: Double, cosLat: Double): Double {
+        val ax = (polyline.getLongitude(segment) - lng) * cosLat
+        val ay = polyline.getLatitude(segment) - lat
+        val dx = (polyline.getLongitude(segment + 1) - lng) * cosLat - ax
+        val dy = polyline.getLatitude(segment + 1) - lat - ay
+        val lengthSquared = dx * dx + dy * dy
+        var t = 0.0
+        if (lengthSquared > 0) {
+            t = Math.min(1.0, Math.max(0.0, -(ax * dx + ay * dy) / lengthSquared))
+        }
+        val px = ax + t * dx
+        val py = ay + t * dy
+        return Math.sqrt(px * px + py * py) * METERS_PER_DEGREE
+    }
+
+    private fun isSegment(index: Int): Boolean {
+        val leg = polyline.getLegForIndex(index)
+        return index + 1 < polyline.getLegStart(leg + 1)
+    }
+
+    /**
+     * Registers the segment in the cell of every point sampled along it at half a cell apart, so
+     * consecutive samples always fall in the same or adjacent cells.
+     */
+    private fun addSegment(cells: HashMap<Long, ArrayList<Int>>, segment: Int) {
+        val lat1 = polyline.getLatitude(segment)
+        val lng1 = polyline.getLongitude(segment)
+        val lat2 = polyline.getLatitude(segment + 1)
+        val lng2 = polyline.getLongitude(segment + 1)
+        val rowSpan = Math.abs(lat2 - lat1) / cellLat
+        val colSpan = Math.abs(lng2 - lng1) / cellLng
+        val samples = Math.ceil(Math.max(rowSpan, colSpan) * 2).toInt()
+
+        var lastKey = -1L
+        for (k in 0..samples) {
+            val t = if (samples == 0) 0.0 else k.toDouble() / samples
+            val row = Math.floor((lat1 + t * (lat2 - lat1) - minLat) / cellLat).toInt()
+            val col = Math.floor((lng1 + t * (lng2 - lng1) - minLng) / cellLng).toInt()
+            val key = getKey(row, col)
+            if (key != lastKey) {
+                var segments = cells[key]
+                if (segments == null) {
+                    segments = ArrayList<Int>()
+                    cells.put(key, segments)
+                }
+                if (segments.isEmpty() || segments[segments.size - 1] != segment) {
+                    segments.add(segment)
+                }
+                lastKey = key
+            }
+        }
+    }
+
+    private fun getKey(row: Int, col: Int): Long {
+        return row.toLong() * cols + col
+    }
+}
@@ -1,5 +1,6 @@
 package com.mapzen.valhalla
 
+import org.json.JSONException
 import org.json.JSONObject
 import java.util.ArrayList
 
@@ -19,62 +20,95 @@ class TransitInfo {
     const val KEY_OPERATOR_NAME = "operator_name"
   }
 
-  private lateinit var json: JSONObject
+  private val transitStops: ArrayList<TransitStop>?
+  private val headsign: String
+  private val longName: String
+  private val operatorUrl: String
+  private val onestopId: String
+  private val shortName: String
+  private val color: Int?
+  private val description: String
+  private val textColor: Int?
+  private val operatorOnestopId: String
+  private val operatorName: String
 
   constructor(json: JSONObject) {
-    this.json = json
+    val jsonArray = json.optJSONArray(KEY_TRANSIT_STOPS)
+    if (jsonArray != null) {
+      val stops = ArrayList<TransitStop>(jsonArray.length())
+      for (i in 0..jsonArray.length() - 1) {
+        stops.add(TransitStop(jsonArray.getJSONObject(i)))
+      }
+      transitStops = stops
+    } else {
+      transitStops = null
+    }
+    headsign = json.optString(KEY_HEADSIGN)
+    longName = json.optString(KEY_LONG_NAME)
+    operatorUrl = json.optString(KEY_OPERATOR_URL)
+    onestopId = json.optString(KEY_ONESTOP_ID)
+    shortName = json.optString(KEY_SHORT_NAME)
+    color = if (json.has(KEY_COLOR)) json.getInt(KEY_COLOR) else null
+    description = json.optString(KEY_DESCRIPTION)
+    textColor = if (json.has(KEY_TEXT_COLOR)) json.getInt(KEY_TEXT_COLOR) else null
+    operatorOnestopId = json.optString(KEY_OPERATOR_ONESTOP_ID)
+    operatorName = json.optString(KEY_OPERATOR_NAME)
   }
 
+  /**
+   * Returns the stops of this transit leg in the order they are served. The list is read once
+   * and shared by every caller, so it should not be modified.
+   *
+   * @throws JSONException if the transit info has no stops
+   */
   fun getTransitStops(): ArrayList<TransitStop> {
-    val jsonArray = json.getJSONArray(KEY_TRANSIT_STOPS)
-    val stops = ArrayList<TransitStop>()
-    for (i in 0..jsonArray.length() - 1) {
-      stops.add(TransitStop(jsonArray.getJSONObject(i)))
-    }
-    return stops
+    return transitStops ?: throw JSONException("No value for " + KEY_TRANSIT_STOPS)
+  }
+
+  internal fun hasTransitStops(): Boolean {
+    return transitStops != null
   }
 
   fun getHeadsign(): String {
-    return json.optString(KEY_HEADSIGN)
+    return headsign
   }
 
   fun getLongName(): String {
-    return json.optString(KEY_LONG_NAME)
+    return longName
   }
 
   fun getOperatorUrl(): String {
-    return json.optString(KEY_OPERATOR_URL)
+    return operatorUrl
   }
 
   fun getOnestopId(): String {
-    return json.optString(KEY_ONESTOP_ID)
+    return onestopId
   }
 
   fun getShortName(): String {
-    return json.optString(KEY_SHORT_NAME)
+    return shortName
   }
 
   fun getColor(): Int? {
-    if (json.has(KEY_COLOR)) {
-      return json.getInt(KEY_COLOR)
-    } else {
-      return null
-    }
+    return color
   }
 
   fun getDescription(): String {
-    return json.optString(KEY_DESCRIPTION)
+    return description
   }
 
+  /**
+   * @throws JSONException if the transit info has no text color
+   */
   fun getTextColor(): Int {
-    return json.getInt(KEY_TEXT_COLOR)
+    return textColor ?: throw JSONException("No value for " + KEY_TEXT_COLOR)
   }
 
   fun getOperatorOnestopId(): String {
-    return json.optString(KEY_OPERATOR_ONESTOP_ID)
+    return operatorOnestopId
   }
 
   fun getOperatorName(): String {
-    return json.optString(KEY_OPERATOR_NAME)
+    return operatorName
   }
 }
@@ -16,46 +16,75 @@ class TransitStop {
     const val KEY_LAT = "lat"
   }
 
+  /**
+   * Stop this instance was read from. Its values are read once when the stop is constructed, so
+   * later changes to it are not reflected by the getters.
+   */
   lateinit var json: JSONObject
 
+  private val type: String
+  private val onestopId: String
+  private val name: String
+  private val arrivalDateTime: String
+  private val departureDateTime: String
+  private val isParentStop: Boolean
+  private val assumedSchedule: Boolean
+  private val lat: Double
+  private val lon: Double
+
   constructor(json: JSONObject) {
-      this.json = json
+    this.json = json
+    type = json.optString(KEY_TYPE)
+    onestopId = json.optString(KEY_ONESTOP_ID)
+    name = json.optString(KEY_NAME)
+    arrivalDateTime = json.optString(KEY_ARRIVAL_DATE_TIME)
+    departureDateTime = json.optString(KEY_DEPARTURE_DATE_TIME)
+    isParentStop = json.optBoolean(KEY_IS_PARENT_STOP)
+    assumedSchedule = json.optBoolean(KEY_ASSUMED_SCHEDULE)
+    lat = json.optDouble(KEY_LAT)
+    lon = json.optDouble(KEY_LON)
   }
 
   fun getType(): String {
-    return json.optString(KEY_TYPE)
+    return type
   }
 
   fun getOnestopId(): String {
-    return json.optString(KEY_ONESTOP_ID)
+    return onestopId
   }
 
   fun getName(): String {
-    return json.optString(KEY_NAME)
+    return name
   }
 
   fun getDepartureDateTime(): String {
-    return json.optString(KEY_DEPARTURE_DATE_TIME)
+    return departureDateTime
   }
 
   fun getIsParentStop(): Boolean {
-    return json.optBoolean(KEY_IS_PARENT_STOP)
+    return isParentStop
   }
 
   fun getAssumedSchedule(): Boolean {
-    return json.optBoolean(KEY_ASSUMED_SCHEDULE)
+    return assumedSchedule
   }
 
   fun getArrivalDateTime(): String {
-    return json.optString(KEY_ARRIVAL_DATE_TIME)
+    return arrivalDateTime
   }
 
+  /**
+   * Longitude of the stop, or NaN if the response does not include one.
+   */
   fun getLon(): Double {
-    return json.optDouble(KEY_LON)
+    return lon
   }
 
+  /**
+   * Latitude of the stop, or NaN if the response does not include one.
+   */
   fun getLat(): Double {
-    return json.optDouble(KEY_LAT)
+    return lat
   }
 
-}
\ No newline at end of file
+}
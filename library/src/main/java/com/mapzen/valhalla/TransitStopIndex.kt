@@ -0,0 +1,260 @@
+package com.mapzen.valhalla
+
+import java.lang.Math.toRadians
+import java.util.ArrayList
+import java.util.Arrays
+import java.util.HashMap
+
+/**
+ * Index over the transit stops of a route, in the order they are served. Each stop is placed
+ * along the route at the closest point of its instruction's shape, so the next stop for a
+ * distance travelled is found with a binary search. Stops with coordinates are also bucketed in a
+ * uniform grid like [SegmentIndex], so the stop closest to a location is found without measuring
+ * every stop. Queries do not allocate.
+ */
+class TransitStopIndex {
+
+    companion object {
+        const val DEFAULT_CELL_SIZE_METERS: Double = 250.0
+    }
+
+    private val stops = ArrayList<TransitStop>()
+    private val distances: DoubleArray
+    private val cellSizeMeters: Double
+    private val minLat: Double
+    private val minLng: Double
+    private val cellLat: Double
+    private val cellLng: Double
+    private val rows: Int
+    private val cols: Int
+    private val cellKeys: LongArray
+    private val cellStarts: IntArray
+    private val cellStops: IntArray
+
+    constructor(instructions: List<Instruction>, polyline: Polyline) :
+            this(instructions, polyline, DEFAULT_CELL_SIZE_METERS) {
+    }
+
+    constructor(instructions: List<Instruction>, polyline: Polyline, cellSizeMeters: Double) {
+        this.cellSizeMeters = cellSizeMeters
+        val stopDistances = ArrayList<Double>()
+        var lastDistance = 0.0
+        for (instruction in instructions) {
+            val transitInfo = instruction.getTransitInfo() ?: continue
+            if (!transitInfo.hasTransitStops()) {
+                continue
+            }
+            val begin = Math.min(instruction.getBeginPolygonIndex(), polyline.size() - 1)
+            val end = Math.min(Math.max(instruction.getEndPolygonIndex(), begin),
+                    polyline.size() - 1)
+            for (stop in transitInfo.getTransitStops()) {
+                val distance = Math.max(lastDistance, getDistanceAlongRoute(stop, polyline,
+                        begin, end))
+                stops.add(stop)
+                stopDistances.add(distance)
+                lastDistance = distance
+            }
+        }
+        distances = DoubleArray(stops.size)
+        for (i in 0..stops.size - 1) {
+            distances[i] = stopDistances[i]
+        }
+
+        var minLat = 90.0
+        var maxLat = -90.0
+        var minLng = 180.0
+        var maxLng = -180.0
+        var located = 0
+        for (stop in stops) {
+            if (hasLocation(stop)) {
+                minLat = Math.min(minLat, stop.getLat())
+                maxLat = Math.max(maxLat, stop.getLat())
+                minLng = Math.min(minLng, stop.getLon())
+                maxLng = Math.max(maxLng, stop.getLon())
+                located++
+            }
+        }
+        if (located == 0) {
+            minLat = 0.0
+            maxLat = 0.0
+            minLng = 0.0
+            maxLng = 0.0
+        }
+
+        val maxAbsLat = Math.min(Math.max(Math.abs(minLat), Math.abs(maxLat)), 89.0)
+        this.minLat = minLat
+        this.minLng = minLng
+        cellLat = cellSizeMeters / SegmentIndex.METERS_PER_DEGREE
+        cellLng = cellSizeMeters /
+                (SegmentIndex.METERS_PER_DEGREE * Math.cos(toRadians(maxAbsLat)))
+        rows = (Math.floor((maxLat - minLat) / cellLat) + 1).toInt()
+        cols = (Math.floor((maxLng - minLng) / cellLng) + 1).toInt()
+
+        val cells = HashMap<Long, ArrayList<Int>>()
+        for (i in 0..stops.size - 1) {
+            val stop = stops[i]
+            if (hasLocation(stop)) {
+                val key = getKey(getRow(stop.getLat()), getCol(stop.getLon()))
+                var indices = cells[key]
+                if (indices == null) {
+                    indices = ArrayList<Int>()
+                    cells.put(key, indices)
+                }
+                indices.add(i)
+            }
+        }
+
+        cellKeys = LongArray(cells.size)
+        var i = 0
+        for (key in cells.keys) {
+            cellKeys[i++] = key
+        }
+        Arrays.sort(cellKeys)
+
+        cellStarts = IntArray(cellKeys.size + 1)
+        for (cell in 0..cellKeys.size - 1) {
+            cellStarts[cell + 1] = cellStarts[cell] + cells[cellKeys[cell]]!!.size
+        }
+        cellStops = IntArray(cellStarts[cellKeys.size])
+        for (cell in 0..cellKeys.size - 1) {
+            val indices = cells[cellKeys[cell]]!!
+            for (j in 0..indices.size - 1) {
+                cellStops[cellStarts[cell] + j] = indices[j]
+            }
+        }
+    }
+
+    fun size(): Int {
+        return stops.size
+    }
+
+    fun getStop(index: Int): TransitStop {
+        return stops[index]
+    }
+
+    /**
+     * Distance in meters from the first point of the route to where the stop is placed along it.
+     * Distances never decrease from one stop to the next.
+     */
+    fun getDistanceFromStart(index: Int): Double {
+        return distances[index]
+    }
+
+    /**
+     * Returns the index of the first stop placed beyond the given distance along the route, or -1
+     * if every stop has been passed.
+     */
+    fun findNextStop(distanceFromStart: Double): Int {
+        var low = 0
+        var high = distances.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (distances[mid] <= distanceFromStart) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        return if (low < distances.size) low else -1
+    }
+
+    /**
+     * Returns the index of the stop closest to the given location, or -1 if no stop is within
+     * [maxDistanceMeters]. Of stops at the same distance the first served is returned.
+     */
+    fun findNearestStop(lat: Double, lng: Double, maxDistanceMeters: Double): Int {
+        if (cellKeys.size == 0) {
+            return -1
+        }
+
+        val row = getRow(lat)
+        val col = getCol(lng)
+        val cosLat = Math.cos(toRadians(lat))
+        val maxRing = Math.ceil(maxDistanceMeters / cellSizeMeters).toInt() + 1
+
+        var nearest = -1
+        var nearestDistance = maxDistanceMeters
+        for (ring in 0..maxRing) {
+            for (r in row - ring..row + ring) {
+                if (r < 0 || r >= rows) {
+                    continue
+                }
+                val edgeRow = r == row - ring || r == row + ring
+                val step = if (edgeRow || ring == 0) 1 else 2 * ring
+                var c = col - ring
+                while (c <= col + ring) {
+                    if (c >= 0 && c < cols) {
+                        val cell = Arrays.binarySearch(cellKeys, getKey(r, c))
+                        if (cell >= 0) {
+                            for (j in cellStarts[cell]..cellStarts[cell + 1] - 1) {
+                                val index = cellStops[j]
+                                val stop = stops[index]
+                                val distance = distance(stop.getLat(), stop.getLon(), lat, lng,
+                                        cosLat)
+                                if (distance <= nearestDistance
+                                        && (nearest < 0 || distance < nearestDistance
+                                        || index < nearest)) {
+                                    nearest = index
+                                    nearestDistance = distance
+                                }
+                            }
+                        }
+                    }
+                    c += step
+                }
+            }
+
+            // stops in the next ring are at least this far from the location
+            if (nearest >= 0 && nearestDistance <= ring * cellSizeMeters) {
+                break
+            }
+        }
+        return nearest
+    }
+
+    private fun getDistanceAlongRoute(stop: TransitStop, polyline: Polyline, begin: Int,
+            end: Int): Double {
+        if (begin < 0) {
+            return 0.0
+        }
+        if (!hasLocation(stop)) {
+            return polyline.getDistanceFromStart(begin)
+        }
+
+        val cosLat = Math.cos(toRadians(stop.getLat()))
+        var closest = begin
+        var closestDistance = Double.MAX_VALUE
+        for (i in begin..end) {
+            val distance = distance(polyline.getLatitude(i), polyline.getLongitude(i),
+                    stop.getLat(), stop.getLon(), cosLat)
+            if (distance < closestDistance) {
+                closest = i
+                closestDistance = distance
+            }
+        }
+        return polyline.getDistanceFromStart(closest)
+    }
+
+    private fun distance(lat1: Double, lng1: Double, lat2: Double, lng2: Double,
+            cosLat: Double): Double {
+        val x = (lng1 - lng2) * cosLat
+        val y = lat1 - lat2
+        return Math.sqrt(x * x + y * y) * SegmentIndex.METERS_PER_DEGREE
+    }
+
+    private fun hasLocation(stop: TransitStop): Boolean {
+        return !stop.getLat().isNaN() && !stop.getLon().isNaN()
+    }
+
+    private fun getRow(lat: Double): Int {
+        return Math.floor((lat - minLat) / cellLat).toInt()
+    }
+
+    private fun getCol(lng: Double): Int {
+        return Math.floor((lng - minLng) / cellLng).toInt()
+    }
+
+    private fun getKey(row: Int, col: Int): Long {
+        return row.toLong() * cols + col
+    }
+}
@@ -5,14 +5,14 @@ import retrofit2.Callback
 import retrofit2.Response
 import java.net.MalformedURLException
 import java.util.ArrayList
-import java.util.Locale
 
 open class ValhallaRouter : Router {
 
-    private var language: String? = null
+    private var language: Router.Language? = null
     private var type = Router.Type.DRIVING
     private val locations = ArrayList<JSON.Location>()
     private var maxDifficulty = 1
+    private var alternates = 0
     private var callback: RouteCallback? = null
     private var units: Router.DistanceUnits = Router.DistanceUnits.KILOMETERS
 
@@ -24,7 +24,7 @@ open class ValhallaRouter : Router {
     }
 
     override fun setLanguage(language: Router.Language): Router {
-        this.language = language.toString()
+        this.language = language
         return this
     }
 
@@ -79,6 +79,19 @@ open class ValhallaRouter : Router {
         return this
     }
 
+    /*
+     * Requests up to the given number of alternative routes along with the best route. They are
+     * available from Route.getAlternates() and let RouteEngine recover from leaving the route
+     * without fetching a new one. Zero, the default, requests none.
+     */
+    fun setAlternates(count: Int): ValhallaRouter {
+        if (count < 0) {
+            throw IllegalArgumentException("Alternates count must not be negative")
+        }
+        this.alternates = count
+        return this
+    }
+
     override fun clearLocations(): Router {
         this.locations.clear()
         return this
@@ -107,29 +120,63 @@ open class ValhallaRouter : Router {
         })
     }
 
-    override fun getJSONRequest(): JSON {
+    /*
+     * Requests a route which is parsed while the response is streamed, without holding the full
+     * response text or a JSONObject for it. The resulting route's raw route is null. If no valid
+     * response is received the callback's failure is called with a status code of -1.
+     */
+    fun fetchParsed(): Call<Route>? {
+        return httpHandler?.requestParsedRoute(getJSONRequest(), object: Callback<Route> {
+            override fun onResponse(call: Call<Route>?, response: Response<Route>?) {
+                if (response != null) {
+                    if (response.isSuccessful && response.body() != null) {
+                        response.body()?.let { callback?.success(it) }
+                    } else {
+                        callback?.failure(response.raw().code())
+                    }
+                }
+            }
+
+            override fun onFailure(call: Call<Route>?, t: Throwable?) {
+                callback?.failure(-1)
+            }
+        })
+    }
+
+    /*
+     * Requests a parsed route without using the router's callback. The request is built when this
+     * is called, so the router can be changed and used for other requests straight away. Throws
+     * IllegalStateException if no HttpHandler has been set.
+     */
+    fun fetchAsync(): RouteFuture {
+        val handler = httpHandler ?: throw IllegalStateException("Http handler is null")
+        return handler.requestRoute(getRequest())
+    }
+
+    /*
+     * Returns an immutable snapshot of the request the router would send, which can be shared
+     * between threads and submitted with HttpHandler.requestRoute(RouteRequest).
+     */
+    fun getRequest(): RouteRequest {
         if (locations.size < 2) {
             throw  MalformedURLException()
         }
-        var json = JSON()
-        for (i in 0..(locations.size-1)){
-            json.locations.add(locations[i])
-        }
-
-        if (language == null) {
-            language = getDefaultLanguage()
+        val builder = RouteRequest.Builder()
+                .setType(type)
+                .setDistanceUnits(units)
+                .setMaxHikingDifficulty(maxDifficulty)
+                .setAlternates(alternates)
+        for (location in locations) {
+            builder.addLocation(location)
         }
+        return builder.setLanguage(language).build()
+    }
 
-        json.costing = this.type.toString()
-        json.directionsOptions.language = language
-        json.directionsOptions.units = this.units.toString()
-        json.costingOptions.maxHikingDifficulty = this.maxDifficulty.toString()
-        return json
+    override fun getJSONRequest(): JSON {
+        return getRequest().toJSON()
     }
 
     fun getDefaultLanguage(): String? {
-        val locale = Locale.getDefault().language + "-" + Locale.getDefault().country
-        return if (Router.Language.values().any { it.toString() == locale }) locale
-            else Locale.getDefault().language
+        return RouteRequest.getDefaultLanguage()
     }
 }
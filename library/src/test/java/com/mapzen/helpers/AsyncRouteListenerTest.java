@@ -0,0 +1,231 @@
+package com.mapzen.helpers;
+
+import com.mapzen.model.ValhallaLocation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.mapzen.helpers.RouteEngineTest.getTestLocation;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AsyncRouteListenerTest {
+    private RecordingListener listener;
+    private QueueExecutor executor;
+    private AsyncRouteListener asyncListener;
+
+    @Before
+    public void setUp() throws Exception {
+        listener = new RecordingListener();
+        executor = new QueueExecutor();
+        asyncListener = new AsyncRouteListener(listener, executor, 2);
+    }
+
+    @Test
+    public void shouldNotDeliverInline() throws Exception {
+        asyncListener.onRouteStart();
+        assertThat(listener.events).isEmpty();
+        assertThat(asyncListener.getPendingEventCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDeliverAllEventsInOrder() throws Exception {
+        asyncListener.onRouteStart();
+        asyncListener.onSnapLocation(getTestLocation(1, 2), getTestLocation(3, 4));
+        asyncListener.onUpdateDistance(100, 1000);
+        asyncListener.onMilestoneReached(1, RouteEngine.Milestone.QUARTER_MILE);
+        asyncListener.onApproachInstruction(1);
+        asyncListener.onInstructionComplete(1);
+        asyncListener.onRecalculate(getTestLocation(5, 6));
+        asyncListener.onRouteComplete();
+        executor.runAll();
+        assertThat(listener.events).containsExactly("start", "snap 1.0 3.0", "distance 100 1000",
+                "milestone 1 QUARTER_MILE", "approach 1", "instruction 1", "recalculate 5.0",
+                "complete");
+        assertThat(asyncListener.getPendingEventCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldUseSingleConsumer() throws Exception {
+        asyncListener.onRouteStart();
+        asyncListener.onApproachInstruction(1);
+        asyncListener.onInstructionComplete(1);
+        assertThat(executor.tasks).hasSize(1);
+        executor.runAll();
+        asyncListener.onRouteComplete();
+        assertThat(executor.tasks).hasSize(1);
+    }
+
+    @Test
+    public void shouldDropOldestUpdates() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            asyncListener.onUpdateDistance(i, i);
+        }
+        executor.runAll();
+        assertThat(listener.events).containsExactly("distance 3 3", "distance 4 4");
+        assertThat(asyncListener.getDroppedUpdateCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNeverDropInstructionOrCompletionEvents() throws Exception {
+        asyncListener.onUpdateDistance(0, 0);
+        asyncListener.onInstructionComplete(0);
+        asyncListener.onSnapLocation(getTestLocation(1, 1), getTestLocation(1, 1));
+        asyncListener.onInstructionComplete(1);
+        asyncListener.onUpdateDistance(1, 1);
+        asyncListener.onInstructionComplete(2);
+        asyncListener.onSnapLocation(getTestLocation(2, 2), getTestLocation(2, 2));
+        asyncListener.onUpdateDistance(2, 2);
+        asyncListener.onSnapLocation(getTestLocation(3, 3), getTestLocation(3, 3));
+        asyncListener.onRouteComplete();
+        executor.runAll();
+        assertThat(listener.events).containsExactly("instruction 0", "instruction 1",
+                "distance 1 1", "instruction 2", "snap 2.0 2.0", "distance 2 2", "snap 3.0 3.0",
+                "complete");
+        assertThat(asyncListener.getDroppedUpdateCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldKeepLatestUpdateOfEachKind() throws Exception {
+        asyncListener.onUpdateDistance(1, 1);
+        for (int i = 0; i < 5; i++) {
+            asyncListener.onSnapLocation(getTestLocation(i, i), getTestLocation(i, i));
+        }
+        executor.runAll();
+        assertThat(listener.events).containsExactly("distance 1 1", "snap 3.0 3.0",
+                "snap 4.0 4.0");
+        assertThat(asyncListener.getDroppedUpdateCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldCopyLocations() throws Exception {
+        ValhallaLocation location = getTestLocation(1, 2);
+        asyncListener.onSnapLocation(location, location);
+        location.setLatitude(10);
+        executor.runAll();
+        assertThat(listener.events).containsExactly("snap 1.0 1.0");
+    }
+
+    @Test
+    public void shouldKeepDeliveringAfterListenerThrows() throws Exception {
+        listener.failOn = "approach 1";
+        asyncListener.onApproachInstruction(1);
+        asyncListener.onInstructionComplete(1);
+        try {
+            executor.runNext();
+            fail("Expected listener exception");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("approach 1");
+        }
+        executor.runAll();
+        assertThat(listener.events).containsExactly("approach 1", "instruction 1");
+    }
+
+    @Test
+    public void shouldRetryAfterExecutorRejects() throws Exception {
+        executor.rejecting = true;
+        asyncListener.onApproachInstruction(1);
+        assertThat(executor.tasks).isEmpty();
+        executor.rejecting = false;
+        asyncListener.onInstructionComplete(1);
+        executor.runAll();
+        assertThat(listener.events).containsExactly("approach 1", "instruction 1");
+    }
+
+    @Test
+    public void shouldDeliverOnOwnThread() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final Thread[] thread = new Thread[1];
+        AsyncRouteListener threaded = new AsyncRouteListener(new RecordingListener() {
+            @Override public void onRouteComplete() {
+                thread[0] = Thread.currentThread();
+                delivered.countDown();
+            }
+        });
+        threaded.onRouteComplete();
+        assertThat(delivered.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(thread[0]).isNotSameAs(Thread.currentThread());
+        assertThat(thread[0].isDaemon()).isTrue();
+        threaded.shutdown();
+    }
+
+    /**
+     * Runs tasks only when asked to, so tests control when events are delivered. Rejects tasks
+     * while {@link #rejecting} is set.
+     */
+    private static class QueueExecutor implements Executor {
+        private final LinkedList<Runnable> tasks = new LinkedList<>();
+        private boolean rejecting;
+
+        @Override public void execute(Runnable runnable) {
+            if (rejecting) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(runnable);
+        }
+
+        void runNext() {
+            tasks.removeFirst().run();
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+
+    private static class RecordingListener implements RouteListener {
+        private final List<String> events = new ArrayList<>();
+        private String failOn;
+
+        private void add(String event) {
+            events.add(event);
+            if (event.equals(failOn)) {
+                throw new IllegalStateException(event);
+            }
+        }
+
+        @Override public void onRouteStart() {
+            add("start");
+        }
+
+        @Override public void onRecalculate(ValhallaLocation location) {
+            add("recalculate " + location.getLatitude());
+        }
+
+        @Override public void onSnapLocation(ValhallaLocation originalLocation,
+                ValhallaLocation snapLocation) {
+            add("snap " + originalLocation.getLatitude() + " " + snapLocation.getLatitude());
+        }
+
+        @Override public void onMilestoneReached(int index, RouteEngine.Milestone milestone) {
+            add("milestone " + index + " " + milestone);
+        }
+
+        @Override public void onApproachInstruction(int index) {
+            add("approach " + index);
+        }
+
+        @Override public void onInstructionComplete(int index) {
+            add("instruction " + index);
+        }
+
+        @Override public void onUpdateDistance(int distanceToNextInstruction,
+                int distanceToDestination) {
+            add("distance " + distanceToNextInstruction + " " + distanceToDestination);
+        }
+
+        @Override public void onRouteComplete() {
+            add("complete");
+        }
+    }
+}
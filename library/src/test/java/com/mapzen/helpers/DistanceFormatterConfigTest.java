@@ -4,7 +4,17 @@ import com.mapzen.valhalla.Router;
 
 import org.junit.Test;
 
+import java.io.StringWriter;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static com.mapzen.helpers.DistanceFormatter.format;
 import static org.fest.assertions.api.Assertions.assertThat;
@@ -37,4 +47,119 @@ public class DistanceFormatterConfigTest {
         Locale.setDefault(Locale.US);
         assertThat(format(1000, false, Router.DistanceUnits.KILOMETERS)).isEqualTo("1 km");
     }
+
+    @Test
+    public void getInstance_shouldReturnCachedFormatter() throws Exception {
+        assertThat(DistanceFormatter.getInstance(Locale.GERMANY))
+                .isSameAs(DistanceFormatter.getInstance(Locale.GERMANY));
+        assertThat(DistanceFormatter.getInstance(Locale.GERMANY).getLocale())
+                .isEqualTo(Locale.GERMANY);
+    }
+
+    @Test
+    public void formatDistance_shouldUseFormatterLocale() throws Exception {
+        Locale.setDefault(Locale.US);
+        DistanceFormatter formatter = DistanceFormatter.getInstance(Locale.GERMANY);
+        assertThat(formatter.formatDistance(1500, false)).isEqualTo("1,5 km");
+        assertThat(formatter.formatDistance(1000, false, Router.DistanceUnits.MILES))
+                .isEqualTo("0,6 mi");
+        assertThat(DistanceFormatter.getInstance(Locale.UK).formatDistance(20, false))
+                .isEqualTo("60 ft");
+    }
+
+    @Test
+    public void formatDistance_shouldBeThreadSafe() throws Exception {
+        final DistanceFormatter german = DistanceFormatter.getInstance(Locale.GERMANY);
+        final DistanceFormatter american = DistanceFormatter.getInstance(Locale.US);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override public Boolean call() throws Exception {
+                    boolean matched = true;
+                    for (int distance = 100; distance < 5000; distance++) {
+                        matched &= german.formatDistance(distance, true).equals(
+                                format(distance, true, Locale.GERMANY));
+                        matched &= american.formatDistance(distance, true).equals(
+                                format(distance, true, Locale.US));
+                    }
+                    return matched;
+                }
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isTrue();
+        }
+        executor.shutdown();
+        assertThat(german.formatDistance(1234, false)).isEqualTo("1,2 km");
+        assertThat(american.formatDistance(1609, false)).isEqualTo("1 mi");
+    }
+
+    @Test
+    public void formatDistance_shouldAppendToBuilder() throws Exception {
+        DistanceFormatter formatter = DistanceFormatter.getInstance(Locale.GERMANY);
+        StringBuilder builder = new StringBuilder("In ");
+        assertThat(formatter.formatDistance(1500, false, Router.DistanceUnits.KILOMETERS, builder))
+                .isSameAs(builder);
+        assertThat(builder.toString()).isEqualTo("In 1,5 km");
+
+        StringWriter writer = new StringWriter();
+        formatter.formatDistance(20, false, Router.DistanceUnits.MILES, (Appendable) writer);
+        assertThat(writer.toString()).isEqualTo("60 ft");
+    }
+
+    @Test
+    public void formatDistance_shouldReuseCachedLabel() throws Exception {
+        DistanceFormatter formatter = DistanceFormatter.getInstance(Locale.US);
+        assertThat(formatter.formatDistance(4321, true, Router.DistanceUnits.KILOMETERS))
+                .isSameAs(formatter.formatDistance(4290, true, Router.DistanceUnits.KILOMETERS));
+        assertThat(formatter.formatDistance(4321, true, Router.DistanceUnits.MILES))
+                .isSameAs(formatter.formatDistance(4330, true, Router.DistanceUnits.MILES));
+    }
+
+    @Test
+    public void formatDistance_shouldMatchUncachedFormat() throws Exception {
+        Locale.setDefault(Locale.US);
+        for (Locale locale : new Locale[] { Locale.US, Locale.GERMANY, Locale.FRANCE }) {
+            DistanceFormatter formatter = DistanceFormatter.getInstance(locale);
+            for (int distance = -20; distance < 30000; distance++) {
+                for (Router.DistanceUnits units : Router.DistanceUnits.values()) {
+                    assertThat(formatter.formatDistance(distance, true, units))
+                            .isEqualTo(formatUncached(distance, true, locale, units));
+                    assertThat(formatter.formatDistance(distance, false, units))
+                            .isEqualTo(formatUncached(distance, false, locale, units));
+                }
+            }
+        }
+    }
+
+    /**
+     * Formats a distance the way the formatter did before labels were cached.
+     */
+    private static String formatUncached(int distanceInMeters, boolean realTime, Locale locale,
+            Router.DistanceUnits units) {
+        DecimalFormat decimalFormat = (DecimalFormat) NumberFormat.getNumberInstance(locale);
+        decimalFormat.applyPattern("#.#");
+        if (distanceInMeters == 0) {
+            return "";
+        }
+
+        if (units == Router.DistanceUnits.MILES) {
+            double distanceInFeet = distanceInMeters / DistanceFormatter.METERS_IN_ONE_FOOT;
+            if (distanceInFeet < 10) {
+                return realTime ? "now" : (int) Math.floor(distanceInFeet) + " ft";
+            } else if (distanceInFeet < DistanceFormatter.FEET_IN_ONE_MILE / 10) {
+                return (int) Math.floor(distanceInFeet / 10) * 10 + " ft";
+            }
+            return decimalFormat.format(distanceInMeters / DistanceFormatter.METERS_IN_ONE_MILE)
+                    + " mi";
+        }
+
+        if (distanceInMeters >= 100) {
+            return decimalFormat.format((float) distanceInMeters / 1000) + " km";
+        } else if (distanceInMeters > 10 || !realTime) {
+            return distanceInMeters + " m";
+        }
+        return "now";
+    }
 }
@@ -0,0 +1,315 @@
+package com.mapzen.helpers;
+
+import com.mapzen.model.ValhallaLocation;
+import com.mapzen.valhalla.Instruction;
+import com.mapzen.valhalla.Route;
+import com.mapzen.valhalla.RouteTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class RouteEngineHostTest {
+    private Route route;
+    private ArrayList<Instruction> instructions;
+    private RouteEngineHost host;
+
+    @Before
+    public void setUp() throws Exception {
+        route = RouteTest.getRoute("ace_hotel_valhalla");
+        instructions = route.getRouteInstructions();
+        host = new RouteEngineHost(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        host.shutdown();
+    }
+
+    @Test
+    public void startSession_shouldNotifyOnRouteStart() throws Exception {
+        RecordingListener listener = new RecordingListener("start", 1);
+        host.startSession("car", route, listener);
+        listener.await();
+        assertThat(listener.events).containsExactly("start");
+        assertThat(host.getSessionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void startSession_shouldNotNavigateSharedRoute() throws Exception {
+        RecordingListener listener = new RecordingListener("snap", 1);
+        host.startSession("car", route, listener);
+        host.onLocationChanged("car", instructions.get(1).getLocation());
+        listener.await();
+        assertThat(host.getRoute("car")).isNotSameAs(route);
+        assertThat(host.getRoute("car").getPolyline()).isSameAs(route.getPolyline());
+        assertThat(route.getCurrentLeg()).isEqualTo(0);
+        assertThat(host.getRoute("car").getCurrentLeg()).isGreaterThan(0);
+    }
+
+    @Test
+    public void onLocationChanged_shouldReturnFalseWithoutSession() throws Exception {
+        assertThat(host.onLocationChanged("car", instructions.get(0).getLocation())).isFalse();
+    }
+
+    @Test
+    public void onLocationChanged_shouldHandleUpdatesInOrder() throws Exception {
+        RecordingListener listener = new RecordingListener("distance", 50);
+        host.startSession("car", route, listener);
+        for (int i = 0; i < 50; i++) {
+            assertThat(host.onLocationChanged("car", instructions.get(0).getLocation())).isTrue();
+        }
+        listener.await();
+        assertThat(listener.events.get(0)).isEqualTo("start");
+        assertThat(listener.events.get(1)).isEqualTo("snap");
+        int snaps = 0;
+        for (int i = 1; i < listener.events.size(); i++) {
+            if (listener.events.get(i).equals("snap")) {
+                assertThat(listener.events.get(i + 1)).startsWith("distance");
+                snaps++;
+            }
+        }
+        assertThat(snaps).isEqualTo(50);
+    }
+
+    @Test
+    public void onLocationChanged_shouldKeepSessionsSeparate() throws Exception {
+        RecordingListener moving = new RecordingListener("distance", 1);
+        RecordingListener waiting = new RecordingListener("distance", 1);
+        host.startSession("moving", route, moving);
+        host.startSession("waiting", route, waiting);
+        host.onLocationChanged("moving", instructions.get(1).getLocation());
+        host.onLocationChanged("waiting", instructions.get(0).getLocation());
+        moving.await();
+        waiting.await();
+        assertThat(host.getRoute("moving").getCurrentLeg()).isGreaterThan(0);
+        assertThat(host.getRoute("waiting").getCurrentLeg()).isEqualTo(0);
+        assertThat(moving.events.get(2)).isNotEqualTo(waiting.events.get(2));
+        assertThat(moving.events.get(2)).startsWith("distance");
+    }
+
+    @Test
+    public void onLocationChanged_shouldDropOldestUpdatesWhenBehind() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        host = new RouteEngineHost(executor, 2);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        RecordingListener listener = new RecordingListener("distance", 2);
+        host.startSession("car", route, listener);
+        for (int i = 0; i < 5; i++) {
+            host.onLocationChanged("car", instructions.get(0).getLocation());
+        }
+        assertThat(host.getDroppedUpdateCount()).isEqualTo(3);
+        blocked.countDown();
+        listener.await();
+        host.shutdown();
+        assertThat(host.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(listener.count("snap")).isEqualTo(2);
+    }
+
+    @Test
+    public void onLocationChanged_shouldContinueAfterListenerThrows() throws Exception {
+        RecordingListener listener = new RecordingListener("snap", 1) {
+            private boolean thrown;
+
+            @Override public void onSnapLocation(ValhallaLocation originalLocation,
+                    ValhallaLocation snapLocation) {
+                if (!thrown) {
+                    thrown = true;
+                    throw new IllegalStateException("listener failed");
+                }
+                super.onSnapLocation(originalLocation, snapLocation);
+            }
+        };
+        host = new RouteEngineHost(new InlineExecutor(), 4);
+        host.startSession("car", route, listener);
+        try {
+            host.onLocationChanged("car", instructions.get(0).getLocation());
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("listener failed");
+        }
+        host.onLocationChanged("car", instructions.get(0).getLocation());
+        listener.await();
+    }
+
+    @Test
+    public void onLocationChanged_shouldRetryAfterExecutorRejects() throws Exception {
+        InlineExecutor executor = new InlineExecutor();
+        host = new RouteEngineHost(executor, 4);
+        RecordingListener listener = new RecordingListener("snap", 1);
+        executor.rejecting = true;
+        host.startSession("car", route, listener);
+        host.onLocationChanged("car", instructions.get(0).getLocation());
+        executor.rejecting = false;
+        host.onLocationChanged("car", instructions.get(0).getLocation());
+        listener.await();
+        assertThat(listener.events.get(0)).isEqualTo("start");
+    }
+
+    @Test
+    public void endSession_shouldStopHandlingUpdates() throws Exception {
+        RecordingListener listener = new RecordingListener("start", 1);
+        host.startSession("car", route, listener);
+        listener.await();
+        host.endSession("car");
+        assertThat(host.getSessionCount()).isEqualTo(0);
+        assertThat(host.getRoute("car")).isNull();
+        assertThat(host.onLocationChanged("car", instructions.get(0).getLocation())).isFalse();
+    }
+
+    @Test
+    public void shouldNavigateManySessionsConcurrently() throws Exception {
+        int vehicles = 100;
+        List<RecordingListener> listeners = new ArrayList<>();
+        host = new RouteEngineHost(Executors.newFixedThreadPool(4), instructions.size());
+        for (int i = 0; i < vehicles; i++) {
+            RecordingListener listener = new RecordingListener("complete", 1);
+            listeners.add(listener);
+            host.startSession("vehicle" + i, route, listener);
+        }
+        for (Instruction instruction : instructions) {
+            for (int i = 0; i < vehicles; i++) {
+                host.onLocationChanged("vehicle" + i, instruction.getLocation());
+            }
+        }
+        for (RecordingListener listener : listeners) {
+            listener.await();
+        }
+        host.shutdown();
+        assertThat(host.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        for (RecordingListener listener : listeners) {
+            assertThat(listener.events).isEqualTo(listeners.get(0).events);
+        }
+        assertThat(host.getDroppedUpdateCount()).isEqualTo(0);
+    }
+
+    /**
+     * Runs tasks on the calling thread, or rejects them while {@link #rejecting} is set.
+     */
+    private static class InlineExecutor extends AbstractExecutorService {
+        private volatile boolean rejecting;
+        private volatile boolean shutdown;
+
+        @Override public void execute(Runnable command) {
+            if (rejecting || shutdown) {
+                throw new RejectedExecutionException();
+            }
+            command.run();
+        }
+
+        @Override public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return new ArrayList<>();
+        }
+
+        @Override public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+
+    /**
+     * Records events in the order they were received. Events are only read after awaiting the
+     * given number of events starting with a prefix.
+     */
+    private static class RecordingListener implements RouteListener {
+        private final List<String> events = new ArrayList<>();
+        private final String awaited;
+        private final CountDownLatch done;
+
+        RecordingListener(String awaited, int count) {
+            this.awaited = awaited;
+            done = new CountDownLatch(count);
+        }
+
+        void await() throws InterruptedException {
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        synchronized int count(String event) {
+            int count = 0;
+            for (String e : events) {
+                if (e.equals(event)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private synchronized void add(String event) {
+            events.add(event);
+            if (event.startsWith(awaited)) {
+                done.countDown();
+            }
+        }
+
+        @Override public void onRouteStart() {
+            add("start");
+        }
+
+        @Override public void onRecalculate(ValhallaLocation location) {
+            add("recalculate");
+        }
+
+        @Override public void onSnapLocation(ValhallaLocation originalLocation,
+                ValhallaLocation snapLocation) {
+            add("snap");
+        }
+
+        @Override public void onMilestoneReached(int index, RouteEngine.Milestone milestone) {
+            add("milestone " + index + " " + milestone);
+        }
+
+        @Override public void onApproachInstruction(int index) {
+            add("approach " + index);
+        }
+
+        @Override public void onInstructionComplete(int index) {
+            add("instruction " + index);
+        }
+
+        @Override public void onUpdateDistance(int distanceToNextInstruction,
+                int distanceToDestination) {
+            add("distance " + distanceToNextInstruction + " " + distanceToDestination);
+        }
+
+        @Override public void onRouteComplete() {
+            add("complete");
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.mapzen.helpers;
 
+import com.mapzen.model.HybridDistanceStrategy;
 import com.mapzen.model.ValhallaLocation;
 import com.mapzen.valhalla.Instruction;
 import com.mapzen.valhalla.Route;
@@ -14,6 +15,11 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static com.mapzen.helpers.DistanceFormatter.METERS_IN_ONE_MILE;
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -48,6 +54,15 @@ public class RouteEngineTest {
         assertThat(listener.started).isTrue();
     }
 
+    @Test
+    public void setDistanceStrategy_shouldApplyToRoute() throws Exception {
+        routeEngine.setDistanceStrategy(HybridDistanceStrategy.INSTANCE);
+        assertThat(route.getDistanceStrategy()).isSameAs(HybridDistanceStrategy.INSTANCE);
+        Route nextRoute = RouteTest.getRoute("ace_hotel_valhalla");
+        routeEngine.setRoute(nextRoute);
+        assertThat(nextRoute.getDistanceStrategy()).isSameAs(HybridDistanceStrategy.INSTANCE);
+    }
+
     @Test
     public void onRecalculate_shouldNotifyWhenLost() throws Exception {
         routeEngine.onLocationChanged(route.getRouteInstructions().get(0).getLocation());
@@ -220,6 +235,156 @@ public class RouteEngineTest {
         assertThat(listener.milestoneIndex).isEqualTo(-1);
     }
 
+    @Test
+    public void onLocationsChanged_shouldMatchSequentialUpdates() throws Exception {
+        List<ValhallaLocation> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(route.getRouteInstructions().get(i).getLocation());
+        }
+        routeEngine.onLocationsChanged(batch);
+
+        Route sequentialRoute = RouteTest.getRoute("ace_hotel_valhalla");
+        TestRouteListener sequentialListener = new TestRouteListener();
+        RouteEngine sequentialEngine = new RouteEngine();
+        sequentialEngine.setListener(sequentialListener);
+        sequentialEngine.setRoute(sequentialRoute);
+        for (int i = 0; i < 3; i++) {
+            sequentialEngine.onLocationChanged(
+                    sequentialRoute.getRouteInstructions().get(i).getLocation());
+        }
+
+        assertThat(route.getCurrentLeg()).isEqualTo(sequentialRoute.getCurrentLeg());
+        assertThat(listener.distanceToNextInstruction)
+                .isEqualTo(sequentialListener.distanceToNextInstruction);
+        assertThat(listener.distanceToDestination)
+                .isEqualTo(sequentialListener.distanceToDestination);
+        assertThat(listener.completeIndices).isEqualTo(sequentialListener.completeIndices);
+        assertThat(listener.snapLocation)
+                .isEqualsToByComparingFields(sequentialListener.snapLocation);
+    }
+
+    @Test
+    public void onLocationsChanged_shouldNotifySnapAndDistanceOnce() throws Exception {
+        ValhallaLocation location = getTestLocation(40.743810, -73.989053); // 26th & Broadway
+        routeEngine.onLocationsChanged(Arrays.asList(
+                route.getRouteInstructions().get(0).getLocation(), location));
+        assertThat(listener.snapCount).isEqualTo(1);
+        assertThat(listener.updateDistanceCount).isEqualTo(1);
+        assertThat(listener.originalLocation).isSameAs(location);
+        assertThat(listener.distanceToNextInstruction)
+                .isEqualTo(route.getDistanceToNextInstruction());
+    }
+
+    @Test
+    public void onLocationsChanged_shouldIgnoreEmptyBatch() throws Exception {
+        routeEngine.onLocationsChanged(Collections.<ValhallaLocation>emptyList());
+        assertThat(listener.updateDistanceCount).isEqualTo(0);
+    }
+
+    @Test
+    public void onLocationsChanged_shouldStopWhenLost() throws Exception {
+        routeEngine.onLocationsChanged(Arrays.asList(
+                route.getRouteInstructions().get(0).getLocation(),
+                getTestLocation(0, 0),
+                getTestLocation(0, 0)));
+        assertThat(listener.recalculateCount).isEqualTo(1);
+        assertThat(listener.snapCount).isEqualTo(1);
+        assertThat(listener.updateDistanceCount).isEqualTo(1);
+    }
+
+    @Test
+    public void onLocationsChanged_shouldStopAtDestination() throws Exception {
+        List<ValhallaLocation> batch = new ArrayList<>();
+        for (int i = 1; i < 4; i++) {
+            batch.add(route.getRouteInstructions().get(i).getLocation());
+        }
+        batch.add(route.getRouteInstructions().get(3).getLocation());
+        routeEngine.onLocationsChanged(batch);
+        assertThat(listener.routeComplete).isTrue();
+        assertThat(listener.distanceToNextInstruction).isEqualTo(0);
+        assertThat(listener.distanceToDestination).isEqualTo(0);
+        assertThat(listener.updateDistanceCount).isEqualTo(1);
+
+        listener.routeComplete = false;
+        routeEngine.onLocationsChanged(batch);
+        assertThat(listener.routeComplete).isFalse();
+        assertThat(listener.updateDistanceCount).isEqualTo(1);
+    }
+
+    @Test
+    public void onLocationsChanged_shouldReportLastMilestoneOnce() throws Exception {
+        final double[] distances = { METERS_IN_ONE_MILE * 2, METERS_IN_ONE_MILE,
+                METERS_IN_ONE_MILE };
+        TestRoute route = new TestRoute() {
+            private int fix;
+
+            @Nullable @Override public ValhallaLocation snapToRoute(@NotNull
+            ValhallaLocation originalPoint) {
+                setDistanceToNextInstruction(distances[fix++]);
+                return super.snapToRoute(originalPoint);
+            }
+        };
+        routeEngine.setRoute(route);
+        routeEngine.onLocationsChanged(Arrays.asList(getTestLocation(), getTestLocation(),
+                getTestLocation()));
+        assertThat(listener.milestoneCount).isEqualTo(1);
+        assertThat(listener.milestoneIndex).isEqualTo(1);
+        assertThat(listener.milestone).isEqualTo(RouteEngine.Milestone.ONE_MILE);
+    }
+
+    @Test
+    public void onLocationsChanged_shouldDropMilestoneOfApproachedInstruction() throws Exception {
+        final double[] distances = { METERS_IN_ONE_MILE / 4, RouteEngine.ALERT_RADIUS - 1 };
+        TestRoute route = new TestRoute() {
+            private int fix;
+
+            @Nullable @Override public ValhallaLocation snapToRoute(@NotNull
+            ValhallaLocation originalPoint) {
+                setDistanceToNextInstruction(distances[fix++]);
+                return super.snapToRoute(originalPoint);
+            }
+        };
+        routeEngine.setRoute(route);
+        routeEngine.onLocationsChanged(Arrays.asList(getTestLocation(), getTestLocation()));
+        assertThat(listener.milestoneCount).isEqualTo(0);
+        assertThat(listener.approachIndex).isEqualTo(1);
+    }
+
+    @Test
+    public void onLocationChanged_shouldSwitchToNearbyAlternateWhenLost() throws Exception {
+        Route alternate = RouteTest.getRoute("brooklyn_valhalla");
+        routeEngine.addAlternateRoute(alternate);
+        routeEngine.onLocationChanged(route.getRouteInstructions().get(0).getLocation());
+        listener.started = false;
+        ValhallaLocation location = alternate.getRouteInstructions().get(2).getLocation();
+        routeEngine.onLocationChanged(location);
+        assertThat(listener.recalculating).isFalse();
+        assertThat(listener.started).isTrue();
+        assertThat(routeEngine.getRoute().getPolyline()).isSameAs(alternate.getPolyline());
+        assertThat(routeEngine.getRoute().getCurrentLeg()).isGreaterThan(0);
+        assertThat(listener.originalLocation).isEqualsToByComparingFields(location);
+        assertThat(routeEngine.getAlternateRoutes()).containsExactly(route);
+        assertThat(alternate.getCurrentLeg()).isEqualTo(0);
+    }
+
+    @Test
+    public void onLocationChanged_shouldRecalculateIfNoAlternateIsNearby() throws Exception {
+        routeEngine.addAlternateRoute(RouteTest.getRoute("brooklyn_valhalla"));
+        routeEngine.onLocationChanged(route.getRouteInstructions().get(0).getLocation());
+        routeEngine.onLocationChanged(getTestLocation(0, 0));
+        assertThat(listener.recalculating).isTrue();
+        assertThat(routeEngine.getRoute()).isSameAs(route);
+        assertThat(routeEngine.getAlternateRoutes()).hasSize(1);
+    }
+
+    @Test
+    public void setRoute_shouldUseAlternatesFromRoute() throws Exception {
+        Route route = new Route(RouteTest.getRouteWithAlternates("ace_hotel_valhalla",
+                "brooklyn_valhalla"));
+        routeEngine.setRoute(route);
+        assertThat(routeEngine.getAlternateRoutes()).isEqualTo(route.getAlternates());
+    }
+
     private static class TestRoute extends Route {
         private double distanceToNextInstruction = 0;
 
@@ -227,6 +392,10 @@ public class RouteEngineTest {
             super(new JSONObject());
         }
 
+        void setDistanceToNextInstruction(double distanceToNextInstruction) {
+            this.distanceToNextInstruction = distanceToNextInstruction;
+        }
+
         @Nullable @Override public ValhallaLocation snapToRoute(@NotNull
         ValhallaLocation originalPoint) {
             return getTestLocation();
@@ -266,6 +435,11 @@ public class RouteEngineTest {
         private int distanceToDestination = -1;
         private boolean routeComplete = false;
         private RouteEngine.Milestone milestone;
+        private int snapCount = 0;
+        private int recalculateCount = 0;
+        private int milestoneCount = 0;
+        private int updateDistanceCount = 0;
+        private List<Integer> completeIndices = new ArrayList<>();
 
         @Override
         public void onRouteStart() {
@@ -275,18 +449,21 @@ public class RouteEngineTest {
         @Override
         public void onRecalculate(ValhallaLocation location) {
             recalculating = true;
+            recalculateCount++;
         }
 
         @Override
         public void onSnapLocation(ValhallaLocation originalLocation, ValhallaLocation snapLocation) {
             this.originalLocation = originalLocation;
             this.snapLocation = snapLocation;
+            snapCount++;
         }
 
         @Override
         public void onMilestoneReached(int index, RouteEngine.Milestone milestone) {
             milestoneIndex = index;
             this.milestone = milestone;
+            milestoneCount++;
         }
 
         @Override
@@ -297,12 +474,14 @@ public class RouteEngineTest {
         @Override
         public void onInstructionComplete(int index) {
             completeIndex = index;
+            completeIndices.add(index);
         }
 
         @Override
         public void onUpdateDistance(int distanceToNextInstruction, int distanceToDestination) {
             this.distanceToNextInstruction = distanceToNextInstruction;
             this.distanceToDestination = distanceToDestination;
+            updateDistanceCount++;
         }
 
         @Override
@@ -0,0 +1,80 @@
+package com.mapzen.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class DistanceStrategyTest {
+
+  @Test
+  public void vincenty_shouldMatchLocation() {
+    ValhallaLocation start = getLocation(40.660709, -73.989327);
+    ValhallaLocation end = getLocation(40.671773, -73.981115);
+    assertThat(start.distanceTo(end, VincentyDistanceStrategy.INSTANCE))
+        .isEqualTo(start.distanceTo(end));
+    assertThat(start.bearingTo(end, VincentyDistanceStrategy.INSTANCE))
+        .isEqualTo(start.bearingTo(end));
+  }
+
+  @Test
+  public void equirectangular_shouldStayWithinDocumentedErrorOfVincenty() {
+    Random random = new Random(1);
+    for (int i = 0; i < 10000; i++) {
+      double lat1 = random.nextDouble() * 140 - 70;
+      double lon1 = random.nextDouble() * 360 - 180;
+      double span = random.nextDouble() * 10000;
+      double heading = random.nextDouble() * 2 * Math.PI;
+      double lat2 = lat1 + Math.cos(heading) * span / 111000;
+      double lon2 = lon1 + Math.sin(heading) * span / (111000 * Math.cos(Math.toRadians(lat1)));
+
+      float expected = VincentyDistanceStrategy.INSTANCE.distanceBetween(lat1, lon1, lat2, lon2);
+      float actual = EquirectangularDistanceStrategy.INSTANCE.distanceBetween(
+          lat1, lon1, lat2, lon2);
+      assertThat((double) Math.abs(actual - expected))
+          .isLessThanOrEqualTo(Math.max(0.05, expected * 0.0005));
+
+      if (expected > 1) {
+        float expectedBearing = VincentyDistanceStrategy.INSTANCE.bearingBetween(
+            lat1, lon1, lat2, lon2);
+        float actualBearing = EquirectangularDistanceStrategy.INSTANCE.bearingBetween(
+            lat1, lon1, lat2, lon2);
+        double delta = Math.abs(actualBearing - expectedBearing);
+        assertThat(Math.min(delta, 360 - delta)).isLessThanOrEqualTo(0.01);
+      }
+    }
+  }
+
+  @Test
+  public void equirectangular_shouldWrapAroundAntimeridian() {
+    float distance = EquirectangularDistanceStrategy.INSTANCE.distanceBetween(
+        0, 179.9995, 0, -179.9995);
+    assertThat(distance).isLessThan(200);
+  }
+
+  @Test
+  public void hybrid_shouldUseVincentyForLongSpans() {
+    ValhallaLocation newYork = getLocation(40.7128, -74.0060);
+    ValhallaLocation sanFrancisco = getLocation(37.7749, -122.4194);
+    assertThat(newYork.distanceTo(sanFrancisco, HybridDistanceStrategy.INSTANCE))
+        .isEqualTo(newYork.distanceTo(sanFrancisco));
+    assertThat(newYork.bearingTo(sanFrancisco, HybridDistanceStrategy.INSTANCE))
+        .isEqualTo(newYork.bearingTo(sanFrancisco));
+  }
+
+  @Test
+  public void hybrid_shouldUseEquirectangularForShortSpans() {
+    ValhallaLocation start = getLocation(40.660709, -73.989327);
+    ValhallaLocation end = getLocation(40.659816, -73.987839);
+    assertThat(start.distanceTo(end, HybridDistanceStrategy.INSTANCE))
+        .isEqualTo(start.distanceTo(end, EquirectangularDistanceStrategy.INSTANCE));
+  }
+
+  private ValhallaLocation getLocation(double lat, double lon) {
+    ValhallaLocation location = new ValhallaLocation();
+    location.setLatitude(lat);
+    location.setLongitude(lon);
+    return location;
+  }
+}
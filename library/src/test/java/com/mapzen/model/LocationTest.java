@@ -3,6 +3,8 @@ package com.mapzen.model;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.fest.assertions.api.Assertions.assertThat;
 
 public class LocationTest {
@@ -74,4 +76,78 @@ public class LocationTest {
     assertThat(bearingTo).isEqualTo(-14.266873f);
   }
 
+  @Test
+  public void distanceBetween_shouldReturnDistanceAndBearings() {
+    float[] results = new float[3];
+    ValhallaLocation.distanceBetween(37.5, -74.0, 40.5, -75.0, results);
+    assertThat(results[0]).isEqualTo(344120.63f);
+    assertThat(results[1]).isEqualTo(-14.266873f);
+    assertThat(results[2]).isNotEqualTo(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void distanceBetween_shouldRejectEmptyResults() {
+    ValhallaLocation.distanceBetween(37.5, -74.0, 40.5, -75.0, new float[0]);
+  }
+
+  @Test
+  public void distanceTo_shouldNotMixUpAlternatingDestinations() {
+    ValhallaLocation start = getLocation(37.5, -74.0);
+    ValhallaLocation first = getLocation(40.5, -75.0);
+    ValhallaLocation second = getLocation(37.6, -74.1);
+    float[] expectedFirst = new float[2];
+    float[] expectedSecond = new float[2];
+    ValhallaLocation.distanceBetween(37.5, -74.0, 40.5, -75.0, expectedFirst);
+    ValhallaLocation.distanceBetween(37.5, -74.0, 37.6, -74.1, expectedSecond);
+    for (int i = 0; i < 3; i++) {
+      assertThat(start.distanceTo(first)).isEqualTo(expectedFirst[0]);
+      assertThat(start.bearingTo(second)).isEqualTo(expectedSecond[1]);
+      assertThat(start.distanceTo(second)).isEqualTo(expectedSecond[0]);
+      assertThat(start.bearingTo(first)).isEqualTo(expectedFirst[1]);
+    }
+  }
+
+  @Test
+  public void distanceTo_shouldBeConsistentAcrossThreads() throws Exception {
+    final ValhallaLocation start = getLocation(37.5, -74.0);
+    final ValhallaLocation[] destinations = new ValhallaLocation[512];
+    final float[] expected = new float[destinations.length * 2];
+    float[] results = new float[2];
+    for (int i = 0; i < destinations.length; i++) {
+      destinations[i] = getLocation(37.5 + i * 0.001, -74.0 + i * 0.002);
+      ValhallaLocation.distanceBetween(37.5, -74.0, destinations[i].getLatitude(),
+          destinations[i].getLongitude(), results);
+      expected[i * 2] = results[0];
+      expected[i * 2 + 1] = results[1];
+    }
+
+    final AtomicInteger mismatches = new AtomicInteger();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int offset = t;
+      threads[t] = new Thread(new Runnable() {
+        @Override public void run() {
+          for (int n = 0; n < 20000; n++) {
+            int i = (n * 7 + offset) % destinations.length;
+            if (start.distanceTo(destinations[i]) != expected[i * 2]
+                || start.bearingTo(destinations[i]) != expected[i * 2 + 1]) {
+              mismatches.incrementAndGet();
+            }
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(mismatches.get()).isEqualTo(0);
+  }
+
+  private ValhallaLocation getLocation(double lat, double lon) {
+    ValhallaLocation l = new ValhallaLocation();
+    l.setLatitude(lat);
+    l.setLongitude(lon);
+    return l;
+  }
 }
@@ -1,16 +1,27 @@
 package com.mapzen.valhalla;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.mockito.internal.util.reflection.Whitebox;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.mapzen.TestUtils.getRouteFixture;
 import okhttp3.logging.HttpLoggingInterceptor;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.GzipSource;
+import okio.Okio;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
 import static org.fest.assertions.api.Assertions.assertThat;
 
 public class HttpHandlerTest {
@@ -49,4 +60,163 @@ public class HttpHandlerTest {
     router.fetch();
     assertThat(httpHandler.headersAdded).isTrue();
   }
+
+  @Test public void shouldAnswerRepeatedRequestsFromRouteCache() throws IOException {
+    final MockWebServer server = new MockWebServer();
+    server.start();
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    final HttpHandler httpHandler =
+        new HttpHandler(server.url("").toString(), HttpLoggingInterceptor.Level.NONE);
+    final RouteCache cache = new RouteCache();
+    httpHandler.setRouteCache(cache);
+    final JSON request = new ValhallaRouter()
+        .setLocation(new double[] { 40.659241, -73.983776 })
+        .setLocation(new double[] { 40.671773, -73.981115 })
+        .getJSONRequest();
+
+    final Response<String> network = httpHandler.service.getRoute(request).execute();
+    final Response<Route> cached = httpHandler.service.getParsedRoute(request).execute();
+    assertThat(network.body()).isEqualTo(getRouteFixture("brooklyn_valhalla"));
+    assertThat(network.headers().get(HttpHandler.HEADER_ROUTE_CACHE)).isNull();
+    assertThat(cached.headers().get(HttpHandler.HEADER_ROUTE_CACHE)).isEqualTo("hit");
+    assertThat(cached.body().getTotalDistance()).isEqualTo(1541);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    server.shutdown();
+  }
+
+  @Test public void shouldDefaultToGetRequests() {
+    assertThat(httpHandler.getRequestMethod()).isEqualTo(HttpHandler.RequestMethod.GET);
+  }
+
+  @Test public void shouldPostRequestBody() throws Exception {
+    final MockWebServer server = new MockWebServer();
+    server.start();
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    final HttpHandler httpHandler =
+        new HttpHandler(server.url("").toString(), HttpLoggingInterceptor.Level.NONE);
+    httpHandler.setRequestMethod(HttpHandler.RequestMethod.POST);
+    final JSON request = getRequest();
+
+    final RecordingCallback callback = new RecordingCallback();
+    httpHandler.requestRoute(request, callback);
+    final RecordedRequest recorded = server.takeRequest(5, TimeUnit.SECONDS);
+    assertThat(recorded.getMethod()).isEqualTo("POST");
+    assertThat(recorded.getPath()).isEqualTo("/route");
+    assertThat(recorded.getHeader("Content-Type")).startsWith("application/json");
+    assertThat(recorded.getHeader("Content-Encoding")).isNull();
+    assertThat(recorded.getBody().readUtf8()).isEqualTo(getGson().toJson(request));
+    callback.await();
+    assertThat(callback.body).isEqualTo(getRouteFixture("brooklyn_valhalla"));
+    server.shutdown();
+  }
+
+  @Test public void shouldGzipPostedRequestBody() throws Exception {
+    final MockWebServer server = new MockWebServer();
+    server.start();
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    final HttpHandler httpHandler =
+        new HttpHandler(server.url("").toString(), HttpLoggingInterceptor.Level.NONE);
+    httpHandler.setRequestMethod(HttpHandler.RequestMethod.POST_GZIP);
+    final JSON request = getRequest();
+
+    final Response<Route> response = httpHandler.service.postParsedRoute(request, "gzip").execute();
+    final RecordedRequest recorded = server.takeRequest();
+    assertThat(recorded.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(recorded.getHeader("Accept-Encoding")).isEqualTo("gzip");
+    assertThat(Okio.buffer(new GzipSource(recorded.getBody())).readUtf8())
+        .isEqualTo(getGson().toJson(request));
+    assertThat(response.body().getTotalDistance()).isEqualTo(1541);
+    server.shutdown();
+  }
+
+  @Test public void shouldCachePostedRequests() throws Exception {
+    final MockWebServer server = new MockWebServer();
+    server.start();
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    final HttpHandler httpHandler =
+        new HttpHandler(server.url("").toString(), HttpLoggingInterceptor.Level.NONE);
+    httpHandler.setRouteCache(new RouteCache());
+    final JSON request = getRequest();
+
+    httpHandler.service.postRoute(request, "gzip").execute();
+    final Response<String> cached = httpHandler.service.postRoute(request, null).execute();
+    assertThat(cached.headers().get(HttpHandler.HEADER_ROUTE_CACHE)).isEqualTo("hit");
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    server.shutdown();
+  }
+
+  private static JSON getRequest() {
+    return new ValhallaRouter()
+        .setLocation(new double[] { 40.659241, -73.983776 })
+        .setLocation(new double[] { 40.671773, -73.981115 })
+        .getJSONRequest();
+  }
+
+  private static Gson getGson() {
+    return new GsonBuilder()
+        .registerTypeAdapter(JSON.Location.class, new LocationSerializer())
+        .create();
+  }
+
+  private static class RecordingCallback implements Callback<String> {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile String body;
+
+    void await() throws InterruptedException {
+      assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Override public void onResponse(Call<String> call, Response<String> response) {
+      body = response.body();
+      done.countDown();
+    }
+
+    @Override public void onFailure(Call<String> call, Throwable t) {
+      done.countDown();
+    }
+  }
+
+  @Test public void shouldNotCacheFailedRequests() throws IOException {
+    final MockWebServer server = new MockWebServer();
+    server.start();
+    server.enqueue(new MockResponse().setResponseCode(400));
+    server.enqueue(new MockResponse().setResponseCode(400));
+    final HttpHandler httpHandler =
+        new HttpHandler(server.url("").toString(), HttpLoggingInterceptor.Level.NONE);
+    httpHandler.setRouteCache(new RouteCache());
+    final JSON request = new ValhallaRouter()
+        .setLocation(new double[] { 40.659241, -73.983776 })
+        .setLocation(new double[] { 40.671773, -73.981115 })
+        .getJSONRequest();
+
+    httpHandler.service.getRoute(request).execute();
+    assertThat(httpHandler.service.getRoute(request).execute().isSuccessful()).isFalse();
+    assertThat(server.getRequestCount()).isEqualTo(2);
+    server.shutdown();
+  }
+
+  @Test public void shouldNotCacheRoutesWithErrorStatus() throws IOException {
+    final MockWebServer server = new MockWebServer();
+    server.start();
+    server.enqueue(new MockResponse()
+        .setBody("{\"trip\":{\"status\":429,\"status_message\":\"Too many requests\"}}"));
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    final HttpHandler httpHandler =
+        new HttpHandler(server.url("").toString(), HttpLoggingInterceptor.Level.NONE);
+    final RouteCache cache = new RouteCache();
+    httpHandler.setRouteCache(cache);
+    final JSON request = new ValhallaRouter()
+        .setLocation(new double[] { 40.659241, -73.983776 })
+        .setLocation(new double[] { 40.671773, -73.981115 })
+        .getJSONRequest();
+
+    httpHandler.service.getRoute(request).execute();
+    final Response<String> retried = httpHandler.service.getRoute(request).execute();
+    assertThat(retried.headers().get(HttpHandler.HEADER_ROUTE_CACHE)).isNull();
+    assertThat(retried.body()).isEqualTo(getRouteFixture("brooklyn_valhalla"));
+    assertThat(server.getRequestCount()).isEqualTo(2);
+    assertThat(cache.getHitCount()).isEqualTo(0);
+    server.shutdown();
+  }
 }
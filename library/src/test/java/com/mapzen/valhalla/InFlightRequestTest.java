@@ -0,0 +1,191 @@
+package com.mapzen.valhalla;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static com.mapzen.TestUtils.getRouteFixture;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class InFlightRequestTest {
+  private MockWebServer server;
+  private HttpHandler httpHandler;
+  private JSON request;
+
+  @Before public void setup() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    httpHandler = new HttpHandler(server.url("").toString(), HttpLoggingInterceptor.Level.NONE);
+    request = getRequest(40.659241);
+  }
+
+  @After public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test public void requestRoute_shouldShareIdenticalRequests() throws Exception {
+    enqueueSlowRoute();
+    final RecordingCallback<String> first = new RecordingCallback<>();
+    final RecordingCallback<String> second = new RecordingCallback<>();
+    final Call<String> firstCall = httpHandler.requestRoute(request, first);
+    final Call<String> secondCall = httpHandler.requestRoute(getRequest(40.659241), second);
+    first.await();
+    second.await();
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    assertThat(first.response.body()).isEqualTo(getRouteFixture("brooklyn_valhalla"));
+    assertThat(second.response.body()).isSameAs(first.response.body());
+    assertThat(first.call).isSameAs(firstCall);
+    assertThat(second.call).isSameAs(secondCall);
+  }
+
+  @Test public void requestRoute_shouldNotShareDifferentRequests() throws Exception {
+    enqueueSlowRoute();
+    enqueueSlowRoute();
+    final RecordingCallback<String> first = new RecordingCallback<>();
+    final RecordingCallback<String> second = new RecordingCallback<>();
+    httpHandler.requestRoute(request, first);
+    httpHandler.requestRoute(getRequest(40.7), second);
+    first.await();
+    second.await();
+    assertThat(server.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test public void requestRoute_shouldSendNewRequestOnceCompleted() throws Exception {
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    final RecordingCallback<String> first = new RecordingCallback<>();
+    httpHandler.requestRoute(request, first);
+    first.await();
+    final RecordingCallback<String> second = new RecordingCallback<>();
+    httpHandler.requestRoute(request, second);
+    second.await();
+    assertThat(server.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test public void requestParsedRoute_shouldGiveEachCallerOwnSession() throws Exception {
+    enqueueSlowRoute();
+    final RecordingCallback<Route> first = new RecordingCallback<>();
+    final RecordingCallback<Route> second = new RecordingCallback<>();
+    httpHandler.requestParsedRoute(request, first);
+    httpHandler.requestParsedRoute(request, second);
+    first.await();
+    second.await();
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    assertThat(second.response.body()).isNotSameAs(first.response.body());
+    assertThat(second.response.body().getPolyline())
+        .isSameAs(first.response.body().getPolyline());
+  }
+
+  @Test public void requestParsedRoute_shouldCopyBeforeCallingBack() throws Exception {
+    enqueueSlowRoute();
+    final RecordingCallback<Route> first = new RecordingCallback<Route>() {
+      @Override public void onResponse(Call<Route> call, Response<Route> response) {
+        response.body().setSnapLookAheadSegments(0);
+        super.onResponse(call, response);
+      }
+    };
+    final RecordingCallback<Route> second = new RecordingCallback<>();
+    httpHandler.requestParsedRoute(request, first);
+    httpHandler.requestParsedRoute(request, second);
+    first.await();
+    second.await();
+    assertThat(second.response.body().getSnapLookAheadSegments())
+        .isEqualTo(Route.DEFAULT_SNAP_LOOK_AHEAD_SEGMENTS);
+  }
+
+  @Test public void cancel_shouldOnlyCancelCaller() throws Exception {
+    enqueueSlowRoute();
+    final RecordingCallback<String> canceled = new RecordingCallback<>();
+    final RecordingCallback<String> waiting = new RecordingCallback<>();
+    final Call<String> call = httpHandler.requestRoute(request, canceled);
+    httpHandler.requestRoute(request, waiting);
+    call.cancel();
+    canceled.await();
+    waiting.await();
+    assertThat(call.isCanceled()).isTrue();
+    assertThat(canceled.failure).hasMessage("Canceled");
+    assertThat(canceled.response).isNull();
+    assertThat(waiting.response.body()).isEqualTo(getRouteFixture("brooklyn_valhalla"));
+  }
+
+  @Test public void cancel_shouldCancelRequestOnceAllCallersCancel() throws Exception {
+    enqueueSlowRoute();
+    enqueueSlowRoute();
+    final RecordingCallback<String> first = new RecordingCallback<>();
+    final RecordingCallback<String> second = new RecordingCallback<>();
+    httpHandler.requestRoute(request, first).cancel();
+    httpHandler.requestRoute(request, second).cancel();
+    first.await();
+    second.await();
+    assertThat(first.failure).isNotNull();
+    assertThat(second.failure).isNotNull();
+
+    final RecordingCallback<String> third = new RecordingCallback<>();
+    httpHandler.requestRoute(request, third);
+    third.await();
+    assertThat(third.response.body()).isEqualTo(getRouteFixture("brooklyn_valhalla"));
+  }
+
+  @Test public void requestRoute_shouldShareFailures() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(500)
+        .setBodyDelay(200, TimeUnit.MILLISECONDS));
+    final RecordingCallback<String> first = new RecordingCallback<>();
+    final RecordingCallback<String> second = new RecordingCallback<>();
+    httpHandler.requestRoute(request, first);
+    httpHandler.requestRoute(request, second);
+    first.await();
+    second.await();
+    assertThat(first.response.code()).isEqualTo(500);
+    assertThat(second.response.code()).isEqualTo(500);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  private void enqueueSlowRoute() {
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla"))
+        .setBodyDelay(200, TimeUnit.MILLISECONDS));
+  }
+
+  private static JSON getRequest(double lat) {
+    return new ValhallaRouter()
+        .setLocation(new double[] { lat, -73.983776 })
+        .setLocation(new double[] { 40.671773, -73.981115 })
+        .getJSONRequest();
+  }
+
+  private static class RecordingCallback<T> implements Callback<T> {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Call<T> call;
+    private volatile Response<T> response;
+    private volatile Throwable failure;
+
+    void await() throws InterruptedException {
+      assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Override public void onResponse(Call<T> call, Response<T> response) {
+      this.call = call;
+      this.response = response;
+      done.countDown();
+    }
+
+    @Override public void onFailure(Call<T> call, Throwable t) {
+      this.call = call;
+      failure = t;
+      done.countDown();
+    }
+  }
+}
@@ -136,6 +136,13 @@ public class InstructionTest {
         assertThat(instruction.getTransitInfo()).isNotNull();
     }
 
+    @Test
+    public void getTransitInfo_shouldReadTransitInfoOnce() {
+        assertThat(instruction.getTransitInfo()).isSameAs(instruction.getTransitInfo());
+        assertThat(instruction.getTransitInfo().getTransitStops())
+                .isSameAs(instruction.getTransitInfo().getTransitStops());
+    }
+
     @Test
     public void hasTransitInfoColorHex() {
         assertThat(instruction.getTransitInfoColorHex()).isEqualTo("#ff6319");
@@ -267,6 +274,45 @@ public class InstructionTest {
         assertThat(ins.getName()).isEqualTo("Main Street/PA 29");
     }
 
+    @Test
+    public void getBeginStreetNames_shouldJoinNames() throws Exception {
+        final JSONObject json = new JSONObject(getInstructionFixture("double_street_name"));
+        json.put("begin_street_names", json.getJSONArray("street_names"));
+        assertThat(new Instruction(json).getBeginStreetNames()).isEqualTo("Main Street/PA 29");
+        assertThat(instruction.getBeginStreetNames()).isEmpty();
+    }
+
+    @Test
+    public void getName_shouldInternStreetNames() throws Exception {
+        Instruction first = new Instruction(new JSONObject(JSON.toString()));
+        Instruction second = new Instruction(new JSONObject(JSON.toString()));
+        assertThat(first.getName()).isSameAs(second.getName());
+        first = new Instruction(new JSONObject(DOUBLE_STREET_NAME.toString()));
+        second = new Instruction(new JSONObject(DOUBLE_STREET_NAME.toString()));
+        assertThat(first.getName()).isSameAs(second.getName());
+    }
+
+    @Test
+    public void getters_shouldDefaultMissingValues() throws Exception {
+        final JSONObject json = new JSONObject(JSON.toString());
+        json.remove("travel_mode");
+        json.remove("travel_type");
+        json.put("a", 1);
+        json.put("b", 2);
+        Instruction instruction = new Instruction(json);
+        assertThat(instruction.getTravelMode()).isEqualTo(TravelMode.DRIVE);
+        assertThat(instruction.getTravelType()).isEqualTo(TravelType.CAR);
+        assertThat(instruction.getVerbalPreTransitionInstruction()).isEmpty();
+    }
+
+    @Test(expected = JSONException.class)
+    public void shouldRequireShapeIndices() throws Exception {
+        final JSONObject json = new JSONObject(JSON.toString());
+        json.remove("begin_shape_index");
+        json.put("a", 1);
+        new Instruction(json);
+    }
+
     @Test
     public void shouldBeEqual() throws Exception {
         Instruction instruction = new Instruction(JSON);
@@ -0,0 +1,122 @@
+package com.mapzen.valhalla;
+
+import com.mapzen.model.ValhallaLocation;
+
+import org.fest.assertions.data.Offset;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class PolylineTest {
+    private static final String BROOKLYN_SHAPE = "imvplA|k}blCxv@_|AcWwWcK~HgTbPqk@|hAoNvXerAxhC"
+            + "esAhhCab@gc@uS}T{K{Kag@ya@ud@m^ud@o^d~@eaC";
+
+    private Polyline polyline;
+
+    @Before
+    public void setup() throws Exception {
+        polyline = new Polyline(Arrays.asList(BROOKLYN_SHAPE));
+    }
+
+    @Test
+    public void shouldDecodeAllPoints() throws Exception {
+        assertThat(polyline.size()).isEqualTo(16);
+        assertThat(polyline.getLegCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDecodeCoordinates() throws Exception {
+        assertThat(polyline.getLatitude(0)).isEqualTo(40.660709);
+        assertThat(polyline.getLongitude(0)).isEqualTo(-73.989327);
+    }
+
+    @Test
+    public void shouldAccumulateLegDistances() throws Exception {
+        double total = 0;
+        for (int i = 0; i < polyline.size() - 1; i++) {
+            total += polyline.getLegDistance(i);
+            assertThat(polyline.getTotalDistance(i + 1)).isEqualTo(total, Offset.offset(0.001));
+        }
+        assertThat(polyline.getLegDistance(polyline.size() - 1)).isEqualTo(0);
+    }
+
+    @Test
+    public void getDistanceFromStart_shouldSumLegDistancesAcrossLegs() throws Exception {
+        polyline = new Polyline(Arrays.asList(BROOKLYN_SHAPE, "", BROOKLYN_SHAPE), true);
+        double total = 0;
+        for (int i = 0; i < polyline.size(); i++) {
+            assertThat(polyline.getDistanceFromStart(i)).isEqualTo(total, Offset.offset(0.001));
+            total += polyline.getLegDistance(i);
+        }
+        assertThat(polyline.getDistanceFromStart(16)).isEqualTo(polyline.getTotalDistance(15),
+                Offset.offset(0.001));
+    }
+
+    @Test
+    public void shouldStoreLegsBackToBack() throws Exception {
+        polyline = new Polyline(Arrays.asList(BROOKLYN_SHAPE, BROOKLYN_SHAPE));
+        assertThat(polyline.size()).isEqualTo(32);
+        assertThat(polyline.getLegCount()).isEqualTo(2);
+        assertThat(polyline.getLegStart(1)).isEqualTo(16);
+        assertThat(polyline.getLatitude(16)).isEqualTo(polyline.getLatitude(0));
+        assertThat(polyline.getTotalDistance(16)).isEqualTo(0);
+        assertThat(polyline.getLegDistance(15)).isEqualTo(0);
+    }
+
+    @Test
+    public void getNode_shouldMatchStoredValues() throws Exception {
+        Node node = polyline.getNode(3);
+        assertThat(node.getLat()).isEqualTo(polyline.getLatitude(3));
+        assertThat(node.getLng()).isEqualTo(polyline.getLongitude(3));
+        assertThat(node.getBearing()).isEqualTo(polyline.getBearing(3));
+        assertThat(node.getLegDistance()).isEqualTo(polyline.getLegDistance(3));
+        assertThat(node.getTotalDistance()).isEqualTo(polyline.getTotalDistance(3));
+    }
+
+    @Test
+    public void getLocation_shouldIncludeBearing() throws Exception {
+        ValhallaLocation location = polyline.getLocation(0);
+        assertThat(location.getLatitude()).isEqualTo(polyline.getLatitude(0));
+        assertThat(location.getLongitude()).isEqualTo(polyline.getLongitude(0));
+        assertThat((double) location.getBearing())
+                .isEqualTo(polyline.getBearing(0), Offset.offset(0.001));
+    }
+
+    @Test
+    public void lazyPolyline_shouldCountPointsWithoutDecoding() throws Exception {
+        polyline = new Polyline(Arrays.asList(BROOKLYN_SHAPE, BROOKLYN_SHAPE), true);
+        assertThat(polyline.size()).isEqualTo(32);
+        assertThat(polyline.isDecoded()).isFalse();
+    }
+
+    @Test
+    public void lazyPolyline_shouldDecodeOnlyAccessedLeg() throws Exception {
+        Polyline eager = new Polyline(Arrays.asList(BROOKLYN_SHAPE, BROOKLYN_SHAPE));
+        polyline = new Polyline(Arrays.asList(BROOKLYN_SHAPE, BROOKLYN_SHAPE), true);
+        assertThat(polyline.getLegDistance(20)).isEqualTo(eager.getLegDistance(20));
+        assertThat(polyline.isDecoded()).isFalse();
+        assertThat(polyline.getLatitude(3)).isEqualTo(eager.getLatitude(3));
+        assertThat(polyline.isDecoded()).isTrue();
+    }
+
+    @Test
+    public void getLegForIndex_shouldSkipEmptyLegs() throws Exception {
+        polyline = new Polyline(Arrays.asList(BROOKLYN_SHAPE, "", BROOKLYN_SHAPE), true);
+        assertThat(polyline.getLegForIndex(15)).isEqualTo(0);
+        assertThat(polyline.getLegForIndex(16)).isEqualTo(2);
+        polyline.getLatitude(0);
+        polyline.getLatitude(16);
+        assertThat(polyline.isDecoded()).isTrue();
+    }
+
+    @Test
+    public void shouldHandleEmptyShape() throws Exception {
+        polyline = new Polyline(new ArrayList<String>());
+        assertThat(polyline.size()).isEqualTo(0);
+        assertThat(polyline.getLegCount()).isEqualTo(0);
+    }
+}
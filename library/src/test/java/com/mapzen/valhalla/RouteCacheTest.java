@@ -0,0 +1,129 @@
+package com.mapzen.valhalla;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class RouteCacheTest {
+  private static final String REQUEST = "{\"locations\":[{\"lat\":40.6592412,\"lon\":-73.9837761},"
+      + "{\"lat\":40.671773,\"lon\":-73.981115}],\"costing\":\"auto\"}";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+  private TestRouteCache cache;
+
+  @Before public void setup() throws Exception {
+    directory = folder.newFolder("routes");
+    cache = new TestRouteCache(directory, 1024, 2, 1000, 5);
+  }
+
+  @Test public void getKey_shouldRoundCoordinates() {
+    assertThat(cache.getKey(REQUEST)).isEqualTo("{\"locations\":[{\"lat\":40.65924,"
+        + "\"lon\":-73.98378},{\"lat\":40.67177,\"lon\":-73.98112}],\"costing\":\"auto\"}");
+  }
+
+  @Test public void getKey_shouldMatchNearbyRequests() {
+    final String nearby = REQUEST.replace("40.6592412", "40.6592438");
+    assertThat(cache.getKey(nearby)).isEqualTo(cache.getKey(REQUEST));
+  }
+
+  @Test public void getKey_shouldNotMatchOtherCosting() {
+    final String walking = REQUEST.replace("auto", "pedestrian");
+    assertThat(cache.getKey(walking)).isNotEqualTo(cache.getKey(REQUEST));
+  }
+
+  @Test public void getKey_shouldKeepInvalidJson() {
+    assertThat(cache.getKey("not json {")).isEqualTo("not json {");
+  }
+
+  @Test public void get_shouldReturnNullIfMissing() {
+    assertThat(cache.get("key")).isNull();
+    assertThat(cache.getMissCount()).isEqualTo(1);
+  }
+
+  @Test public void get_shouldReturnCachedResponse() {
+    cache.put("key", "route");
+    assertThat(cache.get("key")).isEqualTo("route");
+    assertThat(cache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test public void get_shouldExpireAfterTimeToLive() {
+    cache.put("key", "route");
+    cache.now += 999;
+    assertThat(cache.get("key")).isEqualTo("route");
+    cache.now += 1;
+    assertThat(cache.get("key")).isNull();
+    assertThat(directory.list()).isEmpty();
+  }
+
+  @Test public void get_shouldReadFromDiskAfterEvictedFromMemory() {
+    cache.put("first", "one");
+    cache.put("second", "two");
+    cache.put("third", "three");
+    assertThat(cache.get("first")).isEqualTo("one");
+  }
+
+  @Test public void get_shouldReadResponsesWrittenByAnotherCache() {
+    cache.put("key", "route\nwith lines");
+    final TestRouteCache reopened = new TestRouteCache(directory, 1024, 2, 1000, 5);
+    assertThat(reopened.get("key")).isEqualTo("route\nwith lines");
+  }
+
+  @Test public void get_shouldKeepStoredTimeOnDisk() {
+    cache.put("key", "route");
+    final TestRouteCache reopened = new TestRouteCache(directory, 1024, 2, 1000, 5);
+    reopened.now = cache.now + 1000;
+    assertThat(reopened.get("key")).isNull();
+  }
+
+  @Test public void put_shouldEvictOldestFromDiskBeyondMaxSize() {
+    final String response = new String(new char[400]).replace('\0', 'x');
+    cache.put("first", response);
+    new File(directory, directory.list()[0]).setLastModified(0);
+    cache.put("second", response);
+    cache.put("third", response);
+    assertThat(directory.list()).hasSize(2);
+
+    final TestRouteCache reopened = new TestRouteCache(directory, 1024, 2, 1000, 5);
+    assertThat(reopened.get("first")).isNull();
+    assertThat(reopened.get("third")).isEqualTo(response);
+  }
+
+  @Test public void shouldKeepResponsesInMemoryOnly() {
+    final RouteCache memoryOnly = new RouteCache();
+    memoryOnly.put("key", "route");
+    assertThat(memoryOnly.get("key")).isEqualTo("route");
+    assertThat(directory.list()).isEmpty();
+  }
+
+  @Test public void clear_shouldRemoveAllResponses() {
+    cache.put("key", "route");
+    cache.clear();
+    assertThat(cache.get("key")).isNull();
+    assertThat(directory.list()).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectNegativeLimits() {
+    new RouteCache(directory, -1, 2, 1000, 5);
+  }
+
+  private static class TestRouteCache extends RouteCache {
+    long now = 1000;
+
+    TestRouteCache(File directory, long maxDiskBytes, int maxMemoryEntries,
+        long timeToLiveMillis, int coordinatePrecision) {
+      super(directory, maxDiskBytes, maxMemoryEntries, timeToLiveMillis, coordinatePrecision);
+    }
+
+    @Override long currentTimeMillis() {
+      return now;
+    }
+  }
+}
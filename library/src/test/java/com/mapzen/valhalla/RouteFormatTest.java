@@ -0,0 +1,167 @@
+package com.mapzen.valhalla;
+
+import com.mapzen.model.ValhallaLocation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import static com.mapzen.TestUtils.getRouteFixture;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class RouteFormatTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void read_shouldRestoreRoute() throws Exception {
+    final Route route = new Route(getRouteFixture("brooklyn_valhalla"));
+    final Route restored = writeAndRead(route);
+    assertThat(restored.foundRoute()).isTrue();
+    assertThat(restored.getStatus()).isEqualTo(route.getStatus());
+    assertThat(restored.getTotalDistance()).isEqualTo(1541);
+    assertThat(restored.getTotalTime()).isEqualTo(route.getTotalTime());
+    assertThat(restored.getUnits()).isEqualTo(route.getUnits());
+    assertThat(restored.getRouteInstructions()).hasSize(6);
+    for (int i = 0; i < route.getRouteInstructions().size(); i++) {
+      final Instruction expected = route.getRouteInstructions().get(i);
+      final Instruction actual = restored.getRouteInstructions().get(i);
+      assertThat(actual.getHumanTurnInstruction()).isEqualTo(expected.getHumanTurnInstruction());
+      assertThat(actual.getDistance()).isEqualTo(expected.getDistance());
+      assertThat(actual.getBearing()).isEqualTo(expected.getBearing());
+    }
+  }
+
+  @Test public void read_shouldRestoreShape() throws Exception {
+    final Route route = new Route(getRouteFixture("ace_hotel_valhalla"));
+    final Polyline expected = route.getPolyline();
+    final Polyline actual = writeAndRead(route).getPolyline();
+    assertThat(actual.isDecoded()).isTrue();
+    assertThat(actual.size()).isEqualTo(expected.size());
+    assertThat(actual.getLegCount()).isEqualTo(expected.getLegCount());
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(actual.getLatitude(i)).isEqualTo(expected.getLatitude(i));
+      assertThat(actual.getLongitude(i)).isEqualTo(expected.getLongitude(i));
+      assertThat(actual.getBearing(i)).isEqualTo(expected.getBearing(i));
+      assertThat(actual.getDistanceFromStart(i)).isEqualTo(expected.getDistanceFromStart(i));
+    }
+  }
+
+  @Test public void write_shouldDecodeLazyRoute() throws Exception {
+    final Route route = new Route(getRouteFixture("brooklyn_valhalla"), true);
+    final Route restored = writeAndRead(route);
+    assertThat(restored.getGeometry()).hasSize(new Route(getRouteFixture("brooklyn_valhalla"))
+        .getGeometry().size());
+    assertThat(restored.getRouteInstructions()).hasSize(6);
+  }
+
+  @Test public void read_shouldRestoreUnsuccessfulRoute() throws Exception {
+    final Route restored = writeAndRead(new Route(getRouteFixture("unsuccessful")));
+    assertThat(restored.foundRoute()).isFalse();
+    assertThat(restored.getRouteInstructions()).isNull();
+  }
+
+  @Test public void read_shouldNavigateLikeOriginal() throws Exception {
+    final Route route = new Route(getRouteFixture("brooklyn_valhalla"));
+    final Route restored = writeAndRead(new Route(getRouteFixture("brooklyn_valhalla")));
+    final ArrayList<ValhallaLocation> geometry = route.getGeometry();
+    for (int i = 0; i < geometry.size(); i += 2) {
+      final ValhallaLocation expected = route.snapToRoute(geometry.get(i));
+      final ValhallaLocation actual = restored.snapToRoute(geometry.get(i));
+      if (expected == null) {
+        assertThat(actual).isNull();
+      } else {
+        assertThat(actual.getLatitude()).isEqualTo(expected.getLatitude());
+        assertThat(actual.getLongitude()).isEqualTo(expected.getLongitude());
+      }
+      assertThat(restored.getCurrentInstruction().getHumanTurnInstruction())
+          .isEqualTo(route.getCurrentInstruction().getHumanTurnInstruction());
+      assertThat(restored.getRemainingDistanceToDestination())
+          .isEqualTo(route.getRemainingDistanceToDestination());
+    }
+  }
+
+  @Test public void write_shouldReplaceFile() throws Exception {
+    final File file = folder.newFile();
+    RouteFormat.write(new Route(getRouteFixture("brooklyn_valhalla")), file);
+    RouteFormat.write(new Route(getRouteFixture("ace_hotel_valhalla")), file);
+    assertThat(RouteFormat.read(file).getTotalDistance())
+        .isEqualTo(new Route(getRouteFixture("ace_hotel_valhalla")).getTotalDistance());
+    assertThat(folder.getRoot().list()).hasSize(1);
+  }
+
+  @Test(expected = IOException.class)
+  public void read_shouldRejectOtherFiles() throws Exception {
+    final File file = folder.newFile();
+    final RandomAccessFile output = new RandomAccessFile(file, "rw");
+    output.write(getRouteFixture("brooklyn_valhalla").getBytes("UTF-8"));
+    output.close();
+    RouteFormat.read(file);
+  }
+
+  @Test(expected = IOException.class)
+  public void read_shouldRejectUnsupportedVersion() throws Exception {
+    final File file = folder.newFile();
+    RouteFormat.write(new Route(getRouteFixture("brooklyn_valhalla")), file);
+    final RandomAccessFile output = new RandomAccessFile(file, "rw");
+    output.seek(4);
+    output.write(new byte[] { (byte) (RouteFormat.VERSION + 1), 0, 0, 0 });
+    output.close();
+    RouteFormat.read(file);
+  }
+
+  @Test(expected = IOException.class)
+  public void read_shouldRejectTruncatedFile() throws Exception {
+    final File file = folder.newFile();
+    RouteFormat.write(new Route(getRouteFixture("brooklyn_valhalla")), file);
+    final RandomAccessFile output = new RandomAccessFile(file, "rw");
+    output.setLength(output.length() - 8);
+    output.close();
+    RouteFormat.read(file);
+  }
+
+  @Test(expected = IOException.class)
+  public void read_shouldRejectUnknownUnits() throws Exception {
+    final File file = folder.newFile();
+    RouteFormat.write(new Route(getRouteFixture("brooklyn_valhalla")), file);
+    final RandomAccessFile output = new RandomAccessFile(file, "rw");
+    output.seek(output.length() - 1);
+    output.write('z');
+    output.close();
+    RouteFormat.read(file);
+  }
+
+  @Test(expected = IOException.class)
+  public void read_shouldRejectLegStartsNotFromFirstPoint() throws Exception {
+    final File file = folder.newFile();
+    RouteFormat.write(new Route(getRouteFixture("brooklyn_valhalla")), file);
+    final RandomAccessFile output = new RandomAccessFile(file, "rw");
+    output.seek(40);
+    output.write(new byte[] { 1, 0, 0, 0 });
+    output.close();
+    RouteFormat.read(file);
+  }
+
+  @Test(expected = IOException.class)
+  public void read_shouldRejectLegStartsPastLastPoint() throws Exception {
+    final File file = folder.newFile();
+    RouteFormat.write(new Route(getRouteFixture("brooklyn_valhalla")), file);
+    final RandomAccessFile output = new RandomAccessFile(file, "rw");
+    output.seek(44);
+    output.write(new byte[] { 0, 0, 0, 1 });
+    output.close();
+    RouteFormat.read(file);
+  }
+
+  private Route writeAndRead(Route route) throws IOException {
+    final File file = folder.newFile();
+    RouteFormat.write(route, file);
+    return RouteFormat.read(file);
+  }
+}
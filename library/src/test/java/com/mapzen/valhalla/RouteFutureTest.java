@@ -0,0 +1,191 @@
+package com.mapzen.valhalla;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static com.mapzen.TestUtils.getRouteFixture;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class RouteFutureTest {
+  private MockWebServer server;
+  private ValhallaRouter router;
+
+  @Before public void setup() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    router = new ValhallaRouter();
+    router.setHttpHandler(new HttpHandler(server.url("").toString(),
+            HttpLoggingInterceptor.Level.NONE))
+        .setLocation(new double[] { 40.659241, -73.983776 })
+        .setLocation(new double[] { 40.671773, -73.981115 });
+  }
+
+  @After public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test public void get_shouldReturnRoute() throws Exception {
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    final RouteFuture future = router.fetchAsync();
+    assertThat(future.get(5, TimeUnit.SECONDS).getTotalDistance()).isEqualTo(1541);
+    assertThat(future.isDone()).isTrue();
+    assertThat(future.getException()).isNull();
+  }
+
+  @Test public void get_shouldFailWithStatusCode() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(500));
+    final RouteException exception = getFailure(router.fetchAsync());
+    assertThat(exception.getKind()).isEqualTo(RouteException.Kind.HTTP);
+    assertThat(exception.getStatusCode()).isEqualTo(500);
+  }
+
+  @Test public void get_shouldFailIfNoRouteFound() throws Exception {
+    server.enqueue(new MockResponse().setBody(getRouteFixture("unsuccessful")));
+    final RouteException exception = getFailure(router.fetchAsync());
+    assertThat(exception.getKind()).isEqualTo(RouteException.Kind.NO_ROUTE);
+    assertThat(exception.getStatusCode()).isEqualTo(200);
+  }
+
+  @Test public void get_shouldFailIfResponseIsNotRoute() throws Exception {
+    server.enqueue(new MockResponse().setBody("[1, 2"));
+    assertThat(getFailure(router.fetchAsync()).getKind()).isEqualTo(RouteException.Kind.PARSE);
+  }
+
+  @Test public void get_shouldFailIfResponseIsMalformed() throws Exception {
+    server.enqueue(new MockResponse().setBody("{\"trip\": {\"status\": }"));
+    assertThat(getFailure(router.fetchAsync()).getKind()).isEqualTo(RouteException.Kind.PARSE);
+  }
+
+  @Test public void get_shouldFailIfServerUnreachable() throws Exception {
+    server.shutdown();
+    final RouteException exception = getFailure(router.fetchAsync());
+    assertThat(exception.getKind()).isEqualTo(RouteException.Kind.NETWORK);
+    assertThat(exception.getStatusCode()).isEqualTo(RouteException.NO_STATUS_CODE);
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void get_shouldTimeOut() throws Exception {
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla"))
+        .setBodyDelay(1, TimeUnit.SECONDS));
+    router.fetchAsync().get(10, TimeUnit.MILLISECONDS);
+  }
+
+  @Test public void cancel_shouldFailWithCancellation() throws Exception {
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla"))
+        .setBodyDelay(1, TimeUnit.SECONDS));
+    final RouteFuture future = router.fetchAsync();
+    final RecordingListener listener = new RecordingListener();
+    future.addListener(listener);
+    assertThat(future.cancel(true)).isTrue();
+    assertThat(future.cancel(true)).isFalse();
+    assertThat(future.isCancelled()).isTrue();
+    assertThat(listener.exception.getKind()).isEqualTo(RouteException.Kind.CANCELED);
+    try {
+      future.get();
+      fail("Expected cancellation");
+    } catch (CancellationException e) {
+      assertThat(e.getCause()).isSameAs(future.getException());
+    }
+  }
+
+  @Test public void addListener_shouldNotifyOnExecutor() throws Exception {
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    final RecordingListener listener = new RecordingListener();
+    final CountingExecutor executor = new CountingExecutor();
+    router.fetchAsync().addListener(listener, executor);
+    listener.await();
+    assertThat(listener.route.getTotalDistance()).isEqualTo(1541);
+    assertThat(executor.count).isEqualTo(1);
+  }
+
+  @Test public void addListener_shouldNotifyImmediatelyIfDone() throws Exception {
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    final RouteFuture future = router.fetchAsync();
+    future.get(5, TimeUnit.SECONDS);
+    final RecordingListener listener = new RecordingListener();
+    future.addListener(listener);
+    assertThat(listener.route).isSameAs(future.get());
+  }
+
+  @Test public void fetchAsync_shouldSnapshotRequest() throws Exception {
+    server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla"))
+        .setBodyDelay(100, TimeUnit.MILLISECONDS));
+    server.enqueue(new MockResponse().setBody(getRouteFixture("ace_hotel_valhalla"))
+        .setBodyDelay(100, TimeUnit.MILLISECONDS));
+    final RouteFuture first = router.fetchAsync();
+    router.clearLocations()
+        .setLocation(new double[] { 40.7, -73.9 })
+        .setLocation(new double[] { 40.8, -73.9 });
+    final RouteFuture second = router.fetchAsync();
+    assertThat(first.get(5, TimeUnit.SECONDS)).isNotNull();
+    assertThat(second.get(5, TimeUnit.SECONDS)).isNotNull();
+    assertThat(server.getRequestCount()).isEqualTo(2);
+    final String paths = server.takeRequest().getPath() + server.takeRequest().getPath();
+    assertThat(paths).contains("40.659241").contains("40.7");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fetchAsync_shouldRequireHttpHandler() throws Exception {
+    final ValhallaRouter router = new ValhallaRouter();
+    router.setLocation(new double[] { 40.659241, -73.983776 })
+        .setLocation(new double[] { 40.671773, -73.981115 });
+    router.fetchAsync();
+  }
+
+  private static RouteException getFailure(RouteFuture future) throws Exception {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isSameAs(future.getException());
+      return (RouteException) e.getCause();
+    }
+    fail("Expected route request to fail");
+    return null;
+  }
+
+  private static class CountingExecutor implements Executor {
+    private volatile int count;
+
+    @Override public void execute(Runnable runnable) {
+      count++;
+      runnable.run();
+    }
+  }
+
+  private static class RecordingListener implements RouteFuture.Listener {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Route route;
+    private volatile RouteException exception;
+
+    void await() throws InterruptedException {
+      assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Override public void onSuccess(Route route) {
+      this.route = route;
+      done.countDown();
+    }
+
+    @Override public void onFailure(RouteException exception) {
+      this.exception = exception;
+      done.countDown();
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.mapzen.valhalla;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static com.mapzen.TestUtils.getRouteFixture;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class RouteParserTest {
+    private RouteParser parser = new RouteParser();
+
+    @Test
+    public void shouldMatchJsonObjectRoute() throws Exception {
+        String[] fixtures = { "brooklyn_valhalla", "ace_hotel_valhalla", "valhalla_miles",
+                "greenpoint_around_the_block_valhalla", "missing_roads_valhalla" };
+        for (String fixture : fixtures) {
+            Route expected = RouteTest.getRoute(fixture);
+            Route parsed = parse(fixture);
+            assertThat(parsed.getStatus()).isEqualTo(expected.getStatus());
+            assertThat(parsed.getUnits()).isEqualTo(expected.getUnits());
+            assertThat(parsed.getTotalDistance()).isEqualTo(expected.getTotalDistance());
+            assertThat(parsed.getTotalTime()).isEqualTo(expected.getTotalTime());
+            assertThat(parsed.getGeometry()).hasSize(expected.getGeometry().size());
+
+            ArrayList<Instruction> parsedInstructions = parsed.getRouteInstructions();
+            ArrayList<Instruction> expectedInstructions = expected.getRouteInstructions();
+            assertThat(parsedInstructions).isEqualTo(expectedInstructions);
+            for (int i = 0; i < expectedInstructions.size(); i++) {
+                assertThat(parsedInstructions.get(i).getName())
+                        .isEqualTo(expectedInstructions.get(i).getName());
+                assertThat(parsedInstructions.get(i).getDistance())
+                        .isEqualTo(expectedInstructions.get(i).getDistance());
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotKeepRawRoute() throws Exception {
+        assertThat(parse("brooklyn_valhalla").getRawRoute()).isNull();
+    }
+
+    @Test
+    public void shouldParseUnsuccessfulRoute() throws Exception {
+        Route route = parse("unsuccessful");
+        assertThat(route.getStatus()).isEqualTo(-1);
+        assertThat(route.foundRoute()).isFalse();
+        assertThat(route.getRouteInstructions()).isNull();
+    }
+
+    @Test
+    public void shouldParseLazily() throws Exception {
+        Route route = new RouteParser(true).parse(
+                new StringReader(getRouteFixture("brooklyn_valhalla")));
+        assertThat(route.getTotalDistance()).isEqualTo(1541);
+        assertThat(route.getPolyline().isDecoded()).isFalse();
+        assertThat(route.getRouteInstructions()).hasSize(6);
+    }
+
+    @Test
+    public void shouldParseAlternates() throws Exception {
+        Route route = parser.parse(new StringReader(RouteTest.getRouteWithAlternates(
+                "ace_hotel_valhalla", "brooklyn_valhalla").toString()));
+        Route expected = RouteTest.getRoute("brooklyn_valhalla");
+        assertThat(route.getTotalDistance()).isEqualTo(
+                RouteTest.getRoute("ace_hotel_valhalla").getTotalDistance());
+        assertThat(route.getAlternates()).hasSize(1);
+        assertThat(route.getAlternates().get(0).getTotalDistance())
+                .isEqualTo(expected.getTotalDistance());
+        assertThat(route.getAlternates().get(0).getPolyline().isDecoded()).isFalse();
+        assertThat(route.getAlternates().get(0).getAlternates()).isEmpty();
+    }
+
+    @Test
+    public void shouldOnlyReadManeuversOfFirstLeg() throws Exception {
+        JSONObject json = new JSONObject(getRouteFixture("brooklyn_valhalla"));
+        JSONArray legs = json.getJSONObject("trip").getJSONArray("legs");
+        legs.put(new JSONObject(legs.getJSONObject(0).toString()));
+        legs.getJSONObject(0).remove("maneuvers");
+        Route route = parser.parse(new StringReader(json.toString()));
+        assertThat(route.getPolyline().getLegCount()).isEqualTo(2);
+        assertThat(route.getRouteInstructions()).isEmpty();
+    }
+
+    @Test
+    public void shouldNotHaveAlternatesByDefault() throws Exception {
+        assertThat(parse("brooklyn_valhalla").getAlternates()).isEmpty();
+    }
+
+    private Route parse(String fixture) throws Exception {
+        return parser.parse(new StringReader(getRouteFixture(fixture)));
+    }
+}
@@ -0,0 +1,153 @@
+package com.mapzen.valhalla;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static com.mapzen.TestUtils.getRouteFixture;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class RouteRequestTest {
+  private static final double[] START = new double[] { 40.659241, -73.983776 };
+  private static final double[] END = new double[] { 40.671773, -73.981115 };
+
+  private Locale defaultLocale;
+  private RouteRequest.Builder builder;
+
+  @Before public void setup() {
+    defaultLocale = Locale.getDefault();
+    Locale.setDefault(Locale.US);
+    builder = new RouteRequest.Builder().setLocation(START).setLocation(END);
+  }
+
+  @After public void tearDown() {
+    Locale.setDefault(defaultLocale);
+  }
+
+  @Test public void toJSON_shouldMatchRouter() {
+    final RouteRequest request = builder
+        .setType(Router.Type.WALKING)
+        .setLanguage(Router.Language.DE_DE)
+        .setDistanceUnits(Router.DistanceUnits.MILES)
+        .setMaxHikingDifficulty(3)
+        .setAlternates(2)
+        .build();
+    final JSON expected = new ValhallaRouter()
+        .setAlternates(2)
+        .setWalking()
+        .setLanguage(Router.Language.DE_DE)
+        .setDistanceUnits(Router.DistanceUnits.MILES)
+        .setMaxHikingDifficulty(3)
+        .setLocation(START)
+        .setLocation(END)
+        .getJSONRequest();
+    final JSON json = request.toJSON();
+    assertThat(json.costing).isEqualTo(expected.costing).isEqualTo("pedestrian");
+    assertThat(json.directionsOptions.language).isEqualTo(expected.directionsOptions.language);
+    assertThat(json.directionsOptions.units).isEqualTo(expected.directionsOptions.units);
+    assertThat(json.costingOptions.maxHikingDifficulty)
+        .isEqualTo(expected.costingOptions.maxHikingDifficulty);
+    assertThat(json.alternates).isEqualTo(2);
+    assertThat(json.locations).hasSize(2);
+    assertThat(json.locations.get(1).lat).isEqualTo(END[0]);
+  }
+
+  @Test public void build_shouldResolveDefaultLanguage() {
+    final RouteRequest request = builder.build();
+    Locale.setDefault(Locale.FRANCE);
+    assertThat(request.getLanguage()).isEqualTo("en-US");
+    assertThat(builder.build().getLanguage()).isEqualTo("fr-FR");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void build_shouldRequireTwoLocations() {
+    new RouteRequest.Builder().setLocation(START).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setAlternates_shouldRejectNegativeCount() {
+    builder.setAlternates(-1);
+  }
+
+  @Test public void shouldNotChangeWhenBuilderChanges() {
+    final RouteRequest request = builder.build();
+    builder.setLocation(START).setType(Router.Type.BIKING);
+    assertThat(request.getLocationCount()).isEqualTo(2);
+    assertThat(request.getType()).isEqualTo(Router.Type.DRIVING);
+  }
+
+  @Test public void shouldNotChangeWhenCopiesChange() {
+    final RouteRequest request = builder.build();
+    request.toJSON().locations.get(0).lat = 0;
+    request.getLocation(0).lat = 0;
+    assertThat(request.getLocation(0).lat).isEqualTo(START[0]);
+    assertThat(request.toJSON().locations.get(0).lat).isEqualTo(START[0]);
+  }
+
+  @Test public void equals_shouldCompareValues() {
+    final RouteRequest request = builder.build();
+    final RouteRequest same = new RouteRequest.Builder().setLocation(START).setLocation(END)
+        .build();
+    assertThat(request).isEqualTo(same);
+    assertThat(request.hashCode()).isEqualTo(same.hashCode());
+    assertThat(request).isNotEqualTo(builder.setType(Router.Type.BIKING).build());
+    assertThat(request).isNotEqualTo(new RouteRequest.Builder().setLocation(START)
+        .setLocation(END, "Acme", null, null, null).build());
+    assertThat(request).isNotEqualTo(new RouteRequest.Builder().setLocation(START, 90)
+        .setLocation(END).build());
+  }
+
+  @Test public void newBuilder_shouldCopyRequest() {
+    final RouteRequest request = builder.setType(Router.Type.BIKING).build();
+    assertThat(request.newBuilder().build()).isEqualTo(request);
+    assertThat(request.newBuilder().setAlternates(1).build().getType())
+        .isEqualTo(Router.Type.BIKING);
+  }
+
+  @Test public void shouldBeSubmittedConcurrently() throws Exception {
+    final MockWebServer server = new MockWebServer();
+    server.start();
+    final int requests = 8;
+    for (int i = 0; i < requests; i++) {
+      server.enqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+    }
+    final HttpHandler httpHandler =
+        new HttpHandler(server.url("").toString(), HttpLoggingInterceptor.Level.NONE);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final List<Future<Route>> routes = new ArrayList<>();
+    for (int i = 0; i < requests; i++) {
+      final RouteRequest request = builder.clearLocations()
+          .setLocation(new double[] { 40.659241 + i * 0.001, -73.983776 })
+          .setLocation(END)
+          .build();
+      routes.add(executor.submit(new Callable<Route>() {
+        @Override public Route call() throws Exception {
+          return httpHandler.requestRoute(request).get(5, TimeUnit.SECONDS);
+        }
+      }));
+    }
+
+    for (Future<Route> route : routes) {
+      assertThat(route.get(5, TimeUnit.SECONDS).getTotalDistance()).isEqualTo(1541);
+    }
+    assertThat(server.getRequestCount()).isEqualTo(requests);
+    executor.shutdown();
+    server.shutdown();
+  }
+}
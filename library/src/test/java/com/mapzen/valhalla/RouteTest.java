@@ -1,9 +1,12 @@
 package com.mapzen.valhalla;
 
+import com.mapzen.model.HybridDistanceStrategy;
 import com.mapzen.model.ValhallaLocation;
 
 import org.apache.commons.io.FileUtils;
 import org.fest.assertions.data.Offset;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -15,6 +18,7 @@ import java.util.ArrayList;
 import java.util.ListIterator;
 
 import static com.mapzen.TestUtils.getLocation;
+import static com.mapzen.TestUtils.getRouteFixture;
 import static java.lang.System.getProperty;
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -288,6 +292,85 @@ public class RouteTest {
         assertThat(snapped).isNull();
     }
 
+    @Test
+    public void snapToRoute_shouldSnapLikeVincentyWithHybridStrategy() throws Exception {
+        Route vincentyRoute = getRoute("greenpoint_around_the_block_valhalla");
+        Route hybridRoute = getRoute("greenpoint_around_the_block_valhalla");
+        hybridRoute.setDistanceStrategy(HybridDistanceStrategy.INSTANCE);
+        ValhallaLocation[] locations = new ValhallaLocation[] {
+                getLocation(40.660250, -73.988105),
+                getLocation(40.659826, -73.987838),
+                getLocation(40.660396, -73.987603),
+                getLocation(40.661434, -73.989030) };
+        for (ValhallaLocation location : locations) {
+            ValhallaLocation expected = vincentyRoute.snapToRoute(location);
+            ValhallaLocation actual = hybridRoute.snapToRoute(location);
+            assertThat(actual.getLatitude()).isEqualTo(expected.getLatitude(), Offset.offset(1e-6));
+            assertThat(actual.getLongitude()).isEqualTo(expected.getLongitude(),
+                    Offset.offset(1e-6));
+            assertThat(hybridRoute.getCurrentLeg()).isEqualTo(vincentyRoute.getCurrentLeg());
+            assertThat((double) hybridRoute.getDistanceToNextInstruction()).isEqualTo(
+                    vincentyRoute.getDistanceToNextInstruction(), Offset.offset(1.0));
+        }
+    }
+
+    @Test
+    public void snapToRoute_shouldBeLostAfterJumpWithoutGlobalResnap() throws Exception {
+        Route myroute = getRoute("brooklyn_valhalla");
+        myroute.snapToRoute(myroute.getGeometry().get(0));
+        ValhallaLocation snapped = myroute.snapToRoute(getMidpoint(myroute, 8));
+        assertThat(snapped).isNull();
+        assertThat(myroute.isLost()).isTrue();
+    }
+
+    @Test
+    public void snapToRoute_shouldResnapAfterJumpWithGlobalResnap() throws Exception {
+        Route myroute = getRoute("brooklyn_valhalla");
+        myroute.setGlobalResnapEnabled(true);
+        myroute.snapToRoute(myroute.getGeometry().get(0));
+        ValhallaLocation snapped = myroute.snapToRoute(getMidpoint(myroute, 8));
+        assertThat(snapped).isNotNull();
+        assertThat(myroute.isLost()).isFalse();
+        assertThat(myroute.getCurrentLeg()).isEqualTo(8);
+        assertThat(myroute.getTotalDistanceTravelled()).isGreaterThan(0);
+        assertThat(myroute.getCurrentInstruction().getBeginPolygonIndex()).isLessThanOrEqualTo(8);
+    }
+
+    @Test
+    public void snapToRoute_shouldBeLostFarFromRouteWithGlobalResnap() throws Exception {
+        Route myroute = getRoute("brooklyn_valhalla");
+        myroute.setGlobalResnapEnabled(true);
+        myroute.snapToRoute(myroute.getGeometry().get(0));
+        assertThat(myroute.snapToRoute(getLocation(40.70, -73.90))).isNull();
+        assertThat(myroute.isLost()).isTrue();
+        assertThat(myroute.getCurrentLeg()).isEqualTo(0);
+    }
+
+    @Test
+    public void snapToRoute_shouldAdvanceThroughSeveralSegments() throws Exception {
+        Route myroute = getRoute("ace_hotel_valhalla");
+        myroute.snapToRoute(myroute.getGeometry().get(0));
+        ValhallaLocation snapped = myroute.snapToRoute(getMidpoint(myroute, 3));
+        assertThat(snapped).isNotNull();
+        assertThat(myroute.getCurrentLeg()).isEqualTo(3);
+    }
+
+    @Test
+    public void snapToRoute_shouldNotAdvancePastLookAheadWindow() throws Exception {
+        Route myroute = getRoute("ace_hotel_valhalla");
+        myroute.setSnapLookAheadSegments(1);
+        myroute.snapToRoute(myroute.getGeometry().get(0));
+        myroute.snapToRoute(getMidpoint(myroute, 3));
+        assertThat(myroute.getCurrentLeg()).isEqualTo(1);
+    }
+
+    private ValhallaLocation getMidpoint(Route route, int segment) {
+        ArrayList<ValhallaLocation> geometry = route.getGeometry();
+        return getLocation(
+                (geometry.get(segment).getLatitude() + geometry.get(segment + 1).getLatitude()) / 2,
+                (geometry.get(segment).getLongitude() + geometry.get(segment + 1).getLongitude()) / 2);
+    }
+
     @Test
     public void getCurrentRotationBearing_shouldBeSameAsInstruction() throws Exception {
         Route myroute = getRoute("greenpoint_around_the_block_valhalla");
@@ -448,6 +531,25 @@ public class RouteTest {
         assertThat(secondSetOfInstructions.get(0).getLiveDistanceToNext()).isEqualTo(4);
     }
 
+    @Test
+    public void snapToRoute_shouldRecomputeLiveDistanceSetExplicitly() throws Exception {
+        Route myroute = getRoute("ace_hotel_valhalla");
+        ArrayList<Instruction> instructions = myroute.getRouteInstructions();
+        int distance = instructions.get(0).getLiveDistanceToNext();
+        instructions.get(0).setLiveDistanceToNext(4);
+        myroute.snapToRoute(instructions.get(0).getLocation());
+        assertThat(instructions.get(0).getLiveDistanceToNext())
+                .isEqualTo(distance - (int) myroute.getTotalDistanceTravelled());
+    }
+
+    @Test
+    public void getNextInstructionIndex_shouldFollowCurrentInstruction() throws Exception {
+        Route myroute = getRoute("ace_hotel_valhalla");
+        assertThat(myroute.getNextInstructionIndex()).isEqualTo(1);
+        myroute.snapToRoute(myroute.getRouteInstructions().get(1).getLocation());
+        assertThat(myroute.getNextInstructionIndex()).isEqualTo(2);
+    }
+
     @Test
     public void getRouteInstruction_shouldTallyUpDistances() throws Exception {
         Route myroute = getRoute("ace_hotel_valhalla");
@@ -515,6 +617,173 @@ public class RouteTest {
         }
     }
 
+    @Test
+    public void lazyRoute_shouldNotDecodeShapeForSummary() throws Exception {
+        Route lazyRoute = getLazyRoute("brooklyn_valhalla");
+        assertThat(lazyRoute.getTotalDistance()).isEqualTo(1541);
+        assertThat(lazyRoute.getTotalTime()).isEqualTo(225);
+        assertThat(lazyRoute.getPolyline().isDecoded()).isFalse();
+    }
+
+    @Test
+    public void lazyRoute_shouldMatchEagerRoute() throws Exception {
+        Route lazyRoute = getLazyRoute("ace_hotel_valhalla");
+        Route eagerRoute = getRoute("ace_hotel_valhalla");
+        ArrayList<Instruction> lazyInstructions = lazyRoute.getRouteInstructions();
+        ArrayList<Instruction> eagerInstructions = eagerRoute.getRouteInstructions();
+        assertThat(lazyInstructions).isEqualTo(eagerInstructions);
+        for (int i = 0; i < eagerInstructions.size(); i++) {
+            assertThat(lazyInstructions.get(i).getLiveDistanceToNext())
+                    .isEqualTo(eagerInstructions.get(i).getLiveDistanceToNext());
+        }
+        assertThat(lazyRoute.getGeometry()).hasSize(eagerRoute.getGeometry().size());
+    }
+
+    @Test
+    public void lazyRoute_shouldSnapLikeEagerRoute() throws Exception {
+        Route lazyRoute = getLazyRoute("greenpoint_around_the_block_valhalla");
+        Route eagerRoute = getRoute("greenpoint_around_the_block_valhalla");
+        ValhallaLocation location = getLocation(40.659826, -73.987838);
+        assertThat(lazyRoute.snapToRoute(location))
+                .isEqualsToByComparingFields(eagerRoute.snapToRoute(location));
+        assertThat(lazyRoute.getCurrentLeg()).isEqualTo(eagerRoute.getCurrentLeg());
+    }
+
+    @Test
+    public void newSession_shouldShareShape() throws Exception {
+        Route template = getLazyRoute("ace_hotel_valhalla");
+        template.setGlobalResnapEnabled(true);
+        Route session = template.newSession();
+        assertThat(session.getPolyline()).isSameAs(template.getPolyline());
+        assertThat(session.getPolyline().isDecoded()).isTrue();
+        assertThat(session.getSegmentIndex()).isSameAs(template.getSegmentIndex());
+        assertThat(session.isGlobalResnapEnabled()).isTrue();
+        assertThat(session.getTotalDistance()).isEqualTo(template.getTotalDistance());
+        assertThat(session.getUnits()).isEqualTo(template.getUnits());
+    }
+
+    @Test
+    public void newSession_shouldHaveOwnInstructions() throws Exception {
+        Route template = getRoute("ace_hotel_valhalla");
+        Route session = template.newSession();
+        ArrayList<Instruction> instructions = session.getRouteInstructions();
+        assertThat(instructions).isEqualTo(template.getRouteInstructions());
+        assertThat(instructions.get(0)).isNotSameAs(template.getRouteInstructions().get(0));
+        for (int i = 0; i < instructions.size(); i++) {
+            assertThat(instructions.get(i).getLiveDistanceToNext())
+                    .isEqualTo(template.getRouteInstructions().get(i).getLiveDistanceToNext());
+        }
+    }
+
+    @Test
+    public void newSession_shouldKeepProgressSeparate() throws Exception {
+        Route template = getRoute("ace_hotel_valhalla");
+        Route first = template.newSession();
+        Route second = template.newSession();
+        first.getRouteInstructions();
+        second.getRouteInstructions();
+        first.snapToRoute(getLocation(40.743814, -73.989035));
+        assertThat(first.getCurrentLeg()).isGreaterThan(0);
+        assertThat(first.getTotalDistanceTravelled()).isGreaterThan(0.0);
+        assertThat(second.getCurrentLeg()).isEqualTo(0);
+        assertThat(second.getTotalDistanceTravelled()).isEqualTo(0.0);
+        assertThat(second.getDistanceToNextInstruction())
+                .isEqualTo(template.getDistanceToNextInstruction());
+        assertThat(first.getDistanceToNextInstruction())
+                .isNotEqualTo(second.getDistanceToNextInstruction());
+    }
+
+    @Test
+    public void newSession_shouldSnapLikeTemplate() throws Exception {
+        Route template = getRoute("greenpoint_around_the_block_valhalla");
+        Route session = template.newSession();
+        Route expected = getRoute("greenpoint_around_the_block_valhalla");
+        ValhallaLocation location = getLocation(40.659826, -73.987838);
+        assertThat(session.snapToRoute(location))
+                .isEqualsToByComparingFields(expected.snapToRoute(location));
+        assertThat(session.getCurrentLeg()).isEqualTo(expected.getCurrentLeg());
+    }
+
+    @Test
+    public void newSession_shouldCopyRouteWithoutShape() throws Exception {
+        Route session = getRoute("unsuccessful").newSession();
+        assertThat(session.foundRoute()).isFalse();
+        assertThat(session.getPolyline()).isNull();
+    }
+
+    /**
+     * Returns the JSON of the first route with the trips of the others as its alternates.
+     */
+    public static JSONObject getRouteWithAlternates(String name, String... alternates)
+            throws Exception {
+        JSONObject json = new JSONObject(getRouteFixture(name));
+        JSONArray array = new JSONArray();
+        for (String alternate : alternates) {
+            JSONObject trip = new JSONObject(getRouteFixture(alternate));
+            array.put(new JSONObject().put("trip", trip.getJSONObject("trip")));
+        }
+        json.put("alternates", array);
+        return json;
+    }
+
+    @Test
+    public void getAlternates_shouldBeEmptyByDefault() throws Exception {
+        assertThat(route.getAlternates()).isEmpty();
+    }
+
+    @Test
+    public void getAlternates_shouldParseAlternates() throws Exception {
+        route = new Route(getRouteWithAlternates("ace_hotel_valhalla", "brooklyn_valhalla",
+                "greenpoint_around_the_block_valhalla"));
+        assertThat(route.getAlternates()).hasSize(2);
+        assertThat(route.getAlternates().get(0).getTotalDistance())
+                .isEqualTo(getRoute("brooklyn_valhalla").getTotalDistance());
+        assertThat(route.getAlternates().get(1).getTotalDistance())
+                .isEqualTo(getRoute("greenpoint_around_the_block_valhalla").getTotalDistance());
+    }
+
+    @Test
+    public void newSession_shouldShareAlternates() throws Exception {
+        route = new Route(getRouteWithAlternates("ace_hotel_valhalla", "brooklyn_valhalla"));
+        assertThat(route.newSession().getAlternates()).isEqualTo(route.getAlternates());
+    }
+
+    @Test
+    public void newSession_shouldDecodeAndIndexAlternates() throws Exception {
+        route = new Route(getRouteWithAlternates("ace_hotel_valhalla", "brooklyn_valhalla"));
+        Route alternate = route.getAlternates().get(0);
+        assertThat(alternate.getPolyline().isDecoded()).isFalse();
+        route.newSession();
+        assertThat(alternate.getPolyline().isDecoded()).isTrue();
+        assertThat(alternate.getSegmentIndex()).isSameAs(route.newSession().getAlternates().get(0)
+                .getSegmentIndex());
+    }
+
+    @Test
+    public void snapToNearestSegment_shouldJoinRoutePartWayAlong() throws Exception {
+        route = getRoute("ace_hotel_valhalla");
+        ValhallaLocation location = route.getRouteInstructions().get(2).getLocation();
+        assertThat(route.snapToNearestSegment(location)).isNotNull();
+        assertThat(route.getCurrentLeg()).isGreaterThan(0);
+        assertThat(route.getCurrentInstruction())
+                .isEqualTo(route.getRouteInstructions().get(2));
+        assertThat(route.isLost()).isFalse();
+    }
+
+    @Test
+    public void snapToNearestSegment_shouldReturnNullIfFarFromRoute() throws Exception {
+        route = getRoute("ace_hotel_valhalla");
+        assertThat(route.snapToNearestSegment(getLocation(0, 0))).isNull();
+        assertThat(route.getCurrentLeg()).isEqualTo(0);
+    }
+
+    public static Route getLazyRoute(String name) throws Exception {
+        String fileName = getProperty("user.dir");
+        File file = new File(fileName + "/src/test/fixtures/" + name + ".route");
+        String content = FileUtils.readFileToString(file, "UTF-8");
+        return new Route(content, true);
+    }
+
     @Test
     public void shouldParseUnits() throws Exception {
         route = getRoute("brooklyn_valhalla");
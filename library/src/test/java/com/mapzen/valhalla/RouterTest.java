@@ -63,6 +63,26 @@ public class RouterTest {
         assertThat(router.getJSONRequest().directionsOptions.language).doesNotContain("-CA");
     }
 
+    @Test
+    public void getJSONRequest_shouldNotKeepDefaultLanguage() throws Exception {
+        Locale.setDefault(Locale.FRANCE);
+        double[] loc = new double[] {1.0, 2.0};
+        router = new ValhallaRouter().setLocation(loc).setLocation(loc);
+        assertThat(router.getJSONRequest().directionsOptions.language).isEqualTo("fr-FR");
+        Locale.setDefault(Locale.GERMANY);
+        assertThat(router.getJSONRequest().directionsOptions.language).isEqualTo("de-DE");
+    }
+
+    @Test
+    public void getRequest_shouldMatchJSONRequest() throws Exception {
+        router.setBiking().setLanguage(Router.Language.IT_IT);
+        RouteRequest request = ((ValhallaRouter) router).getRequest();
+        assertThat(request.getType()).isEqualTo(Router.Type.BIKING);
+        assertThat(request.getLanguage()).isEqualTo("it-IT");
+        assertThat(new Gson().toJson(request.toJSON()))
+                .isEqualTo(new Gson().toJson(router.getJSONRequest()));
+    }
+
     @Test
     public void shouldSetToCsCs() throws Exception {
         router.setLanguage(Router.Language.CS_CZ);
@@ -294,6 +314,50 @@ public class RouterTest {
             .isEqualTo(new JSONObject(routeJson).toString());
     }
 
+    @Test
+    public void fetchParsed_shouldGetRoute() throws Exception {
+        startServerAndEnqueue(new MockResponse().setBody(getRouteFixture("brooklyn_valhalla")));
+        RouteCallback callback = Mockito.mock(RouteCallback.class);
+        ValhallaRouter router = new ValhallaRouter();
+        router.setHttpHandler(httpHandler)
+            .setLocation(new double[] { 40.659241, -73.983776 })
+            .setLocation(new double[] { 40.671773, -73.981115 });
+        router.setCallback(callback);
+        router.fetchParsed();
+        Mockito.verify(callback).success(route.capture());
+        assertThat(route.getValue().foundRoute()).isTrue();
+        assertThat(route.getValue().getTotalDistance()).isEqualTo(1541);
+        assertThat(route.getValue().getRawRoute()).isNull();
+    }
+
+    @Test
+    public void fetchParsed_shouldGetError() throws Exception {
+        startServerAndEnqueue(new MockResponse().setResponseCode(500));
+        RouteCallback callback = Mockito.mock(RouteCallback.class);
+        ValhallaRouter router = new ValhallaRouter();
+        router.setHttpHandler(httpHandler)
+            .setLocation(new double[]{40.659241, -73.983776})
+            .setLocation(new double[]{40.671773, -73.981115});
+        router.setCallback(callback);
+        router.fetchParsed();
+        Mockito.verify(callback).failure(statusCode.capture());
+        assertThat(statusCode.getValue()).isEqualTo(500);
+    }
+
+    @Test
+    public void fetchParsed_shouldReportInvalidResponse() throws Exception {
+        startServerAndEnqueue(new MockResponse().setBody("not a route"));
+        RouteCallback callback = Mockito.mock(RouteCallback.class);
+        ValhallaRouter router = new ValhallaRouter();
+        router.setHttpHandler(httpHandler)
+            .setLocation(new double[]{40.659241, -73.983776})
+            .setLocation(new double[]{40.671773, -73.981115});
+        router.setCallback(callback);
+        router.fetchParsed();
+        Mockito.verify(callback).failure(statusCode.capture());
+        assertThat(statusCode.getValue()).isEqualTo(-1);
+    }
+
     @Test
     public void setDistanceUnits_shouldAppendUnitsToJson() throws Exception {
         router.setDistanceUnits(Router.DistanceUnits.MILES);
@@ -305,6 +369,22 @@ public class RouterTest {
                 .contains("\"directions_options\":{\"units\":\"kilometers\"");
     }
 
+    @Test
+    public void setAlternates_shouldAppendAlternatesToJson() throws Exception {
+        ((ValhallaRouter) router).setAlternates(2);
+        assertThat(new Gson().toJson(router.getJSONRequest())).contains("\"alternates\":2");
+    }
+
+    @Test
+    public void setAlternates_shouldNotIncludeAlternatesByDefault() throws Exception {
+        assertThat(new Gson().toJson(router.getJSONRequest())).doesNotContain("alternates");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setAlternates_shouldRejectNegativeCount() throws Exception {
+        ((ValhallaRouter) router).setAlternates(-1);
+    }
+
     @Test
     public void setLocation_shouldAppendName() throws Exception {
         double[] loc = new double[] {1.0, 2.0};
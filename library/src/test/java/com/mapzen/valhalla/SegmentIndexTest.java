@@ -0,0 +1,78 @@
+package com.mapzen.valhalla;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class SegmentIndexTest {
+    private static final String BROOKLYN_SHAPE = "imvplA|k}blCxv@_|AcWwWcK~HgTbPqk@|hAoNvXerAxhC"
+            + "esAhhCab@gc@uS}T{K{Kag@ya@ud@m^ud@o^d~@eaC";
+
+    private Polyline polyline;
+    private SegmentIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        polyline = new Polyline(Arrays.asList(BROOKLYN_SHAPE));
+        index = new SegmentIndex(polyline);
+    }
+
+    @Test
+    public void findNearestSegment_shouldFindSegmentOfPointOnRoute() throws Exception {
+        double lat = (polyline.getLatitude(7) + polyline.getLatitude(8)) / 2;
+        double lng = (polyline.getLongitude(7) + polyline.getLongitude(8)) / 2;
+        assertThat(index.findNearestSegment(lat, lng, 50)).isEqualTo(7);
+    }
+
+    @Test
+    public void findNearestSegment_shouldReturnNegativeWhenTooFar() throws Exception {
+        assertThat(index.findNearestSegment(40.70, -73.90, 50)).isEqualTo(-1);
+    }
+
+    @Test
+    public void findNearestSegment_shouldMatchLinearSearch() throws Exception {
+        Random random = new Random(1);
+        SegmentIndex smallCells = new SegmentIndex(polyline, 20);
+        for (int i = 0; i < 500; i++) {
+            double lat = 40.655 + random.nextDouble() * 0.015;
+            double lng = -73.997 + random.nextDouble() * 0.015;
+            int expected = findNearestSegmentLinearly(lat, lng, 200);
+            assertThat(index.findNearestSegment(lat, lng, 200)).isEqualTo(expected);
+            assertThat(smallCells.findNearestSegment(lat, lng, 200)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void findNearestSegment_shouldSkipLastPointOfLeg() throws Exception {
+        Polyline twoLegs = new Polyline(Arrays.asList(BROOKLYN_SHAPE, BROOKLYN_SHAPE));
+        SegmentIndex twoLegIndex = new SegmentIndex(twoLegs);
+        double lat = twoLegs.getLatitude(15);
+        double lng = twoLegs.getLongitude(15);
+        int segment = twoLegIndex.findNearestSegment(lat, lng, 50);
+        assertThat(segment).isNotEqualTo(15);
+        assertThat(segment).isNotEqualTo(31);
+    }
+
+    @Test
+    public void findNearestSegment_shouldHandleEmptyPolyline() throws Exception {
+        SegmentIndex empty = new SegmentIndex(new Polyline(Arrays.asList("")));
+        assertThat(empty.findNearestSegment(40.66, -73.98, 50)).isEqualTo(-1);
+    }
+
+    private int findNearestSegmentLinearly(double lat, double lng, double maxDistance) {
+        int nearest = -1;
+        double nearestDistance = maxDistance;
+        for (int i = 0; i < polyline.size() - 1; i++) {
+            double distance = index.getDistanceToSegment(i, lat, lng);
+            if (distance <= nearestDistance && (nearest < 0 || distance < nearestDistance)) {
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+}
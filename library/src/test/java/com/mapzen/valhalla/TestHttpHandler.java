@@ -31,6 +31,20 @@ class TestHttpHandler extends HttpHandler {
     return call;
   }
 
+  @Override public Call<Route> requestParsedRoute(JSON routeJson, Callback<Route> callback) {
+    Call<Route> call = null;
+    Response<Route> parsedRoute = null;
+    try {
+      call = service.getParsedRoute(routeJson);
+      parsedRoute = call.execute();
+    } catch (IOException | RuntimeException e) {
+      callback.onFailure(call, e);
+      return call;
+    }
+    callback.onResponse(null, parsedRoute);
+    return call;
+  }
+
   @Override protected okhttp3.Response onRequest(Interceptor.Chain chain) throws IOException {
     headersAdded = true;
     return chain.proceed(chain.request());
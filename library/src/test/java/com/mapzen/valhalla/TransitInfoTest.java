@@ -68,6 +68,16 @@ public class TransitInfoTest {
     assertThat(transitInfo.getTextColor()).isEqualTo(0);
   }
 
+  @Test(expected = JSONException.class)
+  public void getTextColor_shouldRequireTextColor() throws Exception {
+    new TransitInfo(new JSONObject()).getTextColor();
+  }
+
+  @Test(expected = JSONException.class)
+  public void getTransitStops_shouldRequireTransitStops() throws Exception {
+    new TransitInfo(new JSONObject()).getTransitStops();
+  }
+
   @Test
   public void hasOperatorOnestopId() {
     assertThat(transitInfo.getOperatorOnestopId()).isEqualTo("o-dr5r-nyct");
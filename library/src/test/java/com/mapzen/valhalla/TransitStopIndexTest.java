@@ -0,0 +1,125 @@
+package com.mapzen.valhalla;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static com.mapzen.TestUtils.getRouteFixture;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class TransitStopIndexTest {
+  private Polyline polyline;
+  private Route route;
+  private TransitStopIndex index;
+
+  @Before public void setup() throws Exception {
+    polyline = new Route(getRouteFixture("brooklyn_valhalla")).getPolyline();
+    final JSONObject json = new JSONObject(getRouteFixture("brooklyn_valhalla"));
+    final JSONArray maneuvers = json.getJSONObject("trip").getJSONArray("legs")
+        .getJSONObject(0).getJSONArray("maneuvers");
+    addStops(maneuvers.getJSONObject(1), getStop("A", 1), getStop("B", 2));
+    addStops(maneuvers.getJSONObject(3), getStop("C", 10), new JSONObject().put("name", "D"));
+    route = new Route(json);
+    index = route.getTransitStopIndex();
+  }
+
+  @Test public void shouldIndexStopsInOrder() throws Exception {
+    assertThat(index.size()).isEqualTo(4);
+    assertThat(index.getStop(0).getName()).isEqualTo("A");
+    assertThat(index.getStop(2).getName()).isEqualTo("C");
+    assertThat(index.getStop(3).getName()).isEqualTo("D");
+  }
+
+  @Test public void getDistanceFromStart_shouldPlaceStopsAlongRoute() throws Exception {
+    assertThat(index.getDistanceFromStart(0)).isEqualTo(polyline.getDistanceFromStart(1));
+    assertThat(index.getDistanceFromStart(1)).isEqualTo(polyline.getDistanceFromStart(2));
+    assertThat(index.getDistanceFromStart(2)).isEqualTo(polyline.getDistanceFromStart(10));
+    assertThat(index.getDistanceFromStart(3)).isEqualTo(index.getDistanceFromStart(2));
+  }
+
+  @Test public void findNextStop_shouldReturnFirstStopAhead() throws Exception {
+    assertThat(index.findNextStop(0)).isEqualTo(0);
+    assertThat(index.findNextStop(index.getDistanceFromStart(0))).isEqualTo(1);
+    assertThat(index.findNextStop(index.getDistanceFromStart(1) + 1)).isEqualTo(2);
+    assertThat(index.findNextStop(index.getDistanceFromStart(3))).isEqualTo(-1);
+  }
+
+  @Test public void findNearestStop_shouldReturnStopAtLocation() throws Exception {
+    assertThat(index.findNearestStop(polyline.getLatitude(2), polyline.getLongitude(2), 10))
+        .isEqualTo(1);
+    assertThat(index.findNearestStop(polyline.getLatitude(10), polyline.getLongitude(10), 10))
+        .isEqualTo(2);
+  }
+
+  @Test public void findNearestStop_shouldReturnNoStopOutOfRange() throws Exception {
+    assertThat(index.findNearestStop(40.0, -73.0, 1000)).isEqualTo(-1);
+  }
+
+  @Test public void findNearestStop_shouldMatchLinearSearch() throws Exception {
+    final TransitStopIndex small = new TransitStopIndex(route.getRouteInstructions(),
+        route.getPolyline(), 20);
+    for (int i = 0; i < polyline.size(); i++) {
+      final double lat = polyline.getLatitude(i) + 0.0003;
+      final double lng = polyline.getLongitude(i) - 0.0002;
+      final int expected = findNearestStop(lat, lng, 300);
+      assertThat(index.findNearestStop(lat, lng, 300)).isEqualTo(expected);
+      assertThat(small.findNearestStop(lat, lng, 300)).isEqualTo(expected);
+    }
+  }
+
+  @Test public void getNextTransitStop_shouldFollowProgress() throws Exception {
+    assertThat(route.getNextTransitStop().getName()).isEqualTo("A");
+    route.setTotalDistanceTravelled(index.getDistanceFromStart(1));
+    assertThat(route.getNextTransitStop().getName()).isEqualTo("C");
+  }
+
+  @Test public void getTransitStopIndex_shouldBeEmptyWithoutTransit() throws Exception {
+    final Route route = new Route(getRouteFixture("brooklyn_valhalla"));
+    assertThat(route.getTransitStopIndex().size()).isEqualTo(0);
+    assertThat(route.getTransitStopIndex().findNearestStop(40.66, -73.98, 1000)).isEqualTo(-1);
+    assertThat(route.getNextTransitStop()).isNull();
+    assertThat(new Route(getRouteFixture("unsuccessful")).getTransitStopIndex()).isNull();
+  }
+
+  @Test public void newSession_shouldShareIndex() throws Exception {
+    assertThat(route.newSession().getTransitStopIndex()).isSameAs(index);
+  }
+
+  private int findNearestStop(double lat, double lng, double maxDistanceMeters) {
+    int nearest = -1;
+    double nearestDistance = maxDistanceMeters;
+    for (int i = 0; i < index.size(); i++) {
+      final TransitStop stop = index.getStop(i);
+      if (Double.isNaN(stop.getLat())) {
+        continue;
+      }
+      final double x = (stop.getLon() - lng) * Math.cos(Math.toRadians(lat));
+      final double y = stop.getLat() - lat;
+      final double distance = Math.sqrt(x * x + y * y) * SegmentIndex.METERS_PER_DEGREE;
+      if (distance < nearestDistance || (nearest < 0 && distance <= nearestDistance)) {
+        nearest = i;
+        nearestDistance = distance;
+      }
+    }
+    return nearest;
+  }
+
+  private JSONObject getStop(String name, int point) throws Exception {
+    return new JSONObject()
+        .put("name", name)
+        .put("lat", polyline.getLatitude(point))
+        .put("lon", polyline.getLongitude(point));
+  }
+
+  private static void addStops(JSONObject maneuver, JSONObject... stops) throws Exception {
+    final JSONArray array = new JSONArray();
+    for (JSONObject stop : stops) {
+      array.put(stop);
+    }
+    maneuver.put("transit_info", new JSONObject().put("transit_stops", array));
+  }
+}